@@ -0,0 +1,204 @@
+package analyser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Append only store of the test metrics of past runs.
+ * <br>
+ * <p>
+ * Each run is appended as a run line, identified by the time it was
+ * recorded, followed by a line per test and a line per method the test
+ * called. Runs are never rewritten. The baseline of a test is the median
+ * of its metrics over the latest runs that recorded it, so a single noisy
+ * run neither raises nor lowers the bar, or its metrics in a pinned run.
+ * </p>
+ */
+final class Baseline {
+
+    /**
+     * The baseline file.
+     */
+    private final File file;
+
+    /**
+     * Initialises a new Baseline.
+     *
+     * @param baselineFile the baseline file.
+     */
+    Baseline(final File baselineFile) {
+        this.file = baselineFile;
+    }
+
+    /**
+     * Loads the median metrics of each recorded test over its latest runs.
+     *
+     * @param window the number of latest runs of a test, 1 for its latest run.
+     * @return the metrics by fully qualified test name, empty if no run was recorded.
+     * @throws IOException if the baseline cannot be read.
+     */
+    Map<String, TestMetrics> load(final int window) throws IOException {
+        Map<String, Deque<TestMetrics>> runs = new HashMap<>();
+        this.read(-1, test -> {
+            Deque<TestMetrics> latest = runs.computeIfAbsent(test.getTest(), t -> new ArrayDeque<>());
+            latest.addLast(test);
+            if (latest.size() > Math.max(1, window)) {
+                latest.removeFirst();
+            }
+        });
+        Map<String, TestMetrics> tests = new HashMap<>();
+        for (Map.Entry<String, Deque<TestMetrics>> test : runs.entrySet()) {
+            tests.put(test.getKey(), median(test.getKey(), test.getValue()));
+        }
+        return tests;
+    }
+
+    /**
+     * Loads the metrics of each test of a pinned run.
+     *
+     * @param run the time the run was recorded, as logged when recording it.
+     * @return the metrics by fully qualified test name, empty if no such run was recorded.
+     * @throws IOException if the baseline cannot be read.
+     */
+    Map<String, TestMetrics> loadRun(final long run) throws IOException {
+        Map<String, TestMetrics> tests = new HashMap<>();
+        this.read(run, test -> tests.put(test.getTest(), test));
+        return tests;
+    }
+
+    /**
+     * Reads the tests recorded in the baseline, with their method calls.
+     *
+     * @param run      the time the run to read was recorded, negative for every run.
+     * @param consumer receives each test once its method calls are read, in run order.
+     * @throws IOException if the baseline cannot be read.
+     */
+    private void read(final long run, final Consumer<TestMetrics> consumer) throws IOException {
+        if (!this.file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+            boolean selected = run < 0;
+            TestMetrics test = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(TestMetrics.FIELD_SEPARATOR);
+                if (("R".equals(fields[0]) || "T".equals(fields[0])) && test != null) {
+                    consumer.accept(test);
+                    test = null;
+                }
+                if ("R".equals(fields[0])) {
+                    selected = run < 0 || Long.parseLong(fields[1]) == run;
+                } else if ("T".equals(fields[0]) && selected) {
+                    test = TestMetrics.fromRecord(fields);
+                } else if ("M".equals(fields[0]) && test != null) {
+                    test.getMethodCalls().put(fields[1], Long.parseLong(fields[2]));
+                }
+            }
+            if (test != null) {
+                consumer.accept(test);
+            }
+        }
+    }
+
+    /**
+     * Gets the median of each metric of a test over its runs. Metrics not
+     * measured in a run are left out of their median, methods not called in
+     * a run count as no calls.
+     *
+     * @param name the fully qualified test name.
+     * @param runs the metrics of the runs.
+     * @return the median metrics.
+     */
+    private static TestMetrics median(final String name, final Collection<TestMetrics> runs) {
+        long[] values = new long[TestMetrics.VALUE_NAMES.length];
+        for (int metric = 0; metric < values.length; metric++) {
+            List<Long> measured = new ArrayList<>();
+            for (TestMetrics run : runs) {
+                long value = run.values()[metric];
+                if (value >= 0) {
+                    measured.add(value);
+                }
+            }
+            values[metric] = median(measured);
+        }
+        Set<String> methods = new HashSet<>();
+        for (TestMetrics run : runs) {
+            methods.addAll(run.getMethodCalls().keySet());
+        }
+        Map<String, Long> calls = new HashMap<>();
+        for (String method : methods) {
+            List<Long> counts = new ArrayList<>();
+            for (TestMetrics run : runs) {
+                counts.add(run.getMethodCalls().getOrDefault(method, 0L));
+            }
+            long count = median(counts);
+            if (count > 0) {
+                calls.put(method, count);
+            }
+        }
+        return new TestMetrics(name, values, calls);
+    }
+
+    /**
+     * Gets the lower median of some values.
+     *
+     * @param values the values.
+     * @return the median, -1 if there are no values.
+     */
+    private static long median(final List<Long> values) {
+        if (values.isEmpty()) {
+            return -1;
+        }
+        Collections.sort(values);
+        return values.get((values.size() - 1) / 2);
+    }
+
+    /**
+     * Appends a run to the baseline.
+     *
+     * @param tests the metrics of the tests of the run.
+     * @return the time the run was recorded, identifying it to pin it.
+     * @throws IOException if the baseline cannot be written.
+     */
+    long append(final List<TestMetrics> tests) throws IOException {
+        File directory = this.file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        String separator = System.lineSeparator();
+        long run = System.currentTimeMillis();
+        try (Writer writer = Files.newBufferedWriter(this.file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write("R" + TestMetrics.FIELD_SEPARATOR + run
+                    + TestMetrics.FIELD_SEPARATOR + tests.size() + separator);
+            for (TestMetrics test : tests) {
+                writer.write(test.toRecord(separator));
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Gets the baseline file.
+     *
+     * @return the baseline file.
+     */
+    File getFile() {
+        return this.file;
+    }
+}
@@ -0,0 +1,306 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calling context tree of a test, built online from the
+ * method entry and exit events seen by the analyser.
+ * <br>
+ * <p>
+ * Each node is a method called under a specific path of callers,
+ * with the number of calls and the inclusive time spent in it.
+ * Nodes are numbered and kept in parallel primitive arrays, with
+ * the children of a node found through an open addressing table
+ * keyed on the parent node and method, so repeated calls from the
+ * same context share a node however long the test runs.
+ * </p>
+ */
+final class CallingContextTree {
+
+    /**
+     * The root node, standing for the test runner calling the test.
+     */
+    static final int ROOT = 0;
+
+    /**
+     * No node.
+     */
+    static final int NONE = -1;
+
+    /**
+     * Initial node capacity.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Mixes the hash of a child key.
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * Fully qualified method names by method id.
+     */
+    private final List<String> methodNames = new ArrayList<>();
+
+    /**
+     * Method ids by fully qualified method name.
+     */
+    private final Map<String, Integer> methodIds = new HashMap<>();
+
+    /**
+     * Parent node of each node.
+     */
+    private int[] parents;
+
+    /**
+     * Method id of each node.
+     */
+    private int[] methods;
+
+    /**
+     * First child of each node.
+     */
+    private int[] firstChildren;
+
+    /**
+     * Next sibling of each node.
+     */
+    private int[] nextSiblings;
+
+    /**
+     * Calls of each node.
+     */
+    private long[] calls;
+
+    /**
+     * Inclusive time of each node in nanoseconds.
+     */
+    private long[] times;
+
+    /**
+     * Child lookup table of node ids, 0 marks an empty slot
+     * as the root is never a child.
+     */
+    private int[] children;
+
+    /**
+     * Number of nodes.
+     */
+    private int size;
+
+    /**
+     * The node of the method currently running.
+     */
+    private int current;
+
+    /**
+     * Initialises a new CallingContextTree holding only the root.
+     */
+    CallingContextTree() {
+        this.parents = new int[INITIAL_CAPACITY];
+        this.methods = new int[INITIAL_CAPACITY];
+        this.firstChildren = new int[INITIAL_CAPACITY];
+        this.nextSiblings = new int[INITIAL_CAPACITY];
+        this.calls = new long[INITIAL_CAPACITY];
+        this.times = new long[INITIAL_CAPACITY];
+        this.children = new int[2 * INITIAL_CAPACITY];
+        this.parents[ROOT] = NONE;
+        this.methods[ROOT] = NONE;
+        this.firstChildren[ROOT] = NONE;
+        this.nextSiblings[ROOT] = NONE;
+        this.size = 1;
+        this.current = ROOT;
+    }
+
+    /**
+     * Records a method entry under the running method.
+     *
+     * @param method the fully qualified method name.
+     */
+    void enter(final String method) {
+        this.enter(method, 1);
+    }
+
+    /**
+     * Records calls of a method under the running method, as when
+     * merging the calls of another tree.
+     *
+     * @param method    the fully qualified method name.
+     * @param callCount the number of calls.
+     */
+    void enter(final String method, final long callCount) {
+        int methodId = this.methodIds.computeIfAbsent(method, m -> {
+            this.methodNames.add(m);
+            return this.methodNames.size() - 1;
+        });
+        int child = this.findOrAddChild(this.current, methodId);
+        this.calls[child] += callCount;
+        this.current = child;
+    }
+
+    /**
+     * Records the exit of the running method.
+     * Exits without a matching entry are ignored.
+     *
+     * @param time the inclusive time of the call in nanoseconds.
+     */
+    void exit(final long time) {
+        if (this.current == ROOT) {
+            return;
+        }
+        this.times[this.current] += time;
+        this.current = this.parents[this.current];
+    }
+
+    /**
+     * Gets the number of nodes, including the root.
+     *
+     * @return the number of nodes.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the parent of a node.
+     *
+     * @param node the node.
+     * @return the parent node, {@link #NONE} for the root.
+     */
+    int getParent(final int node) {
+        return this.parents[node];
+    }
+
+    /**
+     * Gets the first child of a node.
+     *
+     * @param node the node.
+     * @return the first child, {@link #NONE} if the node has no children.
+     */
+    int getFirstChild(final int node) {
+        return this.firstChildren[node];
+    }
+
+    /**
+     * Gets the next sibling of a node.
+     *
+     * @param node the node.
+     * @return the next sibling, {@link #NONE} if the node is the last child.
+     */
+    int getNextSibling(final int node) {
+        return this.nextSiblings[node];
+    }
+
+    /**
+     * Gets the method of a node.
+     *
+     * @param node the node.
+     * @return the fully qualified method name, null for the root.
+     */
+    String getMethod(final int node) {
+        return node == ROOT ? null : this.methodNames.get(this.methods[node]);
+    }
+
+    /**
+     * Gets the calls of a node.
+     *
+     * @param node the node.
+     * @return the number of calls.
+     */
+    long getCalls(final int node) {
+        return this.calls[node];
+    }
+
+    /**
+     * Gets the inclusive time of a node.
+     *
+     * @param node the node.
+     * @return the inclusive time in nanoseconds.
+     */
+    long getTime(final int node) {
+        return this.times[node];
+    }
+
+    /**
+     * Finds the child of a node calling a method, adding it if new.
+     *
+     * @param parent   the parent node.
+     * @param methodId the method id.
+     * @return the child node.
+     */
+    private int findOrAddChild(final int parent, final int methodId) {
+        int mask = this.children.length - 1;
+        int slot = hash(parent, methodId) & mask;
+        while (this.children[slot] != 0) {
+            int node = this.children[slot];
+            if (this.parents[node] == parent && this.methods[node] == methodId) {
+                return node;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int node = this.addNode(parent, methodId);
+        if (2 * this.size > this.children.length) {
+            this.rehash();
+        } else {
+            this.children[slot] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Adds a node as the first child of its parent.
+     *
+     * @param parent   the parent node.
+     * @param methodId the method id.
+     * @return the new node.
+     */
+    private int addNode(final int parent, final int methodId) {
+        if (this.size == this.parents.length) {
+            int capacity = 2 * this.size;
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.methods = Arrays.copyOf(this.methods, capacity);
+            this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+            this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+            this.calls = Arrays.copyOf(this.calls, capacity);
+            this.times = Arrays.copyOf(this.times, capacity);
+        }
+        int node = this.size++;
+        this.parents[node] = parent;
+        this.methods[node] = methodId;
+        this.firstChildren[node] = NONE;
+        this.nextSiblings[node] = this.firstChildren[parent];
+        this.firstChildren[parent] = node;
+        return node;
+    }
+
+    /**
+     * Doubles the child lookup table.
+     */
+    private void rehash() {
+        this.children = new int[2 * this.children.length];
+        int mask = this.children.length - 1;
+        for (int node = ROOT + 1; node < this.size; node++) {
+            int slot = hash(this.parents[node], this.methods[node]) & mask;
+            while (this.children[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.children[slot] = node;
+        }
+    }
+
+    /**
+     * Hashes a child key.
+     *
+     * @param parent   the parent node.
+     * @param methodId the method id.
+     * @return the hash.
+     */
+    private static int hash(final int parent, final int methodId) {
+        int h = (parent * 31 + methodId) * HASH_MULTIPLIER;
+        return h ^ (h >>> 16);
+    }
+}
@@ -5,6 +5,7 @@ import org.knowm.xchart.CategoryChart;
 import org.knowm.xchart.CategoryChartBuilder;
 import org.knowm.xchart.QuickChart;
 import org.knowm.xchart.XYChart;
+import org.knowm.xchart.XYChartBuilder;
 import org.knowm.xchart.style.Styler;
 
 import java.io.File;
@@ -12,14 +13,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 public class ChartDrawer {
 
     /**
-     * Output directory name.
+     * Output directory name, under the build directory.
      */
-    private static final String OUTPUT_DIRECTORY = "./testAnalysisGraphs/";
+    static final String OUTPUT_DIRECTORY = "testAnalysisGraphs";
 
     /**
      * Resolution setting for png files.
@@ -31,29 +33,52 @@ public class ChartDrawer {
      */
     private static final int LABEL_ROTATION = 90;
 
-    ChartDrawer() {
-        File f = new File(OUTPUT_DIRECTORY);
-        f.mkdir();
+    /**
+     * Characters not kept in chart file names: path and drive separators,
+     * the brackets and spaces of parameterised test names, and the
+     * characters reserved on Windows.
+     */
+    private static final Pattern UNSAFE_FILE_NAME = Pattern.compile("[/\\\\:\\[\\]\\s*?\"<>|]+");
+
+    /**
+     * The directory the graphs are drawn to, ending with a separator.
+     */
+    private final String outputDirectory;
+
+    /**
+     * Initialises a ChartDrawer drawing to a directory.
+     *
+     * @param directory the directory to draw the graphs to.
+     */
+    ChartDrawer(final File directory) {
+        directory.mkdirs();
+        this.outputDirectory = directory.getPath() + "/";
     }
 
 
     /**
      * Draws depth charts per test analysed.
      *
-     * @param packageName The name of the package.
-     * @param className   The name of the Class.
-     * @param testName    The name of the test.
-     * @param depths      The depths to plot.
+     * @param packageName   The name of the package.
+     * @param className     The name of the Class.
+     * @param testName      The name of the test.
+     * @param depths        The greatest depth of each bucket of steps to plot.
+     * @param stepsPerPoint The number of steps in each bucket.
      */
-    public void drawDepthChart(final String packageName, final String className, final String testName, final List<Integer> depths) {
-        File f = new File(OUTPUT_DIRECTORY + "/" + packageName);
+    public void drawDepthChart(final String packageName, final String className, final String testName,
+                               final int[] depths, final long stepsPerPoint) {
+        File f = new File(this.outputDirectory + packageName);
         f.mkdir();
-        List<Integer> xData = new ArrayList<>();
-        IntStream.range(0, depths.size()).forEach(xData::add);
-        XYChart chart = QuickChart.getChart(testName, "Step", "Depth", "Depth over time", xData, depths);
+        double[] xData = new double[depths.length];
+        double[] yData = new double[depths.length];
+        for (int i = 0; i < depths.length; i++) {
+            xData[i] = (double) i * stepsPerPoint;
+            yData[i] = depths[i];
+        }
+        XYChart chart = QuickChart.getChart(testName, "Step", "Depth", "Depth over time", xData, yData);
         chart.getStyler().setXAxisLabelRotation(LABEL_ROTATION);
         try {
-            BitmapEncoder.saveBitmapWithDPI(chart, OUTPUT_DIRECTORY + packageName + "/" + className + "." + testName, BitmapEncoder.BitmapFormat.PNG, DPI);
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + packageName + "/" + fileName(className + "." + testName), BitmapEncoder.BitmapFormat.PNG, DPI);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -90,7 +115,7 @@ public class ChartDrawer {
         chart.addSeries("Distinct methods called", testNames, distinct);
 
         try {
-            BitmapEncoder.saveBitmapWithDPI(chart, OUTPUT_DIRECTORY + "/" + packageName + "/" + "Package-Method-Summary", BitmapEncoder.BitmapFormat.PNG, DPI);
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + packageName + "/" + "Package-Method-Summary", BitmapEncoder.BitmapFormat.PNG, DPI);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -127,10 +152,252 @@ public class ChartDrawer {
         chart.addSeries("Distinct classes initialised", testNames, distinct);
 
         try {
-            BitmapEncoder.saveBitmapWithDPI(chart, OUTPUT_DIRECTORY + "/" + packageName + "/" + "Package-Class-Initialisations-Summary", BitmapEncoder.BitmapFormat.PNG, DPI);
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + packageName + "/" + "Package-Class-Initialisations-Summary", BitmapEncoder.BitmapFormat.PNG, DPI);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
+
+    /**
+     * Draws the wall clock and cpu time histogram for the tests in a package.
+     *
+     * @param testTimes   the wall clock and cpu time in milliseconds per test.
+     * @param packageName the name of the package.
+     */
+    public void drawClusteredHistogramsForTestTimes(final HashMap<String, ArrayList<Double>> testTimes,
+                                                    final String packageName) {
+        CategoryChart chart = new CategoryChartBuilder()
+                .width(1200)
+                .height(1000)
+                .title("Time per test for package")
+                .xAxisTitle("Test")
+                .yAxisTitle("Time (ms)")
+                .build();
+
+        chart.getStyler().setLegendPosition(Styler.LegendPosition.InsideNW);
+        chart.getStyler().setAvailableSpaceFill(.96);
+        chart.getStyler().setOverlapped(false);
+
+        List<Double> wallClock = new ArrayList<>();
+        List<Double> cpu = new ArrayList<>();
+        List<String> testNames = new ArrayList<>();
+        testTimes.forEach((k, v) -> {
+            wallClock.add(v.get(0));
+            cpu.add(v.get(1));
+            testNames.add(k);
+        });
+        chart.getStyler().setXAxisTicksVisible(true);
+        chart.getStyler().setXAxisLabelRotation(LABEL_ROTATION);
+        chart.addSeries("Wall clock time", testNames, wallClock);
+        chart.addSeries("Cpu time", testNames, cpu);
+
+        try {
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + packageName + "/" + "Package-Time-Summary", BitmapEncoder.BitmapFormat.PNG, DPI);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Draws the allocation and garbage collection histograms for the tests in a package,
+     * one chart each as the two are measured in different units.
+     *
+     * @param allocations the kilobytes allocated and garbage collection time in milliseconds per test.
+     * @param packageName the name of the package.
+     */
+    public void drawClusteredHistogramsForAllocations(final HashMap<String, ArrayList<Double>> allocations,
+                                                      final String packageName) {
+        List<Double> allocated = new ArrayList<>();
+        List<Double> gcTime = new ArrayList<>();
+        List<String> testNames = new ArrayList<>();
+        allocations.forEach((k, v) -> {
+            allocated.add(v.get(0));
+            gcTime.add(v.get(1));
+            testNames.add(k);
+        });
+        drawTestHistogram("Allocation per test for package", "Allocated (KB)", "Allocated", testNames, allocated,
+                packageName + "/" + "Package-Allocation-Summary");
+        drawTestHistogram("Garbage collection per test for package", "GC time (ms)", "GC time", testNames, gcTime,
+                packageName + "/" + "Package-GC-Time-Summary");
+    }
+
+    /**
+     * Draws a histogram of one value per test.
+     *
+     * @param title      the title of the chart.
+     * @param yAxisTitle the title of the y axis, with the unit of the values.
+     * @param seriesName the name of the series.
+     * @param testNames  the names of the tests.
+     * @param values     the value per test, in the order of the names.
+     * @param name       the file name of the chart, relative to the output directory.
+     */
+    private void drawTestHistogram(final String title, final String yAxisTitle, final String seriesName,
+                                   final List<String> testNames, final List<Double> values, final String name) {
+        CategoryChart chart = new CategoryChartBuilder()
+                .width(1200)
+                .height(1000)
+                .title(title)
+                .xAxisTitle("Test")
+                .yAxisTitle(yAxisTitle)
+                .build();
+
+        chart.getStyler().setLegendPosition(Styler.LegendPosition.InsideNW);
+        chart.getStyler().setAvailableSpaceFill(.96);
+        chart.getStyler().setOverlapped(false);
+        chart.getStyler().setXAxisTicksVisible(true);
+        chart.getStyler().setXAxisLabelRotation(LABEL_ROTATION);
+        chart.addSeries(seriesName, testNames, values);
+
+        try {
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + name, BitmapEncoder.BitmapFormat.PNG, DPI);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Draws the time blocked entering and waiting on monitors per test,
+     * for the tests that contended monitors.
+     *
+     * @param contention  Blocked and wait time in milliseconds per test.
+     * @param packageName The name of the package.
+     */
+    public void drawClusteredHistogramsForMonitorContention(final HashMap<String, ArrayList<Double>> contention,
+                                                            final String packageName) {
+        if (contention.isEmpty()) {
+            return;
+        }
+        CategoryChart chart = new CategoryChartBuilder()
+                .width(1200)
+                .height(1000)
+                .title("Monitor contention per test for package")
+                .xAxisTitle("Test")
+                .yAxisTitle("Blocked / wait time (ms)")
+                .build();
+
+        chart.getStyler().setLegendPosition(Styler.LegendPosition.InsideNW);
+        chart.getStyler().setAvailableSpaceFill(.96);
+        chart.getStyler().setOverlapped(false);
+
+        List<Double> blocked = new ArrayList<>();
+        List<Double> waited = new ArrayList<>();
+        List<String> testNames = new ArrayList<>();
+        contention.forEach((k, v) -> {
+            blocked.add(v.get(0));
+            waited.add(v.get(1));
+            testNames.add(k);
+        });
+        chart.getStyler().setXAxisTicksVisible(true);
+        chart.getStyler().setXAxisLabelRotation(LABEL_ROTATION);
+        chart.addSeries("Blocked", testNames, blocked);
+        chart.addSeries("Waiting", testNames, waited);
+
+        try {
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + packageName + "/" + "Package-Monitor-Contention-Summary", BitmapEncoder.BitmapFormat.PNG, DPI);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Draws a flame graph and writes the collapsed stacks of a calling context tree.
+     *
+     * @param packageName The name of the package.
+     * @param name        The name of the graph.
+     * @param callTree    The calling context tree to draw.
+     */
+    public void drawFlameGraph(final String packageName, final String name, final CallingContextTree callTree) {
+        File directory = new File(this.outputDirectory + packageName);
+        directory.mkdirs();
+        FlameGraph graph = new FlameGraph(callTree);
+        try {
+            graph.writeCollapsed(new File(directory, fileName(name) + ".collapsed"));
+            graph.writeSvg(new File(directory, fileName(name) + ".svg"), name);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Draws the trend of a metric over the recorded builds for the tests of a class.
+     *
+     * @param packageName The name of the package.
+     * @param className   The name of the class.
+     * @param metric      The name of the metric.
+     * @param trends      The builds and metric values, as two rows, per test.
+     */
+    public void drawTrendChart(final String packageName, final String className, final String metric,
+                               final Map<String, long[][]> trends) {
+        File f = new File(this.outputDirectory + packageName);
+        f.mkdirs();
+        XYChart chart = new XYChartBuilder()
+                .width(1200)
+                .height(800)
+                .title(className + " " + metric)
+                .xAxisTitle("Build")
+                .yAxisTitle(metric)
+                .build();
+        chart.getStyler().setLegendPosition(Styler.LegendPosition.OutsideE);
+        trends.forEach((test, series) -> {
+            if (series[0].length > 0) {
+                chart.addSeries(test, toDoubles(series[0]), toDoubles(series[1]));
+            }
+        });
+        if (chart.getSeriesMap().isEmpty()) {
+            return;
+        }
+        try {
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + packageName + "/" + fileName(className + "-Trend-" + metric), BitmapEncoder.BitmapFormat.PNG, DPI);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes a chart file name of a name, replacing each run of characters
+     * unsafe in file names with an underscore.
+     *
+     * @param name the name, such as a test name.
+     * @return the file name.
+     */
+    static String fileName(final String name) {
+        return UNSAFE_FILE_NAME.matcher(name).replaceAll("_");
+    }
+
+    private static double[] toDoubles(final long[] values) {
+        double[] doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            doubles[i] = values[i];
+        }
+        return doubles;
+    }
+
+    /**
+     * Draws a bar chart of the suite hot spots.
+     *
+     * @param title    The chart title.
+     * @param fileName The name of the chart file.
+     * @param hotSpots The counts by name, most frequent first.
+     */
+    public void drawHotSpotChart(final String title, final String fileName, final Map<String, Long> hotSpots) {
+        if (hotSpots.isEmpty()) {
+            return;
+        }
+        CategoryChart chart = new CategoryChartBuilder()
+                .width(1200)
+                .height(1000)
+                .title(title)
+                .xAxisTitle("Name")
+                .yAxisTitle("Count")
+                .build();
+        chart.getStyler().setLegendVisible(false);
+        chart.getStyler().setXAxisLabelRotation(LABEL_ROTATION);
+        chart.addSeries(title, new ArrayList<>(hotSpots.keySet()), new ArrayList<>(hotSpots.values()));
+        try {
+            BitmapEncoder.saveBitmapWithDPI(chart, this.outputDirectory + fileName, BitmapEncoder.BitmapFormat.PNG, DPI);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
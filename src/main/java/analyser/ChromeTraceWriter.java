@@ -0,0 +1,308 @@
+package analyser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the collected events as Chrome trace event JSON,
+ * viewable in chrome://tracing or the Perfetto UI.
+ * <br>
+ * <p>
+ * Events are streamed to numbered chunk files of about the configured
+ * size in bytes. Calls are nested per thread. Each chunk is a complete
+ * trace on its own: the calls still running when a chunk is full are
+ * ended in it and begun again at the start of the next chunk.
+ * </p>
+ */
+final class ChromeTraceWriter implements TraceEventSink {
+
+    /**
+     * Chunk file name prefix.
+     */
+    private static final String CHUNK_PREFIX = "timeline-";
+
+    /**
+     * Chunk file name extension.
+     */
+    private static final String CHUNK_EXTENSION = ".json";
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /**
+     * Category of test events.
+     */
+    private static final String TEST_CATEGORY = "test";
+
+    /**
+     * Category of method events.
+     */
+    private static final String METHOD_CATEGORY = "method";
+
+    /**
+     * A call that has begun and not yet ended.
+     */
+    private static final class OpenEvent {
+
+        /**
+         * The event name.
+         */
+        private final String name;
+
+        /**
+         * The event category.
+         */
+        private final String category;
+
+        /**
+         * The thread id.
+         */
+        private final long threadId;
+
+        /**
+         * Initialises a new OpenEvent.
+         *
+         * @param eventName     the event name.
+         * @param eventCategory the event category.
+         * @param thread        the thread id.
+         */
+        OpenEvent(final String eventName, final String eventCategory, final long thread) {
+            this.name = eventName;
+            this.category = eventCategory;
+            this.threadId = thread;
+        }
+    }
+
+    /**
+     * The directory to write the chunks to.
+     */
+    private final File directory;
+
+    /**
+     * The size after which a new chunk is started, in bytes.
+     */
+    private final long chunkSize;
+
+    /**
+     * Calls begun and not yet ended on each thread, innermost first, by thread id.
+     */
+    private final Map<Long, Deque<OpenEvent>> open = new LinkedHashMap<>();
+
+    /**
+     * The time of the first event in nanoseconds.
+     */
+    private long origin = -1;
+
+    /**
+     * The writer of the current chunk.
+     */
+    private BufferedWriter writer;
+
+    /**
+     * Number of chunks started.
+     */
+    private int chunks;
+
+    /**
+     * Bytes written to the current chunk.
+     */
+    private long written;
+
+    /**
+     * Whether an event was written to the current chunk.
+     */
+    private boolean chunkStarted;
+
+    /**
+     * Initialises a new ChromeTraceWriter.
+     *
+     * @param outputDirectory the directory to write the chunks to.
+     * @param maxChunkSize    the size in bytes after which a new chunk is started.
+     */
+    ChromeTraceWriter(final File outputDirectory, final long maxChunkSize) {
+        this.directory = outputDirectory;
+        this.chunkSize = maxChunkSize;
+    }
+
+    @Override
+    public void testStarted(final String test, final long threadId, final long nanos) {
+        this.begin(new OpenEvent(test, TEST_CATEGORY, threadId), nanos);
+    }
+
+    @Override
+    public void methodEntered(final String method, final long threadId, final long nanos) {
+        this.begin(new OpenEvent(method, METHOD_CATEGORY, threadId), nanos);
+    }
+
+    @Override
+    public void methodExited(final String method, final long threadId, final long nanos) {
+        Deque<OpenEvent> calls = this.open.get(threadId);
+        if (calls != null && !calls.isEmpty()) {
+            this.end(threadId, nanos);
+        }
+    }
+
+    @Override
+    public void testFinished(final String test, final long threadId, final long nanos) {
+        for (Long thread : new ArrayList<>(this.open.keySet())) {
+            while (!this.open.get(thread).isEmpty()) {
+                this.end(thread, nanos);
+            }
+        }
+        this.open.clear();
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.closeChunk();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Begins a call.
+     *
+     * @param event the call.
+     * @param nanos the time of the event in nanoseconds.
+     */
+    private void begin(final OpenEvent event, final long nanos) {
+        try {
+            this.rollIfFull(nanos);
+            this.write("B", event, nanos);
+            this.open.computeIfAbsent(event.threadId, t -> new ArrayDeque<>()).push(event);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Ends the innermost call of a thread.
+     *
+     * @param threadId the thread id.
+     * @param nanos    the time of the event in nanoseconds.
+     */
+    private void end(final long threadId, final long nanos) {
+        try {
+            this.rollIfFull(nanos);
+            this.write("E", this.open.get(threadId).pop(), nanos);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts a new chunk if there is none or the current one is full,
+     * carrying the running calls over to it.
+     *
+     * @param nanos the time of the event in nanoseconds.
+     * @throws IOException if a chunk cannot be written.
+     */
+    private void rollIfFull(final long nanos) throws IOException {
+        if (this.writer != null && this.written < this.chunkSize) {
+            return;
+        }
+        if (this.writer != null) {
+            for (Deque<OpenEvent> calls : this.open.values()) {
+                for (OpenEvent event : calls) {
+                    this.write("E", event, nanos);
+                }
+            }
+            this.closeChunk();
+        }
+        if (this.origin < 0) {
+            this.origin = nanos;
+        }
+        this.directory.mkdirs();
+        this.chunks++;
+        File chunk = new File(this.directory, String.format("%s%04d%s", CHUNK_PREFIX, this.chunks, CHUNK_EXTENSION));
+        this.writer = Files.newBufferedWriter(chunk.toPath(), StandardCharsets.UTF_8);
+        String header = "{\"displayTimeUnit\":\"ns\",\"traceEvents\":[";
+        this.writer.write(header);
+        this.written = utf8Length(header);
+        this.chunkStarted = false;
+        for (Deque<OpenEvent> calls : this.open.values()) {
+            Iterator<OpenEvent> outermostFirst = calls.descendingIterator();
+            while (outermostFirst.hasNext()) {
+                this.write("B", outermostFirst.next(), nanos);
+            }
+        }
+    }
+
+    /**
+     * Writes an event.
+     *
+     * @param phase the event phase.
+     * @param event the call the event belongs to.
+     * @param nanos the time of the event in nanoseconds.
+     * @throws IOException if the event cannot be written.
+     */
+    private void write(final String phase, final OpenEvent event, final long nanos) throws IOException {
+        String json = (this.chunkStarted ? "," : "")
+                + System.lineSeparator()
+                + "{\"name\":\"" + escape(event.name)
+                + "\",\"cat\":\"" + event.category
+                + "\",\"ph\":\"" + phase
+                + "\",\"ts\":" + String.format(Locale.ROOT, "%.3f", (nanos - this.origin) / NANOS_PER_MICRO)
+                + ",\"pid\":1,\"tid\":" + event.threadId
+                + "}";
+        this.writer.write(json);
+        this.written += utf8Length(json);
+        this.chunkStarted = true;
+    }
+
+    /**
+     * Closes the current chunk, if any.
+     *
+     * @throws IOException if the chunk cannot be written.
+     */
+    private void closeChunk() throws IOException {
+        if (this.writer == null) {
+            return;
+        }
+        this.writer.write(System.lineSeparator() + "]}" + System.lineSeparator());
+        this.writer.close();
+        this.writer = null;
+    }
+
+    /**
+     * Counts the bytes of a string encoded in UTF-8, without encoding it.
+     *
+     * @param value the string.
+     * @return the encoded length in bytes.
+     */
+    private static long utf8Length(final String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -3,33 +3,58 @@ package analyser;
 import com.sun.jdi.AbsentInformationException;
 import com.sun.jdi.ArrayReference;
 import com.sun.jdi.Bootstrap;
+import com.sun.jdi.ClassNotLoadedException;
+import com.sun.jdi.ClassType;
 import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.InvalidTypeException;
+import com.sun.jdi.InvocationException;
 import com.sun.jdi.LocalVariable;
 import com.sun.jdi.Location;
+import com.sun.jdi.LongValue;
+import com.sun.jdi.Method;
 import com.sun.jdi.ReferenceType;
 import com.sun.jdi.StackFrame;
 import com.sun.jdi.StringReference;
+import com.sun.jdi.ThreadReference;
 import com.sun.jdi.Value;
 import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.connect.AttachingConnector;
 import com.sun.jdi.connect.Connector;
 import com.sun.jdi.connect.IllegalConnectorArgumentsException;
 import com.sun.jdi.connect.LaunchingConnector;
+import com.sun.jdi.connect.ListeningConnector;
 import com.sun.jdi.connect.VMStartException;
+import com.sun.jdi.event.BreakpointEvent;
 import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.event.Event;
 import com.sun.jdi.event.LocatableEvent;
+import com.sun.jdi.event.MethodExitEvent;
 import com.sun.jdi.request.BreakpointRequest;
 import com.sun.jdi.request.ClassPrepareRequest;
 import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.ExceptionRequest;
 import com.sun.jdi.request.MethodEntryRequest;
 import com.sun.jdi.request.MethodExitRequest;
 import org.apache.maven.project.MavenProject;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public final class Connection {
 
@@ -37,7 +62,55 @@ public final class Connection {
      * Line for breakpoint to read the test methods array
      * from the TestRunner in the java debug interface.
      */
-    private static final int[] BREAK_POINT_LINES = {71, 72};
+    private static final int[] BREAK_POINT_LINES = {
+            TestAnalyser.ENABLE_METHOD_ENTRY_LINE,
+            TestAnalyser.DISABLE_METHOD_ENTRY_LINE
+    };
+
+    /**
+     * Name of the socket attaching connector.
+     */
+    private static final String SOCKET_ATTACH = "com.sun.jdi.SocketAttach";
+
+    /**
+     * Name of the socket listening connector.
+     */
+    private static final String SOCKET_LISTEN = "com.sun.jdi.SocketListen";
+
+    /**
+     * Host the runner daemon listens on.
+     */
+    private static final String LOCALHOST = "localhost";
+
+    /**
+     * Attempts to attach to a freshly started runner daemon.
+     */
+    private static final int DAEMON_ATTACH_ATTEMPTS = 50;
+
+    /**
+     * Delay between attempts to attach to the runner daemon in milliseconds.
+     */
+    private static final long DAEMON_ATTACH_DELAY = 200;
+
+    /**
+     * Log file for the runner daemon output.
+     */
+    private static final String DAEMON_LOG_FILE = "analyser-daemon.log";
+
+    /**
+     * The lowest port derived for a runner daemon.
+     */
+    private static final int DAEMON_PORT_BASE = 20000;
+
+    /**
+     * Number of port pairs derived runner daemon ports are spread over.
+     */
+    private static final int DAEMON_PORT_PAIRS = 10000;
+
+    /**
+     * The field of the runner daemon holding the hash of its classpath.
+     */
+    private static final String DAEMON_HASH_FIELD = "classpathHash";
 
     /**
      * The suspend policy for event requests.
@@ -65,6 +138,66 @@ public final class Connection {
      */
     private File testOutputDirectory;
 
+    /**
+     * The project under test.
+     */
+    private MavenProject mavenProject;
+
+    /**
+     * The class data sharing archive for the test runner, if enabled.
+     */
+    private SharedArchive sharedArchive;
+
+    /**
+     * The file listing the test classes for the launched test runner to skip, if any.
+     */
+    private File excludedClasses;
+
+    /**
+     * Number of times the launched test runner runs the tests of each class.
+     */
+    private int iterations = 1;
+
+    /**
+     * Whether to report the classes each test loads.
+     */
+    private boolean classLoading;
+
+    /**
+     * The request for the classes prepared in the test VM, if class loading is reported.
+     */
+    private ClassPrepareRequest classLoadingRequest;
+
+    /**
+     * Whether to report the monitors contended during each test.
+     */
+    private boolean monitorContention;
+
+    /**
+     * The requests for monitor contention and waits in the project classes.
+     */
+    private final List<EventRequest> monitorRequestList = new ArrayList<>();
+
+    /**
+     * Whether to count the exceptions thrown during each test.
+     */
+    private boolean exceptionTracking;
+
+    /**
+     * The listening connector waiting for a test VM to attach.
+     */
+    private ListeningConnector listeningConnector;
+
+    /**
+     * The arguments of the listening connector.
+     */
+    private Map<String, Connector.Argument> listenArguments;
+
+    /**
+     * Breakpoint marking the end of a runner daemon job.
+     */
+    private BreakpointRequest jobFinishedRequest;
+
     /**
      * List of method entry requests on this vm.
      */
@@ -75,6 +208,12 @@ public final class Connection {
      */
     private List<MethodExitRequest> methodExitRequestList = new ArrayList<>();
 
+    /**
+     * Method entry and exit requests tracing the calibration
+     * of the tracing overhead in the test runner.
+     */
+    private List<EventRequest> calibrationRequests = new ArrayList<>();
+
     /**
      * List of inclusion filters for the method exit
      * and entry requests.
@@ -82,6 +221,11 @@ public final class Connection {
     private List<String> methodEventFilters = new ArrayList<>();
 
 
+    /**
+     * The platform classes left out of the classes loaded by the tests.
+     */
+    private static final String[] PLATFORM_CLASSES = {"java.*", "javax.*", "jdk.*", "sun.*", "com.sun.*"};
+
     /**
      * The classes to include in the method entry
      * and exit requests.
@@ -103,6 +247,7 @@ public final class Connection {
                final MavenProject project) {
         this.testClasspathElements = testClassPathElements;
         this.testOutputDirectory = testDirectory;
+        this.mavenProject = project;
         this.methodEventFilters.add(testRunner.getName());
         this.methodEventFilters.add(project.getGroupId() + "." + toRegExFilter(project.getName()));
         this.methodEventFilters.addAll(Arrays.asList(INCLUDED_CLASSES));
@@ -112,7 +257,7 @@ public final class Connection {
         String pathSeparator = System.getProperty("path.separator");
         StringBuilder classpath = new StringBuilder();
         classpath.append("-cp \"");
-        for (String pathElement : testClasspathElements) {
+        for (String pathElement : runnerClasspathElements()) {
             classpath.append(pathElement).append(pathSeparator);
         }
         classpath.append("\"");
@@ -120,6 +265,39 @@ public final class Connection {
 
     }
 
+    /**
+     * Gets the classpath elements for the test runner VM.
+     * A class data sharing archive can only hold classes from jars,
+     * so directories are left to the test runner class loader.
+     *
+     * @return the classpath elements.
+     */
+    private List<String> runnerClasspathElements() {
+        if (this.sharedArchive == null) {
+            return this.testClasspathElements;
+        }
+        return this.classpathElements(false);
+    }
+
+    /**
+     * Gets the classpath directories for the test runner to load
+     * when running with a class data sharing archive.
+     *
+     * @return the directories for the test runner class loader.
+     */
+    private List<String> runnerDirectories() {
+        if (this.sharedArchive == null) {
+            return new ArrayList<>();
+        }
+        return this.classpathElements(true);
+    }
+
+    private List<String> classpathElements(final boolean directories) {
+        return this.testClasspathElements.stream()
+                .filter(element -> new File(element).isDirectory() == directories)
+                .collect(Collectors.toList());
+    }
+
     VirtualMachine getVm() {
         return this.vm;
     }
@@ -128,14 +306,387 @@ public final class Connection {
         LaunchingConnector launchingConnector = Bootstrap.virtualMachineManager().defaultConnector();
         Map<String, Connector.Argument> arguments = launchingConnector.defaultArguments();
         // "main" is test runner and command line arguments i.e. "java TestRunner args".
-        arguments.get("main").setValue(testRunner.getName()
-                + " "
-                + this.wrapInQuotes(testOutputDirectory.getAbsolutePath()));
-        arguments.get("options").setValue(this.buildClasspath());
+        StringBuilder main = new StringBuilder(testRunner.getName())
+                .append(" ")
+                .append(this.wrapInQuotes(testOutputDirectory.getAbsolutePath()));
+        for (String directory : this.runnerDirectories()) {
+            main.append(" ").append(this.wrapInQuotes(directory));
+        }
+        arguments.get("main").setValue(main.toString());
+        String options = this.buildClasspath();
+        if (this.sharedArchive != null && this.sharedArchive.exists()) {
+            options += " " + this.sharedArchive.vmOption();
+        }
+        if (this.excludedClasses != null) {
+            options += " -D" + TestRunner.EXCLUDED_CLASSES_PROPERTY + "="
+                    + this.wrapInQuotes(this.excludedClasses.getAbsolutePath());
+        }
+        if (this.iterations > 1) {
+            options += " -D" + TestRunner.ITERATIONS_PROPERTY + "=" + this.iterations;
+        }
+        arguments.get("options").setValue(options);
         this.vm = launchingConnector.launch(arguments);
+        this.enableCalibrationRequests();
         this.enableClassPrepareRequest();
         this.createMethodEntryRequest();
         this.createMethodExitRequest();
+        this.createClassLoadingRequest();
+        this.createMonitorRequests();
+        this.createExceptionRequests();
+    }
+
+    /**
+     * Sets the number of times the launched test runner runs the tests of each class.
+     *
+     * @param runs the number of runs.
+     */
+    void setIterations(final int runs) {
+        this.iterations = runs;
+    }
+
+    /**
+     * Makes the launched test runner skip the test classes listed in a file.
+     *
+     * @param classList the file listing a test class name per line.
+     */
+    void setExcludedClasses(final File classList) {
+        this.excludedClasses = classList;
+    }
+
+    /**
+     * Uses a class data sharing archive for the launched test runner,
+     * keyed by the test runner classpath.
+     *
+     * @param archiveDirectory the directory to keep archives in.
+     * @return the archive used by the test runner.
+     */
+    SharedArchive useSharedArchive(final File archiveDirectory) {
+        String pathSeparator = System.getProperty("path.separator");
+        this.sharedArchive = new SharedArchive(archiveDirectory,
+                String.join(pathSeparator, this.classpathElements(false)));
+        return this.sharedArchive;
+    }
+
+    /**
+     * Creates the class data sharing archive from a training run
+     * of the test runner if it does not exist yet.
+     *
+     * @throws IOException          if the archive cannot be created.
+     * @throws InterruptedException if interrupted waiting for the training run.
+     */
+    void createSharedArchive() throws IOException, InterruptedException {
+        if (this.sharedArchive == null || this.sharedArchive.exists()) {
+            return;
+        }
+        String pathSeparator = System.getProperty("path.separator");
+        List<String> runCommand = new ArrayList<>();
+        runCommand.add("-cp");
+        runCommand.add(String.join(pathSeparator, this.runnerClasspathElements()));
+        runCommand.add(testRunner.getName());
+        runCommand.add(testOutputDirectory.getAbsolutePath());
+        runCommand.addAll(this.runnerDirectories());
+        this.sharedArchive.train(javaExecutable(), runCommand);
+    }
+
+    /**
+     * Attaches to the runner daemon, starting it if it is not running,
+     * and submits a job to run the tests of the project under test.
+     * A daemon started with another classpath, for another project or
+     * before a dependency changed, is stopped and started again.
+     *
+     * @param debugPort the port the daemon debug agent listens on.
+     * @param jobPort   the port the daemon accepts jobs on.
+     * @return true if a daemon started with another classpath was restarted.
+     * @throws IOException                        if the daemon cannot be reached.
+     * @throws IllegalConnectorArgumentsException if the connector arguments are invalid.
+     * @throws AbsentInformationException         if the runner has no debug info.
+     * @throws InterruptedException               if interrupted waiting for the daemon to start.
+     */
+    boolean attachToDaemon(final int debugPort, final int jobPort) throws IOException,
+            IllegalConnectorArgumentsException, AbsentInformationException, InterruptedException {
+        AttachingConnector attachingConnector = Bootstrap.virtualMachineManager().attachingConnectors()
+                .stream()
+                .filter(c -> c.name().equals(SOCKET_ATTACH))
+                .findFirst()
+                .orElseThrow(() -> new IOException("No socket attaching connector available"));
+        Map<String, Connector.Argument> arguments = attachingConnector.defaultArguments();
+        arguments.get("hostname").setValue(LOCALHOST);
+        arguments.get("port").setValue(Integer.toString(debugPort));
+        String classpath = this.daemonClasspath();
+        String classpathHash = hashClasspath(classpath);
+        boolean restarted = false;
+        try {
+            this.vm = attachingConnector.attach(arguments);
+        } catch (IOException e) {
+            this.vm = null;
+        }
+        if (this.vm != null && !classpathHash.equals(this.runningDaemonHash())) {
+            this.vm.dispose();
+            this.vm = null;
+            stopDaemon(jobPort);
+            awaitPortFree(debugPort);
+            restarted = true;
+        }
+        if (this.vm == null) {
+            this.startDaemon(classpath, classpathHash, debugPort, jobPort);
+            awaitDaemon(jobPort);
+            this.vm = attachingConnector.attach(arguments);
+        }
+        List<ReferenceType> runners = this.vm.classesByName(testRunner.getName());
+        if (runners.isEmpty()) {
+            this.enableClassPrepareRequest();
+        } else {
+            this.setBreakPoints(runners.get(0));
+        }
+        ReferenceType daemon = this.vm.classesByName(RunnerDaemon.class.getName()).get(0);
+        Location jobFinished = daemon.methodsByName("jobFinished").get(0).location();
+        this.jobFinishedRequest = this.vm.eventRequestManager().createBreakpointRequest(jobFinished);
+        this.jobFinishedRequest.setSuspendPolicy(suspendPolicy);
+        this.jobFinishedRequest.enable();
+        this.createMethodEntryRequest();
+        this.createMethodExitRequest();
+        this.createClassLoadingRequest();
+        this.createMonitorRequests();
+        this.createExceptionRequests();
+        this.enableCalibrationRequests();
+        sendDaemonCommand(jobPort, this.buildDaemonJob());
+        return restarted;
+    }
+
+    /**
+     * Derives the runner daemon debug port of a project from its base
+     * directory, so the modules of a parallel build each get their own
+     * daemon. The job port is the port after it.
+     *
+     * @param project the project under test.
+     * @return the daemon debug port.
+     */
+    static int daemonPort(final MavenProject project) {
+        return DAEMON_PORT_BASE
+                + 2 * Math.floorMod(project.getBasedir().getAbsolutePath().hashCode(), DAEMON_PORT_PAIRS);
+    }
+
+    /**
+     * Reads the hash of the classpath the attached runner daemon was started with.
+     *
+     * @return the hash, empty if the daemon was started without one.
+     */
+    private String runningDaemonHash() {
+        ReferenceType daemon = this.vm.classesByName(RunnerDaemon.class.getName()).get(0);
+        Value hash = daemon.getValue(daemon.fieldByName(DAEMON_HASH_FIELD));
+        return hash == null ? "" : ((StringReference) hash).value();
+    }
+
+    /**
+     * Hashes a classpath by its elements and the size and modification time
+     * of each, so a rebuilt snapshot dependency changes the hash.
+     *
+     * @param classpath the classpath.
+     * @return the hash.
+     */
+    private static String hashClasspath(final String classpath) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String element : classpath.split(File.pathSeparator)) {
+            File file = new File(element);
+            digest.update((element + "|" + file.length() + "|" + file.lastModified() + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return new BigInteger(1, digest.digest()).toString(Character.MAX_RADIX);
+    }
+
+    /**
+     * Waits for a stopped runner daemon to release its debug port.
+     *
+     * @param port the daemon debug port.
+     * @throws IOException          if the port is not released in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void awaitPortFree(final int port) throws IOException, InterruptedException {
+        for (int attempt = 0; attempt < DAEMON_ATTACH_ATTEMPTS; attempt++) {
+            try {
+                new ServerSocket(port, 1, InetAddress.getLoopbackAddress()).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(DAEMON_ATTACH_DELAY);
+            }
+        }
+        throw new IOException("Runner daemon did not release port " + port);
+    }
+
+    /**
+     * Listens for a test VM started with a debug agent
+     * connecting back to the analyser.
+     *
+     * @param port    the port to listen on, 0 for any free port.
+     * @param timeout how long to wait for the VM to connect in milliseconds.
+     * @return the address for the debug agent of the test VM to connect to.
+     * @throws IOException                        if the port cannot be listened on.
+     * @throws IllegalConnectorArgumentsException if the connector arguments are invalid.
+     */
+    String startListening(final int port, final long timeout) throws IOException, IllegalConnectorArgumentsException {
+        this.listeningConnector = Bootstrap.virtualMachineManager().listeningConnectors()
+                .stream()
+                .filter(c -> c.name().equals(SOCKET_LISTEN))
+                .findFirst()
+                .orElseThrow(() -> new IOException("No socket listening connector available"));
+        this.listenArguments = this.listeningConnector.defaultArguments();
+        this.listenArguments.get("localAddress").setValue(LOCALHOST);
+        this.listenArguments.get("port").setValue(Integer.toString(port));
+        this.listenArguments.get("timeout").setValue(Long.toString(timeout));
+        return this.listeningConnector.startListening(this.listenArguments);
+    }
+
+    /**
+     * Accepts the test VM connecting to the listening connector
+     * and traces every test it runs. Only the first VM to connect
+     * is accepted.
+     *
+     * @throws IOException                        if the VM does not connect.
+     * @throws IllegalConnectorArgumentsException if the connector arguments are invalid.
+     */
+    void acceptAttachedVm() throws IOException, IllegalConnectorArgumentsException {
+        try {
+            this.vm = this.listeningConnector.accept(this.listenArguments);
+        } finally {
+            this.listeningConnector.stopListening(this.listenArguments);
+        }
+        this.createMethodEntryRequest();
+        this.createMethodExitRequest();
+        this.createClassLoadingRequest();
+        this.createMonitorRequests();
+        this.createExceptionRequests();
+        this.enableMethodEntryRequest();
+        this.enableMethodExitRequest();
+        this.enableMonitorRequests();
+    }
+
+    /**
+     * Whether the breakpoint marks the end of a runner daemon job.
+     *
+     * @param event the breakpoint event.
+     * @return true if the daemon finished the job.
+     */
+    boolean isJobFinished(final BreakpointEvent event) {
+        return event.request().equals(this.jobFinishedRequest);
+    }
+
+    /**
+     * Detaches from the runner daemon, leaving it running.
+     */
+    void detach() {
+        this.vm.dispose();
+    }
+
+    /**
+     * Stops the runner daemon.
+     *
+     * @param jobPort the port the daemon accepts jobs on.
+     * @throws IOException if the daemon cannot be reached.
+     */
+    static void stopDaemon(final int jobPort) throws IOException {
+        sendDaemonCommand(jobPort, RunnerDaemon.STOP_COMMAND + System.lineSeparator());
+    }
+
+    private static void sendDaemonCommand(final int jobPort, final String command) throws IOException {
+        try (Socket socket = new Socket(LOCALHOST, jobPort);
+             Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(command);
+        }
+    }
+
+    private String buildDaemonJob() {
+        String separator = System.lineSeparator();
+        StringBuilder job = new StringBuilder();
+        job.append(RunnerDaemon.RUN_COMMAND).append(separator);
+        job.append(this.testOutputDirectory.getAbsolutePath()).append(separator);
+        for (String directory : this.projectOutputDirectories()) {
+            job.append(directory).append(separator);
+        }
+        job.append(separator);
+        return job.toString();
+    }
+
+    private List<String> projectOutputDirectories() {
+        return Arrays.asList(
+                this.mavenProject.getBuild().getTestOutputDirectory(),
+                this.mavenProject.getBuild().getOutputDirectory());
+    }
+
+    /**
+     * Builds the runner daemon classpath: the test classpath
+     * leaving out the project output directories which are
+     * loaded per job.
+     *
+     * @return the daemon classpath.
+     */
+    private String daemonClasspath() {
+        String pathSeparator = System.getProperty("path.separator");
+        List<String> outputDirectories = this.projectOutputDirectories();
+        StringBuilder classpath = new StringBuilder(
+                testRunner.getProtectionDomain().getCodeSource().getLocation().getPath());
+        for (String pathElement : testClasspathElements) {
+            if (!outputDirectories.contains(pathElement)) {
+                classpath.append(pathSeparator).append(pathElement);
+            }
+        }
+        return classpath.toString();
+    }
+
+    /**
+     * Starts the runner daemon.
+     *
+     * @param classpath     the daemon classpath.
+     * @param classpathHash the hash of the daemon classpath.
+     * @param debugPort     the port for the daemon debug agent.
+     * @param jobPort       the port for the daemon to accept jobs on.
+     * @throws IOException if the daemon cannot be started.
+     */
+    private void startDaemon(final String classpath, final String classpathHash, final int debugPort,
+                             final int jobPort) throws IOException {
+        File log = new File(this.mavenProject.getBuild().getDirectory(), DAEMON_LOG_FILE);
+        log.getParentFile().mkdirs();
+        new ProcessBuilder(
+                javaExecutable(),
+                "-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=" + LOCALHOST + ":" + debugPort,
+                "-cp",
+                classpath,
+                RunnerDaemon.class.getName(),
+                Integer.toString(jobPort),
+                classpathHash)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                .start();
+    }
+
+    /**
+     * Waits for a freshly started runner daemon to accept jobs.
+     * An empty connection is ignored by the daemon.
+     *
+     * @param jobPort the port the daemon accepts jobs on.
+     * @throws IOException          if the daemon does not start in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void awaitDaemon(final int jobPort) throws IOException, InterruptedException {
+        IOException lastException = null;
+        for (int attempt = 0; attempt < DAEMON_ATTACH_ATTEMPTS; attempt++) {
+            Thread.sleep(DAEMON_ATTACH_DELAY);
+            try {
+                sendDaemonCommand(jobPort, "");
+                return;
+            } catch (IOException e) {
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    private static String javaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
     }
 
     String wrapInQuotes(final String in) {
@@ -151,12 +702,155 @@ public final class Connection {
         cpr.enable();
     }
 
+    /**
+     * Sets whether to report the classes each test loads.
+     *
+     * @param enabled whether to watch the classes prepared in the test VM.
+     */
+    void setClassLoading(final boolean enabled) {
+        this.classLoading = enabled;
+    }
+
+    /**
+     * Creates and enables the request for the project and dependency
+     * classes prepared in the test VM, if class loading is reported.
+     */
+    private void createClassLoadingRequest() {
+        if (!this.classLoading) {
+            return;
+        }
+        this.classLoadingRequest = this.vm.eventRequestManager().createClassPrepareRequest();
+        for (String platformClasses : PLATFORM_CLASSES) {
+            this.classLoadingRequest.addClassExclusionFilter(platformClasses);
+        }
+        this.classLoadingRequest.setSuspendPolicy(suspendPolicy);
+        this.classLoadingRequest.enable();
+    }
+
+    /**
+     * Whether the event is a class prepared in the test VM watched for class loading.
+     *
+     * @param event the event.
+     * @return true if the event is from the class loading request.
+     */
+    boolean isClassLoading(final Event event) {
+        return this.classLoadingRequest != null && event.request() == this.classLoadingRequest;
+    }
+
+    /**
+     * Sets whether to report the monitors contended during each test.
+     *
+     * @param enabled whether to watch monitor contention and waits in the test VM.
+     */
+    void setMonitorContention(final boolean enabled) {
+        this.monitorContention = enabled;
+    }
+
+    /**
+     * Creates the requests for the monitors contended and waited on, if
+     * monitor contention is reported and the test VM can report monitor
+     * events. The requests are enabled with the method requests, while a
+     * test class runs, so the waits and locks of test discovery and of the
+     * threads of the runner do not suspend the test VM. The requests are not
+     * filtered by class, as the filters match the
+     * innermost frame, which is in the platform for a wait or a synchronized
+     * platform method; the events are attributed to the traced classes by
+     * {@link #isTracedClass(String)}.
+     */
+    private void createMonitorRequests() {
+        if (!this.monitorContention) {
+            return;
+        }
+        if (!this.vm.canRequestMonitorEvents()) {
+            return;
+        }
+        EventRequestManager manager = this.vm.eventRequestManager();
+        this.monitorRequestList.add(manager.createMonitorContendedEnterRequest());
+        this.monitorRequestList.add(manager.createMonitorContendedEnteredRequest());
+        this.monitorRequestList.add(manager.createMonitorWaitRequest());
+        this.monitorRequestList.add(manager.createMonitorWaitedRequest());
+        for (EventRequest request : this.monitorRequestList) {
+            request.setSuspendPolicy(suspendPolicy);
+        }
+    }
+
+    /**
+     * Enables the requests for the monitors contended and waited on, if created.
+     */
+    void enableMonitorRequests() {
+        for (EventRequest request : this.monitorRequestList) {
+            request.enable();
+        }
+    }
+
+    /**
+     * Disables the requests for the monitors contended and waited on, if created.
+     */
+    void disableMonitorRequests() {
+        for (EventRequest request : this.monitorRequestList) {
+            request.disable();
+        }
+    }
+
+    /**
+     * Whether a class is matched by the class filters of the method requests.
+     *
+     * @param className the class name.
+     * @return true if the methods of the class are traced.
+     */
+    boolean isTracedClass(final String className) {
+        for (String filter : methodEventFilters) {
+            if (filter.endsWith("*") ? className.startsWith(filter.substring(0, filter.length() - 1))
+                    : filter.startsWith("*") ? className.endsWith(filter.substring(1)) : className.equals(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether monitor contention is to be reported but the test VM cannot report monitor events.
+     *
+     * @return true if the monitor requests could not be created.
+     */
+    boolean isMonitorContentionUnavailable() {
+        return this.monitorContention && this.monitorRequestList.isEmpty();
+    }
+
+    /**
+     * Sets whether to count the exceptions thrown during each test.
+     *
+     * @param enabled whether to watch the exceptions thrown in the test VM.
+     */
+    void setExceptionTracking(final boolean enabled) {
+        this.exceptionTracking = enabled;
+    }
+
+    /**
+     * Creates and enables the requests for the exceptions, caught and
+     * uncaught, thrown by methods of the traced classes, if exceptions are counted.
+     */
+    private void createExceptionRequests() {
+        if (!this.exceptionTracking) {
+            return;
+        }
+        for (String filter : methodEventFilters) {
+            ExceptionRequest request = this.vm.eventRequestManager().createExceptionRequest(null, true, true);
+            request.addClassFilter(filter);
+            request.setSuspendPolicy(suspendPolicy);
+            request.enable();
+        }
+    }
+
     private String toRegExFilter(final String classPrefix) {
         return classPrefix + ".*";
     }
 
     void setBreakPoints(final ClassPrepareEvent event) throws AbsentInformationException {
-        ReferenceType referenceType = event.referenceType();
+        this.setBreakPoints(event.referenceType());
+    }
+
+    private void setBreakPoints(final ReferenceType referenceType) throws AbsentInformationException {
         BreakpointRequest bpr;
         for (int breakpoint : BREAK_POINT_LINES) {
             Location loc = referenceType.locationsOfLine(breakpoint).get(0);
@@ -166,6 +860,75 @@ public final class Connection {
         }
     }
 
+    /**
+     * Traces the test runner calls while it calibrates the tracing overhead.
+     */
+    void enableCalibrationRequests() {
+        MethodEntryRequest entryRequest = this.vm.eventRequestManager().createMethodEntryRequest();
+        MethodExitRequest exitRequest = this.vm.eventRequestManager().createMethodExitRequest();
+        entryRequest.addClassFilter(testRunner.getName());
+        exitRequest.addClassFilter(testRunner.getName());
+        this.calibrationRequests.add(entryRequest);
+        this.calibrationRequests.add(exitRequest);
+        for (EventRequest request : this.calibrationRequests) {
+            request.setSuspendPolicy(suspendPolicy);
+            request.enable();
+        }
+    }
+
+    /**
+     * Whether the event traces the calibration of the tracing overhead.
+     *
+     * @param event the event.
+     * @return true if the event is from a calibration request.
+     */
+    boolean isCalibration(final Event event) {
+        return this.calibrationRequests.contains(event.request());
+    }
+
+    /**
+     * Reads the tracing overhead from the end of the calibration
+     * and stops tracing the calibration.
+     *
+     * @param event the exit event of the calibration.
+     * @return the wall clock and cpu cost of an event in nanoseconds.
+     */
+    long[] readCalibration(final MethodExitEvent event) {
+        this.vm.eventRequestManager().deleteEventRequests(this.calibrationRequests);
+        this.calibrationRequests.clear();
+        return toLongs((ArrayReference) event.returnValue());
+    }
+
+    /**
+     * Samples the clocks of a suspended thread in the test VM.
+     *
+     * @param thread the thread, suspended by an event.
+     * @return the sample, or null if the sampler is not loaded in the test VM.
+     * @throws InvocationException              if the sampler throws an exception.
+     * @throws IncompatibleThreadStateException if the thread is not suspended by an event.
+     * @throws InvalidTypeException             if the sampler arguments are invalid.
+     * @throws ClassNotLoadedException          if the sampler types are not loaded.
+     */
+    long[] sampleThread(final ThreadReference thread) throws InvocationException,
+            IncompatibleThreadStateException, InvalidTypeException, ClassNotLoadedException {
+        List<ReferenceType> samplers = this.vm.classesByName(ThreadSampler.class.getName());
+        if (samplers.isEmpty()) {
+            return null;
+        }
+        ClassType sampler = (ClassType) samplers.get(0);
+        Method sample = sampler.methodsByName("sample").get(0);
+        Value values = sampler.invokeMethod(thread, sample, Collections.emptyList(), ClassType.INVOKE_SINGLE_THREADED);
+        return toLongs((ArrayReference) values);
+    }
+
+    private static long[] toLongs(final ArrayReference array) {
+        long[] longs = new long[array.length()];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = ((LongValue) array.getValue(i)).value();
+        }
+        return longs;
+    }
+
     void createMethodExitRequest() {
         for (String filter : methodEventFilters) {
             MethodExitRequest request = this.vm.eventRequestManager().createMethodExitRequest();
@@ -220,6 +983,12 @@ public final class Connection {
         for (Value val : arrayValues) {
             tests.add(((StringReference) val).value());
         }
-        return new TestClassDataObj(name.value(), tests);
+        List<Value> budgetValues = ((ArrayReference) stackFrame.getValue(
+                stackFrame.visibleVariableByName("testBudgets"))).getValues();
+        long[] budgets = new long[budgetValues.size()];
+        for (int i = 0; i < budgets.length; i++) {
+            budgets[i] = ((LongValue) budgetValues.get(i)).value();
+        }
+        return new TestClassDataObj(name.value(), tests, TestBudget.of(tests, budgets));
     }
 }
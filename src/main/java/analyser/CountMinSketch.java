@@ -0,0 +1,120 @@
+package analyser;
+
+/**
+ * Count-min sketch of the frequencies of a stream of names.
+ * <br>
+ * <p>
+ * Estimates never undercount, and overcount by at most a small
+ * fraction of the stream length with high probability, in memory
+ * fixed by the depth and width of the sketch.
+ * </p>
+ * <p>
+ * Each name is hashed once to 64 bits and the column of each row is
+ * derived by double hashing from the two halves, h1 + row * h2, so the
+ * rows are pairwise independent without one hash function per row.
+ * Names colliding in {@link String#hashCode()} still get different columns.
+ * </p>
+ */
+final class CountMinSketch {
+
+    /**
+     * FNV-1a 64 bit offset basis.
+     */
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+    /**
+     * FNV-1a 64 bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /**
+     * The counters, a row per hash.
+     */
+    private final long[][] counts;
+
+    /**
+     * Mask selecting a column, the width is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * Initialises a new CountMinSketch.
+     *
+     * @param depth the number of rows.
+     * @param width the number of columns per row, rounded up to a power of two.
+     */
+    CountMinSketch(final int depth, final int width) {
+        int columns = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.counts = new long[Math.max(1, depth)][columns];
+        this.mask = columns - 1;
+    }
+
+    /**
+     * Counts an occurrence of a name.
+     *
+     * @param name the name.
+     */
+    void add(final String name) {
+        this.add(name, 1);
+    }
+
+    /**
+     * Counts occurrences of a name.
+     *
+     * @param name        the name.
+     * @param occurrences the number of occurrences.
+     */
+    void add(final String name, final long occurrences) {
+        long hash = hash(name);
+        for (int row = 0; row < this.counts.length; row++) {
+            this.counts[row][column(hash, row)] += occurrences;
+        }
+    }
+
+    /**
+     * Estimates the count of a name.
+     *
+     * @param name the name.
+     * @return the estimated count, never less than the true count.
+     */
+    long estimate(final String name) {
+        long hash = hash(name);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < this.counts.length; row++) {
+            estimate = Math.min(estimate, this.counts[row][column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Gets the column of a hash in a row.
+     *
+     * @param hash the 64 bit hash of the name.
+     * @param row  the row.
+     * @return the column.
+     */
+    private int column(final long hash, final int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return (h1 + row * h2) & this.mask;
+    }
+
+    /**
+     * Hashes a name to 64 bits with FNV-1a, finished with the
+     * MurmurHash3 mixer so every bit depends on every character.
+     *
+     * @param name the name.
+     * @return the hash.
+     */
+    static long hash(final String name) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ name.charAt(i)) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
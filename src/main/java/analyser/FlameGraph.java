@@ -0,0 +1,259 @@
+package analyser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Flame graph of a calling context tree.
+ * <br>
+ * <p>
+ * Writes the tree as collapsed stacks, one line of semicolon separated
+ * frames and the self time in nanoseconds per calling context, and as a
+ * self contained SVG flame graph. Both are written straight from the
+ * tree, so the size of the output is bounded by the number of distinct
+ * calling contexts rather than the length of the trace.
+ * </p>
+ */
+final class FlameGraph {
+
+    /**
+     * Width of the SVG image.
+     */
+    private static final int WIDTH = 1200;
+
+    /**
+     * Height of a frame.
+     */
+    private static final int FRAME_HEIGHT = 16;
+
+    /**
+     * Space around the graph.
+     */
+    private static final int PADDING = 10;
+
+    /**
+     * Space above the graph for the title.
+     */
+    private static final int TITLE_HEIGHT = 30;
+
+    /**
+     * Approximate width of a label character.
+     */
+    private static final double CHARACTER_WIDTH = 7;
+
+    /**
+     * Narrowest frame to draw.
+     */
+    private static final double MIN_FRAME_WIDTH = 0.1;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * The tree to draw.
+     */
+    private final CallingContextTree tree;
+
+    /**
+     * Inclusive time of each node, at least the time of its children.
+     */
+    private final long[] inclusive;
+
+    /**
+     * Depth of each node, the root is depth 0.
+     */
+    private final int[] depths;
+
+    /**
+     * Initialises a new FlameGraph of a tree.
+     *
+     * @param callTree the calling context tree to draw.
+     */
+    FlameGraph(final CallingContextTree callTree) {
+        this.tree = callTree;
+        this.inclusive = new long[callTree.size()];
+        this.depths = new int[callTree.size()];
+        // Children are always numbered after their parents.
+        for (int node = callTree.size() - 1; node > CallingContextTree.ROOT; node--) {
+            this.inclusive[node] = Math.max(this.inclusive[node], callTree.getTime(node));
+            this.inclusive[callTree.getParent(node)] += this.inclusive[node];
+        }
+        for (int node = CallingContextTree.ROOT + 1; node < callTree.size(); node++) {
+            this.depths[node] = this.depths[callTree.getParent(node)] + 1;
+        }
+    }
+
+    /**
+     * Writes the collapsed stacks of the tree.
+     *
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    void writeCollapsed(final File file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            List<String> frames = new ArrayList<>();
+            Deque<Integer> pending = new ArrayDeque<>(this.sortedChildren(CallingContextTree.ROOT));
+            while (!pending.isEmpty()) {
+                int node = pending.pop();
+                while (frames.size() >= this.depths[node]) {
+                    frames.remove(frames.size() - 1);
+                }
+                frames.add(this.tree.getMethod(node));
+                long self = this.selfTime(node);
+                if (self > 0) {
+                    writer.write(String.join(";", frames));
+                    writer.write(' ');
+                    writer.write(Long.toString(self));
+                    writer.newLine();
+                }
+                List<Integer> children = this.sortedChildren(node);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    pending.push(children.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the tree as an SVG flame graph.
+     *
+     * @param file  the file to write.
+     * @param title the title of the graph.
+     * @throws IOException if the file cannot be written.
+     */
+    void writeSvg(final File file, final String title) throws IOException {
+        int maxDepth = 0;
+        for (int depth : this.depths) {
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        int height = TITLE_HEIGHT + maxDepth * FRAME_HEIGHT + 2 * PADDING;
+        double scale = (WIDTH - 2.0 * PADDING) / Math.max(1, this.inclusive[CallingContextTree.ROOT]);
+        double[] x = new double[this.tree.size()];
+        x[CallingContextTree.ROOT] = PADDING;
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" standalone=\"no\"?>");
+            writer.newLine();
+            writer.write("<svg version=\"1.1\" width=\"" + WIDTH + "\" height=\"" + height
+                    + "\" xmlns=\"http://www.w3.org/2000/svg\" font-family=\"Verdana\" font-size=\"12\">");
+            writer.newLine();
+            writer.write("<rect width=\"100%\" height=\"100%\" fill=\"#f8f8f8\"/>");
+            writer.newLine();
+            writer.write("<text x=\"" + (WIDTH / 2) + "\" y=\"" + (TITLE_HEIGHT - PADDING)
+                    + "\" text-anchor=\"middle\" font-size=\"16\">" + escape(title) + "</text>");
+            writer.newLine();
+            Deque<Integer> pending = new ArrayDeque<>();
+            pending.push(CallingContextTree.ROOT);
+            while (!pending.isEmpty()) {
+                int node = pending.pop();
+                double childX = x[node];
+                for (int child : this.sortedChildren(node)) {
+                    x[child] = childX;
+                    childX += this.inclusive[child] * scale;
+                    pending.push(child);
+                }
+                double width = this.inclusive[node] * scale;
+                if (node == CallingContextTree.ROOT || width < MIN_FRAME_WIDTH) {
+                    continue;
+                }
+                double y = height - PADDING - this.depths[node] * FRAME_HEIGHT;
+                this.writeFrame(writer, node, x[node], y, width);
+            }
+            writer.write("</svg>");
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Writes a single frame.
+     *
+     * @param writer the SVG writer.
+     * @param node   the node of the frame.
+     * @param x      the left of the frame.
+     * @param y      the top of the frame.
+     * @param width  the width of the frame.
+     * @throws IOException if the frame cannot be written.
+     */
+    private void writeFrame(final BufferedWriter writer, final int node, final double x,
+                            final double y, final double width) throws IOException {
+        String method = this.tree.getMethod(node);
+        writer.write(String.format(Locale.ROOT, "<g><title>%s (%.3f ms, %d calls)</title>"
+                        + "<rect x=\"%.2f\" y=\"%.2f\" width=\"%.2f\" height=\"%d\" fill=\"%s\" rx=\"2\"/>",
+                escape(method), this.inclusive[node] / NANOS_PER_MILLI, this.tree.getCalls(node),
+                x, y, width, FRAME_HEIGHT - 1, colour(method)));
+        int characters = (int) ((width - 6) / CHARACTER_WIDTH);
+        if (characters > 2) {
+            String label = method.length() <= characters
+                    ? method
+                    : method.substring(0, characters - 2) + "..";
+            writer.write(String.format(Locale.ROOT, "<text x=\"%.2f\" y=\"%.2f\">%s</text>",
+                    x + 3, y + FRAME_HEIGHT - 4, escape(label)));
+        }
+        writer.write("</g>");
+        writer.newLine();
+    }
+
+    /**
+     * Gets the time spent in a node but not in its children.
+     *
+     * @param node the node.
+     * @return the self time in nanoseconds.
+     */
+    private long selfTime(final int node) {
+        long children = 0;
+        for (int child = this.tree.getFirstChild(node);
+             child != CallingContextTree.NONE;
+             child = this.tree.getNextSibling(child)) {
+            children += this.inclusive[child];
+        }
+        return Math.max(0, this.inclusive[node] - children);
+    }
+
+    /**
+     * Gets the children of a node ordered by method name.
+     *
+     * @param node the node.
+     * @return the children.
+     */
+    private List<Integer> sortedChildren(final int node) {
+        List<Integer> children = new ArrayList<>();
+        for (int child = this.tree.getFirstChild(node);
+             child != CallingContextTree.NONE;
+             child = this.tree.getNextSibling(child)) {
+            children.add(child);
+        }
+        children.sort(Comparator.comparing(this.tree::getMethod));
+        return children;
+    }
+
+    /**
+     * Picks a warm colour for a method, stable across graphs.
+     *
+     * @param method the method.
+     * @return the colour.
+     */
+    private static String colour(final String method) {
+        int hash = method.hashCode();
+        int red = 205 + Math.floorMod(hash, 50);
+        int green = Math.floorMod(hash >> 8, 230);
+        int blue = Math.floorMod(hash >> 16, 55);
+        return String.format("#%02x%02x%02x", red, green, blue);
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+}
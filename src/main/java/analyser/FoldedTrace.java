@@ -0,0 +1,464 @@
+package analyser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The entry and exit steps of a test, with calls repeated back to back
+ * folded into repeat blocks.
+ * <br>
+ * <p>
+ * The trace is held as a sequence of steps and repeat markers. When a call
+ * exits, the last units of up to {@link RepetitionDetector#MAX_PERIOD} calls
+ * made by its caller are compared with the units before them; a unit
+ * matching the one before it is dropped and the one before it is wrapped
+ * in a repeat block, or the count of the repeat block it matches is
+ * incremented. Calls are compared by hash first, so the steps of a call are
+ * only compared when they are folded away. A loop repeating the same calls
+ * a hundred thousand times is held as a single iteration.
+ * </p>
+ * <p>
+ * The steps are expanded lazily when the trace is iterated.
+ * </p>
+ */
+final class FoldedTrace implements Iterable<String> {
+
+    /**
+     * Marks a step.
+     */
+    static final int STEP = 0;
+
+    /**
+     * Marks the end of a repeat block.
+     */
+    static final int REPEAT_END = -1;
+
+    /**
+     * Prefix of the entry steps.
+     */
+    static final String ENTRY = "Entry: ";
+
+    /**
+     * Prefix of the exit steps.
+     */
+    static final String EXIT = "Exit: ";
+
+    /**
+     * Initial capacity of the trace.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Multiplier of the call hashes.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * A call open on the stack and the calls it made so far.
+     */
+    private static final class Frame {
+
+        /**
+         * Position of the entry step of the call.
+         */
+        private int start;
+
+        /**
+         * Hash of the steps of the call so far.
+         */
+        private long hash;
+
+        /**
+         * Positions of the direct callees and repeat blocks.
+         */
+        private int[] starts = new int[RepetitionDetector.MAX_PERIOD * 2];
+
+        /**
+         * Hashes of the direct callees, or of the repeated unit of the repeat blocks.
+         */
+        private long[] hashes = new long[RepetitionDetector.MAX_PERIOD * 2];
+
+        /**
+         * Callees in the repeated unit of the repeat blocks, 0 for callees.
+         */
+        private int[] periods = new int[RepetitionDetector.MAX_PERIOD * 2];
+
+        /**
+         * Number of direct callees and repeat blocks.
+         */
+        private int children;
+
+        /**
+         * Resets the frame for a new call.
+         *
+         * @param position the position of the entry step.
+         * @param seed     the hash of the entry step.
+         */
+        void reset(final int position, final long seed) {
+            this.start = position;
+            this.hash = seed;
+            this.children = 0;
+        }
+
+        /**
+         * Adds a direct callee or repeat block.
+         *
+         * @param position the position of the callee.
+         * @param hash     the hash of the callee or repeated unit.
+         * @param period   the callees in the repeated unit, 0 for a callee.
+         */
+        void add(final int position, final long hash, final int period) {
+            if (this.children == this.starts.length) {
+                int capacity = this.children * 2;
+                this.starts = Arrays.copyOf(this.starts, capacity);
+                this.hashes = Arrays.copyOf(this.hashes, capacity);
+                this.periods = Arrays.copyOf(this.periods, capacity);
+            }
+            this.starts[this.children] = position;
+            this.hashes[this.children] = hash;
+            this.periods[this.children] = period;
+            this.children++;
+        }
+    }
+
+    /**
+     * The steps, null at repeat markers.
+     */
+    private String[] steps = new String[INITIAL_CAPACITY];
+
+    /**
+     * The repeat count at the start of repeat blocks,
+     * {@link #REPEAT_END} at their end and {@link #STEP} at steps.
+     */
+    private int[] marks = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of steps and repeat markers held.
+     */
+    private int size;
+
+    /**
+     * Number of steps expanded.
+     */
+    private long length;
+
+    /**
+     * Counts of the repeat blocks opened by {@link #openRepeat(int)} and not closed.
+     */
+    private final Deque<Integer> appendCounts = new ArrayDeque<>();
+
+    /**
+     * Expansions of a step appended in the open repeat blocks.
+     */
+    private long appendRepetitions = 1;
+
+    /**
+     * The open calls, the outermost holding the steps outside any call.
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /**
+     * Number of open calls, the outermost included.
+     */
+    private int depth;
+
+    /**
+     * Initialises an empty FoldedTrace.
+     */
+    FoldedTrace() {
+        this.frames.add(new Frame());
+        this.depth = 1;
+    }
+
+    /**
+     * Adds a step, folding the call it exits if it repeats the calls before it.
+     *
+     * @param step the entry or exit step.
+     */
+    void add(final String step) {
+        this.length++;
+        if (step.startsWith(ENTRY)) {
+            if (this.depth == this.frames.size()) {
+                this.frames.add(new Frame());
+            }
+            this.frames.get(this.depth++).reset(this.size, step.hashCode());
+            this.store(step, STEP);
+        } else if (step.startsWith(EXIT) && this.depth > 1) {
+            this.store(step, STEP);
+            Frame call = this.frames.get(--this.depth);
+            long hash = (call.hash * HASH_MULTIPLIER + step.hashCode()) ^ ((long) call.children << 32);
+            hash = mix(hash);
+            Frame caller = this.frames.get(this.depth - 1);
+            caller.hash = caller.hash * HASH_MULTIPLIER + hash;
+            caller.add(call.start, hash, 0);
+            this.fold(caller);
+        } else {
+            this.store(step, STEP);
+        }
+    }
+
+    /**
+     * Appends a step without folding.
+     *
+     * @param step the step.
+     */
+    void append(final String step) {
+        this.length += this.appendRepetitions;
+        this.store(step, STEP);
+    }
+
+    /**
+     * Opens a repeat block without folding.
+     *
+     * @param count the repeat count.
+     */
+    void openRepeat(final int count) {
+        this.store(null, count);
+        this.appendCounts.push(count);
+        this.appendRepetitions *= count;
+    }
+
+    /**
+     * Closes the innermost open repeat block.
+     */
+    void closeRepeat() {
+        this.store(null, REPEAT_END);
+        this.appendRepetitions /= this.appendCounts.pop();
+    }
+
+    /**
+     * Gets the number of steps expanded.
+     *
+     * @return the trace length.
+     */
+    long size() {
+        return this.length;
+    }
+
+    /**
+     * Gets the number of steps and repeat markers held.
+     *
+     * @return the folded length.
+     */
+    int foldedSize() {
+        return this.size;
+    }
+
+    /**
+     * Gets a step held.
+     *
+     * @param index the position.
+     * @return the step, null at a repeat marker.
+     */
+    String getStep(final int index) {
+        return this.steps[index];
+    }
+
+    /**
+     * Gets the marker held.
+     *
+     * @param index the position.
+     * @return the repeat count at the start of a repeat block,
+     * {@link #REPEAT_END} at its end or {@link #STEP}.
+     */
+    int getMark(final int index) {
+        return this.marks[index];
+    }
+
+    /**
+     * Gets the greatest stack depth of each bucket of consecutive steps,
+     * expanding the repeats a step at a time rather than holding the depth
+     * of every step.
+     *
+     * @param stepsPerBucket the number of steps per bucket, 1 for the depth at each step.
+     * @return the greatest depth per bucket.
+     */
+    int[] maxDepths(final long stepsPerBucket) {
+        int[] depths = new int[(int) ((this.length + stepsPerBucket - 1) / stepsPerBucket)];
+        long step = 0;
+        for (String s : this) {
+            int bucket = (int) (step++ / stepsPerBucket);
+            depths[bucket] = Math.max(depths[bucket], depthOf(s));
+        }
+        return depths;
+    }
+
+    /**
+     * Gets the stack depth of a step.
+     *
+     * @param step the step.
+     * @return the depth.
+     */
+    static int depthOf(final String step) {
+        return Integer.parseInt(step.substring(step.lastIndexOf('(') + 1, step.lastIndexOf(')')));
+    }
+
+    /**
+     * Iterates the steps, expanding the repeat blocks.
+     *
+     * @return the iterator.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private final int[] bodies = new int[FoldedTrace.this.size];
+
+            private final int[] remaining = new int[FoldedTrace.this.size];
+
+            private int open;
+
+            private int next = this.advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return this.next < FoldedTrace.this.size;
+            }
+
+            @Override
+            public String next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String step = FoldedTrace.this.steps[this.next];
+                this.next = this.advance(this.next + 1);
+                return step;
+            }
+
+            /**
+             * Moves past repeat markers to the next step.
+             *
+             * @param from the position to move from.
+             * @return the position of the next step.
+             */
+            private int advance(final int from) {
+                int i = from;
+                while (i < FoldedTrace.this.size && FoldedTrace.this.marks[i] != STEP) {
+                    if (FoldedTrace.this.marks[i] > 0) {
+                        this.bodies[this.open] = i + 1;
+                        this.remaining[this.open++] = FoldedTrace.this.marks[i];
+                        i++;
+                    } else if (--this.remaining[this.open - 1] > 0) {
+                        i = this.bodies[this.open - 1];
+                    } else {
+                        this.open--;
+                        i++;
+                    }
+                }
+                return i;
+            }
+        };
+    }
+
+    /**
+     * Folds the last callees of a call into a repeat block when
+     * they repeat the callees before them.
+     *
+     * @param caller the call.
+     */
+    private void fold(final Frame caller) {
+        int k = caller.children;
+        for (int period = 1; period <= RepetitionDetector.MAX_PERIOD && period < k; period++) {
+            int unit = k - period;
+            int previous = unit - 1;
+            if (caller.periods[previous] == period
+                    && caller.hashes[previous] == this.unitHash(caller, unit, period)
+                    && this.equal(caller.starts[previous] + 1, caller.starts[unit] - 1,
+                    caller.starts[unit], this.size)) {
+                this.size = caller.starts[unit];
+                this.marks[caller.starts[previous]]++;
+                caller.children = unit;
+                return;
+            }
+            int first = unit - period;
+            if (first >= 0 && this.memberHash(caller, k - 1) == this.memberHash(caller, unit - 1)
+                    && this.unitHash(caller, first, period) == this.unitHash(caller, unit, period)
+                    && this.equal(caller.starts[first], caller.starts[unit], caller.starts[unit], this.size)) {
+                long hash = this.unitHash(caller, first, period);
+                int start = caller.starts[first];
+                int end = caller.starts[unit];
+                this.size = end;
+                this.store(null, STEP);
+                this.store(null, REPEAT_END);
+                System.arraycopy(this.steps, start, this.steps, start + 1, end - start);
+                System.arraycopy(this.marks, start, this.marks, start + 1, end - start);
+                this.steps[start] = null;
+                this.marks[start] = 2;
+                caller.children = first;
+                caller.add(start, hash, period);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hashes a unit of callees.
+     *
+     * @param caller the call.
+     * @param from   the first callee of the unit.
+     * @param period the callees in the unit.
+     * @return the hash.
+     */
+    private long unitHash(final Frame caller, final int from, final int period) {
+        long hash = period;
+        for (int i = from; i < from + period; i++) {
+            hash = hash * HASH_MULTIPLIER + this.memberHash(caller, i);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Hashes a callee or repeat block, the repeat count included.
+     *
+     * @param caller the call.
+     * @param child  the callee.
+     * @return the hash.
+     */
+    private long memberHash(final Frame caller, final int child) {
+        if (caller.periods[child] == 0) {
+            return caller.hashes[child];
+        }
+        return mix(caller.hashes[child] + this.marks[caller.starts[child]]);
+    }
+
+    /**
+     * Compares two ranges of the steps and repeat markers held.
+     *
+     * @param from     the start of the first range.
+     * @param to       the end of the first range.
+     * @param withFrom the start of the second range.
+     * @param withTo   the end of the second range.
+     * @return whether the ranges are equal.
+     */
+    private boolean equal(final int from, final int to, final int withFrom, final int withTo) {
+        if (to - from != withTo - withFrom) {
+            return false;
+        }
+        for (int i = 0; i < to - from; i++) {
+            if (this.marks[from + i] != this.marks[withFrom + i]
+                    || (this.marks[from + i] == STEP && !this.steps[from + i].equals(this.steps[withFrom + i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void store(final String step, final int mark) {
+        if (this.size == this.steps.length) {
+            this.steps = Arrays.copyOf(this.steps, this.size * 2);
+            this.marks = Arrays.copyOf(this.marks, this.size * 2);
+        }
+        this.steps[this.size] = step;
+        this.marks[this.size++] = mark;
+    }
+
+    private static long mix(final long value) {
+        long hash = (value ^ (value >>> 33)) * HASH_MULTIPLIER;
+        return hash ^ (hash >>> 29);
+    }
+}
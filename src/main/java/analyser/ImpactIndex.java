@@ -0,0 +1,360 @@
+package analyser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Index of the classes each test used, and the hashes of the compiled
+ * classes, resources and dependency jars when it was recorded, to select
+ * the tests affected by a change.
+ * <br>
+ * <p>
+ * The index is a text file of a line per input and its hash,
+ * followed by a line per test and a line per class it used. It is
+ * rewritten after each run, keeping the tests not run and the hashes
+ * their classes had when they were recorded, so a class changed before a
+ * run of part of the suite still selects the tests that did not run
+ * against it.
+ * </p>
+ */
+final class ImpactIndex {
+
+    /**
+     * Number of hash bytes kept per class.
+     */
+    private static final int HASH_BYTES = 16;
+
+    /**
+     * The compiled class file extension.
+     */
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * Prefix of the resource inputs.
+     */
+    static final String RESOURCE_PREFIX = "resource:";
+
+    /**
+     * Prefix of the dependency jar inputs.
+     */
+    static final String JAR_PREFIX = "jar:";
+
+    /**
+     * Size of the buffer files are hashed through.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The index file.
+     */
+    private final File file;
+
+    /**
+     * The hashes of the compiled classes when the index was recorded.
+     */
+    private final Map<String, String> classHashes = new TreeMap<>();
+
+    /**
+     * The classes used by each test, by fully qualified test name.
+     */
+    private final Map<String, Set<String>> tests = new TreeMap<>();
+
+    /**
+     * The tests recorded since the index was loaded.
+     */
+    private final Set<String> recordedTests = new TreeSet<>();
+
+    /**
+     * Initialises a new ImpactIndex.
+     *
+     * @param indexFile the index file.
+     */
+    ImpactIndex(final File indexFile) {
+        this.file = indexFile;
+    }
+
+    /**
+     * Whether the index was recorded.
+     *
+     * @return whether the index file exists.
+     */
+    boolean exists() {
+        return this.file.isFile();
+    }
+
+    /**
+     * Loads the index if it was recorded.
+     *
+     * @return this index.
+     * @throws IOException if the index cannot be read.
+     */
+    ImpactIndex load() throws IOException {
+        if (!this.exists()) {
+            return this;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+            Set<String> used = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(TestMetrics.FIELD_SEPARATOR);
+                if ("C".equals(fields[0])) {
+                    this.classHashes.put(fields[1], fields[2]);
+                } else if ("T".equals(fields[0])) {
+                    used = this.tests.computeIfAbsent(fields[1], t -> new TreeSet<>());
+                } else if ("U".equals(fields[0]) && used != null) {
+                    used.add(fields[1]);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Records the classes used by a test, replacing those recorded before.
+     *
+     * @param test    the fully qualified test name.
+     * @param classes the classes the test used.
+     */
+    void record(final String test, final Collection<String> classes) {
+        this.tests.put(test, new TreeSet<>(classes));
+        this.recordedTests.add(test);
+    }
+
+    /**
+     * Saves the index with the hashes of the inputs of the tests. The tests
+     * of test classes no longer compiled are dropped. The inputs used by
+     * the tests not recorded since the index was loaded keep the hash they
+     * were recorded against, as do the resources and jars while any test
+     * was not recorded, as the index does not record which tests use them.
+     *
+     * @param hashes the hashes of the inputs, by class name, resource or jar.
+     * @throws IOException if the index cannot be written.
+     */
+    void save(final Map<String, String> hashes) throws IOException {
+        this.tests.keySet().removeIf(t -> !this.recordedTests.contains(t)
+                && !hashes.containsKey(t.substring(0, t.lastIndexOf('.'))));
+        Set<String> notRecorded = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> test : this.tests.entrySet()) {
+            if (!this.recordedTests.contains(test.getKey())) {
+                notRecorded.addAll(test.getValue());
+            }
+        }
+        boolean partial = this.recordedTests.size() < this.tests.size();
+        Map<String, String> previous = new TreeMap<>(this.classHashes);
+        this.classHashes.clear();
+        this.classHashes.putAll(hashes);
+        for (Map.Entry<String, String> hash : previous.entrySet()) {
+            if (notRecorded.contains(hash.getKey()) || (partial && !isClass(hash.getKey()))) {
+                this.classHashes.put(hash.getKey(), hash.getValue());
+            }
+        }
+        File directory = this.file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        Path temporary = new File(directory, this.file.getName() + ".tmp").toPath();
+        String separator = System.lineSeparator();
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> hash : this.classHashes.entrySet()) {
+                writer.write("C" + TestMetrics.FIELD_SEPARATOR + hash.getKey()
+                        + TestMetrics.FIELD_SEPARATOR + hash.getValue() + separator);
+            }
+            for (Map.Entry<String, Set<String>> test : this.tests.entrySet()) {
+                writer.write("T" + TestMetrics.FIELD_SEPARATOR + test.getKey() + separator);
+                for (String used : test.getValue()) {
+                    writer.write("U" + TestMetrics.FIELD_SEPARATOR + used + separator);
+                }
+            }
+        }
+        Files.move(temporary, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Gets the number of tests recorded.
+     *
+     * @return the number of tests.
+     */
+    int getTestCount() {
+        return this.tests.size();
+    }
+
+    /**
+     * Finds the classes and other inputs changed, added or removed since the index was recorded.
+     *
+     * @param hashes the hashes of the inputs, by class name, resource or jar.
+     * @return the changed inputs.
+     */
+    Set<String> changedClasses(final Map<String, String> hashes) {
+        Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> hash : hashes.entrySet()) {
+            if (!hash.getValue().equals(this.classHashes.get(hash.getKey()))) {
+                changed.add(hash.getKey());
+            }
+        }
+        for (String recorded : this.classHashes.keySet()) {
+            if (!hashes.containsKey(recorded)) {
+                changed.add(recorded);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Selects the tests affected by the changed classes: the tests that used
+     * a changed class, and the whole of the changed test classes, so test
+     * methods added or renamed since the index was recorded are run.
+     *
+     * @param changed     the changed classes.
+     * @param testClasses the test classes compiled.
+     * @return the affected test methods by test class, an empty set for a whole class.
+     */
+    Map<String, Set<String>> select(final Set<String> changed, final Set<String> testClasses) {
+        Map<String, Set<String>> selected = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> test : this.tests.entrySet()) {
+            String testClass = test.getKey().substring(0, test.getKey().lastIndexOf('.'));
+            boolean affected = false;
+            for (String used : test.getValue()) {
+                affected = affected || changed.contains(used);
+            }
+            if (affected && testClasses.contains(testClass)) {
+                selected.computeIfAbsent(testClass, c -> new TreeSet<>())
+                        .add(test.getKey().substring(testClass.length() + 1));
+            }
+        }
+        for (String testClass : testClasses) {
+            if (changed.contains(testClass)) {
+                selected.put(testClass, new TreeSet<>());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Whether an input of the index is a compiled class, rather than a
+     * resource or a dependency jar.
+     *
+     * @param input the input name.
+     * @return true if the input is a class name.
+     */
+    static boolean isClass(final String input) {
+        return !input.startsWith(RESOURCE_PREFIX) && !input.startsWith(JAR_PREFIX);
+    }
+
+    /**
+     * Hashes the compiled classes under the class directories.
+     *
+     * @param directories the class directories.
+     * @return the hashes of the classes, by class name.
+     * @throws IOException if a class file cannot be read.
+     */
+    static Map<String, String> hashClasses(final File... directories) throws IOException {
+        Map<String, String> hashes = new TreeMap<>();
+        for (File directory : directories) {
+            hashDirectory(directory, hashes, false);
+        }
+        return hashes;
+    }
+
+    /**
+     * Hashes the inputs of the tests on a test classpath: the compiled classes
+     * and resources of its directories and the content of its jars. The
+     * resources are named by their path prefixed by {@value #RESOURCE_PREFIX}
+     * and the jars by their path prefixed by {@value #JAR_PREFIX}.
+     *
+     * @param classpathElements the test classpath elements.
+     * @return the hashes of the inputs, by class name, resource or jar.
+     * @throws IOException if an input cannot be read.
+     */
+    static Map<String, String> hashInputs(final List<String> classpathElements) throws IOException {
+        Map<String, String> hashes = new TreeMap<>();
+        for (String element : classpathElements) {
+            File file = new File(element);
+            if (file.isDirectory()) {
+                hashDirectory(file, hashes, true);
+            } else if (file.isFile()) {
+                hashes.put(JAR_PREFIX + file.getAbsolutePath(), hash(file.toPath()));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Hashes the files of a class directory.
+     *
+     * @param directory the class directory.
+     * @param hashes    the hashes to add to.
+     * @param resources whether to hash the files other than classes.
+     * @throws IOException if a file cannot be read.
+     */
+    private static void hashDirectory(final File directory, final Map<String, String> hashes,
+                                      final boolean resources) throws IOException {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        Path root = directory.toPath();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(p -> {
+                String relative = root.relativize(p).toString();
+                try {
+                    if (relative.endsWith(CLASS_EXTENSION)) {
+                        hashes.put(relative.substring(0, relative.length() - CLASS_EXTENSION.length())
+                                .replace(File.separatorChar, '.'), hash(p));
+                    } else if (resources) {
+                        hashes.put(RESOURCE_PREFIX + relative.replace(File.separatorChar, '/'), hash(p));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hashes the content of a file, streamed so large jars are not read whole.
+     *
+     * @param file the file.
+     * @return the hash.
+     * @throws IOException if the file cannot be read.
+     */
+    private static String hash(final Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(final byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
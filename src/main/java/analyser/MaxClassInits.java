@@ -0,0 +1,24 @@
+package analyser;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Budget of the class initialisations of a test, enforced by the analyser.
+ * A test exceeding its budget fails the analyse-test goal.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MaxClassInits {
+
+    /**
+     * The most instances of the classes under test the test may construct.
+     *
+     * @return the budget.
+     */
+    long value();
+}
@@ -0,0 +1,24 @@
+package analyser;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Budget of the stack depth of a test, enforced by the analyser.
+ * A test exceeding its budget fails the analyse-test goal.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MaxStackDepth {
+
+    /**
+     * The deepest stack the test may reach in the code under test.
+     *
+     * @return the budget.
+     */
+    long value();
+}
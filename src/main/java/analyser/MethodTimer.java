@@ -0,0 +1,149 @@
+package analyser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times the methods entered during a test from the
+ * entry and exit events seen by the analyser and builds
+ * the calling context tree of the test.
+ * <br>
+ * <p>
+ * Every event suspends the test VM, so the calibrated cost of
+ * each event seen while a method runs is subtracted from its time.
+ * Inclusive time is only counted for the outermost call of a
+ * recursive method so it is not counted twice.
+ * </p>
+ */
+final class MethodTimer {
+
+    /**
+     * A method call on the timer stack.
+     */
+    private static final class Frame {
+
+        /**
+         * The fully qualified method name.
+         */
+        private final String method;
+
+        /**
+         * Time the method was entered in nanoseconds.
+         */
+        private final long start;
+
+        /**
+         * Events seen when the method was entered.
+         */
+        private final long events;
+
+        /**
+         * Inclusive time of the calls made by the method.
+         */
+        private long children;
+
+        /**
+         * Initialises a new Frame.
+         *
+         * @param methodName the fully qualified method name.
+         * @param startTime  time the method was entered in nanoseconds.
+         * @param eventCount events seen when the method was entered.
+         */
+        Frame(final String methodName, final long startTime, final long eventCount) {
+            this.method = methodName;
+            this.start = startTime;
+            this.events = eventCount;
+        }
+    }
+
+    /**
+     * The calls in progress.
+     */
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    /**
+     * Active calls per method, for recursion.
+     */
+    private final Map<String, Integer> active = new HashMap<>();
+
+    /**
+     * The calibrated cost of an event in nanoseconds.
+     */
+    private long eventCost;
+
+    /**
+     * Sets the calibrated cost of an event.
+     *
+     * @param cost the cost of an event in nanoseconds.
+     */
+    void setEventCost(final long cost) {
+        this.eventCost = cost;
+    }
+
+    /**
+     * Gets the calibrated cost of an event.
+     *
+     * @return the cost of an event in nanoseconds.
+     */
+    long getEventCost() {
+        return this.eventCost;
+    }
+
+    /**
+     * Records a method entry.
+     *
+     * @param method the fully qualified method name.
+     * @param now    the time of the entry event in nanoseconds.
+     * @param events the number of events seen so far.
+     * @param tm     the measurement of the running test.
+     */
+    void enter(final String method, final long now, final long events, final TestMeasurement tm) {
+        this.frames.addFirst(new Frame(method, now, events));
+        tm.getCallTree().enter(method);
+        this.active.merge(method, 1, Integer::sum);
+    }
+
+    /**
+     * Records a method exit and adds its times to the measurement.
+     *
+     * @param now    the time of the exit event in nanoseconds.
+     * @param events the number of events seen so far.
+     * @param tm     the measurement of the running test.
+     * @return the inclusive time of the method in nanoseconds.
+     */
+    long exit(final long now, final long events, final TestMeasurement tm) {
+        Frame frame = this.frames.removeFirst();
+        long inclusive = Math.max(0, now - frame.start - (events - frame.events) * this.eventCost);
+        long self = Math.max(0, inclusive - frame.children);
+        Frame caller = this.frames.peekFirst();
+        if (caller != null) {
+            caller.children += inclusive;
+        }
+        int calls = this.active.merge(frame.method, -1, Integer::sum);
+        if (calls == 0) {
+            this.active.remove(frame.method);
+            tm.getMethodInclusiveTimes().merge(frame.method, inclusive, Long::sum);
+        }
+        tm.getMethodSelfTimes().merge(frame.method, self, Long::sum);
+        tm.getCallTree().exit(inclusive);
+        return inclusive;
+    }
+
+    /**
+     * Exits every call in progress, as when the test finishes.
+     *
+     * @param now    the time of the event ending the test in nanoseconds.
+     * @param events the number of events seen so far.
+     * @param tm     the measurement of the running test.
+     * @return the inclusive time of the outermost call in nanoseconds.
+     */
+    long exitAll(final long now, final long events, final TestMeasurement tm) {
+        long inclusive = 0;
+        while (!this.frames.isEmpty()) {
+            inclusive = this.exit(now, events, tm);
+        }
+        return inclusive;
+    }
+}
@@ -0,0 +1,386 @@
+package analyser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append only store of the test metrics of every build, indexed by test.
+ * <br>
+ * <p>
+ * The store is a directory of four files. Test names are numbered in the
+ * order they were first seen in a test dictionary. Metrics are kept in a
+ * data file of fixed size records, one per test per build, so a record is
+ * read by its number alone. The data file starts with a header of its
+ * format version and the number of metric values per record, and a store
+ * of another format is refused rather than misread. An index file maps each record to its test,
+ * and is loaded into a list of record numbers per test, ordered by build.
+ * The build log is written last and commits a build, records beyond the
+ * last committed build are left over from an interrupted run and are
+ * overwritten by the next one.
+ * </p>
+ */
+final class MetricsHistory {
+
+    /**
+     * Test dictionary file name.
+     */
+    private static final String TESTS_FILE = "tests.txt";
+
+    /**
+     * Build log file name.
+     */
+    private static final String BUILDS_FILE = "builds.txt";
+
+    /**
+     * Data file name.
+     */
+    private static final String DATA_FILE = "metrics.dat";
+
+    /**
+     * Index file name.
+     */
+    private static final String INDEX_FILE = "metrics.idx";
+
+    /**
+     * Marks the start of the data file.
+     */
+    private static final int MAGIC = 0x54414d48;
+
+    /**
+     * Version of the data file format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the data file header: the marker, the format version and the number of metric values.
+     */
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    /**
+     * Size of a data record: the build, the test and the metric values.
+     */
+    private static final int RECORD_SIZE = 2 * Integer.BYTES + TestMetrics.VALUE_NAMES.length * Long.BYTES;
+
+    /**
+     * Size of an index entry: the test and the record.
+     */
+    private static final int INDEX_ENTRY_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * The store directory.
+     */
+    private final File directory;
+
+    /**
+     * Test names by test id.
+     */
+    private final List<String> tests = new ArrayList<>();
+
+    /**
+     * Test ids by test name.
+     */
+    private final Map<String, Integer> testIds = new HashMap<>();
+
+    /**
+     * Record numbers per test id, in build order.
+     */
+    private final List<int[]> postings = new ArrayList<>();
+
+    /**
+     * Number of records in each posting list.
+     */
+    private final List<Integer> postingSizes = new ArrayList<>();
+
+    /**
+     * Time of each committed build.
+     */
+    private final List<Long> buildTimes = new ArrayList<>();
+
+    /**
+     * Number of committed records.
+     */
+    private int records;
+
+    /**
+     * Initialises a new MetricsHistory.
+     *
+     * @param historyDirectory the store directory.
+     */
+    MetricsHistory(final File historyDirectory) {
+        this.directory = historyDirectory;
+    }
+
+    /**
+     * Loads the test dictionary, build log and index of the store.
+     *
+     * @return this history.
+     * @throws IOException if the store cannot be read.
+     */
+    MetricsHistory open() throws IOException {
+        this.checkFormat();
+        File testsFile = new File(this.directory, TESTS_FILE);
+        if (testsFile.isFile()) {
+            for (String test : Files.readAllLines(testsFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!test.isEmpty()) {
+                    this.addTest(test);
+                }
+            }
+        }
+        File buildsFile = new File(this.directory, BUILDS_FILE);
+        if (buildsFile.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(buildsFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(TestMetrics.FIELD_SEPARATOR);
+                    this.buildTimes.add(Long.parseLong(fields[0]));
+                    this.records = Integer.parseInt(fields[1]);
+                }
+            }
+        }
+        File indexFile = new File(this.directory, INDEX_FILE);
+        if (indexFile.isFile()) {
+            try (InputStream in = Files.newInputStream(indexFile.toPath());
+                 DataInputStream index = new DataInputStream(new BufferedInputStream(in))) {
+                for (int i = 0; i < this.records; i++) {
+                    this.post(index.readInt(), index.readInt());
+                }
+            } catch (EOFException e) {
+                throw new IOException("Metrics index " + indexFile + " is truncated", e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends a build to the store.
+     *
+     * @param run the metrics of the tests of the build.
+     * @throws IOException if the store cannot be written.
+     */
+    void append(final List<TestMetrics> run) throws IOException {
+        this.directory.mkdirs();
+        int build = this.buildTimes.size();
+        List<String> newTests = new ArrayList<>();
+        boolean empty = this.records == 0;
+        ByteBuffer data = ByteBuffer.allocate((empty ? HEADER_SIZE : 0) + run.size() * RECORD_SIZE);
+        if (empty) {
+            data.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(TestMetrics.VALUE_NAMES.length);
+        }
+        ByteBuffer index = ByteBuffer.allocate(run.size() * INDEX_ENTRY_SIZE);
+        int record = this.records;
+        for (TestMetrics test : run) {
+            Integer testId = this.testIds.get(test.getTest());
+            if (testId == null) {
+                testId = this.addTest(test.getTest());
+                newTests.add(test.getTest());
+            }
+            data.putInt(build).putInt(testId);
+            for (long value : test.values()) {
+                data.putLong(value);
+            }
+            index.putInt(testId).putInt(record);
+            this.post(testId, record++);
+        }
+        if (!newTests.isEmpty()) {
+            try (Writer writer = Files.newBufferedWriter(new File(this.directory, TESTS_FILE).toPath(),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String test : newTests) {
+                    writer.write(test + System.lineSeparator());
+                }
+            }
+        }
+        write(new File(this.directory, DATA_FILE), empty ? 0 : recordPosition(this.records), data);
+        write(new File(this.directory, INDEX_FILE), (long) this.records * INDEX_ENTRY_SIZE, index);
+        long now = System.currentTimeMillis();
+        try (Writer writer = Files.newBufferedWriter(new File(this.directory, BUILDS_FILE).toPath(),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(now + TestMetrics.FIELD_SEPARATOR + record + System.lineSeparator());
+        }
+        this.buildTimes.add(now);
+        this.records = record;
+    }
+
+    /**
+     * Reads a metric of a test over a range of builds.
+     *
+     * @param test      the fully qualified test name.
+     * @param metric    the index of the metric in {@link TestMetrics#VALUE_NAMES}.
+     * @param fromBuild the first build, inclusive.
+     * @param toBuild   the last build, exclusive.
+     * @return the builds in the range that ran the test and the metric in each,
+     * as two rows.
+     * @throws IOException if the data cannot be read.
+     */
+    long[][] query(final String test, final int metric, final int fromBuild, final int toBuild) throws IOException {
+        Integer testId = this.testIds.get(test);
+        if (testId == null) {
+            return new long[2][0];
+        }
+        int[] testRecords = this.postings.get(testId);
+        int size = this.postingSizes.get(testId);
+        List<long[]> points = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(new File(this.directory, DATA_FILE).toPath(),
+                StandardOpenOption.READ)) {
+            // Records are in build order, so walk back from the latest until out of range.
+            for (int i = size - 1; i >= 0; i--) {
+                buffer.clear();
+                readFully(channel, buffer, recordPosition(testRecords[i]));
+                int build = buffer.getInt(0);
+                if (build < fromBuild) {
+                    break;
+                }
+                if (build < toBuild) {
+                    points.add(new long[] {build, buffer.getLong(2 * Integer.BYTES + metric * Long.BYTES)});
+                }
+            }
+        }
+        Collections.reverse(points);
+        long[][] series = new long[2][points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            series[0][i] = points.get(i)[0];
+            series[1][i] = points.get(i)[1];
+        }
+        return series;
+    }
+
+    /**
+     * Gets the names of the tests in the store.
+     *
+     * @return the fully qualified test names.
+     */
+    List<String> getTests() {
+        return Collections.unmodifiableList(this.tests);
+    }
+
+    /**
+     * Gets the number of committed builds.
+     *
+     * @return the number of builds.
+     */
+    int getBuildCount() {
+        return this.buildTimes.size();
+    }
+
+    /**
+     * Numbers a new test.
+     *
+     * @param test the fully qualified test name.
+     * @return the test id.
+     */
+    private int addTest(final String test) {
+        int testId = this.tests.size();
+        this.tests.add(test);
+        this.testIds.put(test, testId);
+        this.postings.add(new int[1]);
+        this.postingSizes.add(0);
+        return testId;
+    }
+
+    /**
+     * Adds a record to the posting list of a test.
+     *
+     * @param testId the test id.
+     * @param record the record number.
+     */
+    private void post(final int testId, final int record) {
+        int[] testRecords = this.postings.get(testId);
+        int size = this.postingSizes.get(testId);
+        if (size == testRecords.length) {
+            testRecords = Arrays.copyOf(testRecords, 2 * size);
+            this.postings.set(testId, testRecords);
+        }
+        testRecords[size] = record;
+        this.postingSizes.set(testId, size + 1);
+    }
+
+    /**
+     * Checks the header of the data file, if written, against the format
+     * of this version.
+     *
+     * @throws IOException if the header cannot be read or the store has another format.
+     */
+    private void checkFormat() throws IOException {
+        File dataFile = new File(this.directory, DATA_FILE);
+        if (!dataFile.isFile() || dataFile.length() == 0) {
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            readFully(channel, header, 0);
+        }
+        int magic = header.getInt(0);
+        int version = header.getInt(Integer.BYTES);
+        int valueCount = header.getInt(2 * Integer.BYTES);
+        if (magic != MAGIC || version != FORMAT_VERSION || valueCount != TestMetrics.VALUE_NAMES.length) {
+            throw new IOException("History " + this.directory + " has another format than version "
+                    + FORMAT_VERSION + " of " + TestMetrics.VALUE_NAMES.length
+                    + " metrics, move it aside to start a new history");
+        }
+    }
+
+    /**
+     * Gets the position of a record in the data file.
+     *
+     * @param record the record number.
+     * @return the position.
+     */
+    private static long recordPosition(final int record) {
+        return HEADER_SIZE + (long) record * RECORD_SIZE;
+    }
+
+    /**
+     * Reads from a position of a file until the buffer is full.
+     *
+     * @param channel  the file.
+     * @param buffer   the buffer to fill.
+     * @param position the position to read from.
+     * @throws IOException if the file cannot be read or ends before the buffer is full.
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("History data ends at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * Writes a buffer at a position of a file, dropping anything after it.
+     *
+     * @param file     the file.
+     * @param position the position to write at.
+     * @param buffer   the bytes to write.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void write(final File file, final long position, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(position);
+            long offset = position;
+            while (buffer.hasRemaining()) {
+                offset += channel.write(buffer, offset);
+            }
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package analyser;
+
+/**
+ * The contention on a monitor by a method during a test: the times the
+ * method blocked entering the monitor and waited on it, and how long for.
+ * <br>
+ * <p>
+ * The times are measured by the analyser between the events of the test VM,
+ * which is suspended while each event is handled, so they are approximate
+ * and include the tracing overhead.
+ * </p>
+ */
+final class MonitorContention {
+
+    /**
+     * The class of the monitor.
+     */
+    private final String lockClass;
+
+    /**
+     * The fully qualified name of the contending method.
+     */
+    private final String method;
+
+    /**
+     * Times the method blocked entering the monitor.
+     */
+    private long contended;
+
+    /**
+     * Time blocked entering the monitor in nanoseconds.
+     */
+    private long blockedTime;
+
+    /**
+     * Times the method waited on the monitor.
+     */
+    private long waits;
+
+    /**
+     * Time waited on the monitor in nanoseconds.
+     */
+    private long waitTime;
+
+    /**
+     * Initialises a new MonitorContention.
+     *
+     * @param lock           the class of the monitor.
+     * @param contendingName the fully qualified name of the contending method.
+     */
+    MonitorContention(final String lock, final String contendingName) {
+        this.lockClass = lock;
+        this.method = contendingName;
+    }
+
+    /**
+     * Records the method blocking to enter the monitor.
+     */
+    void contended() {
+        this.contended++;
+    }
+
+    /**
+     * Records the method entering the monitor after blocking.
+     *
+     * @param nanos the time blocked in nanoseconds.
+     */
+    void entered(final long nanos) {
+        this.blockedTime += nanos;
+    }
+
+    /**
+     * Records the method waiting on the monitor.
+     */
+    void waiting() {
+        this.waits++;
+    }
+
+    /**
+     * Records the method done waiting on the monitor.
+     *
+     * @param nanos the time waited in nanoseconds.
+     */
+    void waited(final long nanos) {
+        this.waitTime += nanos;
+    }
+
+    /**
+     * Gets the class of the monitor.
+     *
+     * @return the class name.
+     */
+    String getLockClass() {
+        return this.lockClass;
+    }
+
+    /**
+     * Gets the contending method.
+     *
+     * @return the fully qualified method name.
+     */
+    String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Gets the times the method blocked entering the monitor.
+     *
+     * @return the contended entries.
+     */
+    long getContended() {
+        return this.contended;
+    }
+
+    /**
+     * Gets the time blocked entering the monitor.
+     *
+     * @return the time in nanoseconds.
+     */
+    long getBlockedTime() {
+        return this.blockedTime;
+    }
+
+    /**
+     * Gets the times the method waited on the monitor.
+     *
+     * @return the waits.
+     */
+    long getWaits() {
+        return this.waits;
+    }
+
+    /**
+     * Gets the time waited on the monitor.
+     *
+     * @return the time in nanoseconds.
+     */
+    long getWaitTime() {
+        return this.waitTime;
+    }
+}
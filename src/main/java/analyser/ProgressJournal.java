@@ -0,0 +1,110 @@
+package analyser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Journal of the test classes analysed, kept next to the report, so an
+ * analysis stopped by the test VM dying can be resumed with the classes left.
+ * <br>
+ * <p>
+ * The journal is a line per test class, appended as each class finishes.
+ * The test runner reads the same file to skip the classes already analysed.
+ * </p>
+ */
+final class ProgressJournal {
+
+    /**
+     * The journal file name, in the build directory.
+     */
+    static final String JOURNAL_FILE = "testAnalyserProgress";
+
+    /**
+     * The journal file.
+     */
+    private final File file;
+
+    /**
+     * The test classes analysed, in journal order.
+     */
+    private final Set<String> completed = new LinkedHashSet<>();
+
+    /**
+     * Initialises a new ProgressJournal.
+     *
+     * @param journalFile the journal file.
+     */
+    ProgressJournal(final File journalFile) {
+        this.file = journalFile;
+    }
+
+    /**
+     * Gets the journal file.
+     *
+     * @return the journal file.
+     */
+    File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Loads the test classes analysed by a previous run.
+     *
+     * @return this journal.
+     * @throws IOException if the journal cannot be read.
+     */
+    ProgressJournal load() throws IOException {
+        if (this.file.isFile()) {
+            for (String line : Files.readAllLines(this.file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    this.completed.add(line);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Starts a new journal, forgetting the classes analysed by previous runs.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    void reset() throws IOException {
+        this.completed.clear();
+        this.file.getAbsoluteFile().getParentFile().mkdirs();
+        Files.write(this.file.toPath(), new byte[0]);
+    }
+
+    /**
+     * Records a test class as analysed.
+     *
+     * @param testClass the test class name.
+     */
+    void complete(final String testClass) {
+        if (!this.completed.add(testClass)) {
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(this.file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(testClass + System.lineSeparator());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the test classes analysed.
+     *
+     * @return the test class names.
+     */
+    Set<String> getCompleted() {
+        return Collections.unmodifiableSet(this.completed);
+    }
+}
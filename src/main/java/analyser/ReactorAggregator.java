@@ -0,0 +1,293 @@
+package analyser;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+/**
+ * Merges the reports of the modules of the reactor into one summary.
+ * <br>
+ * <p>
+ * Each module report is read on its own thread, as a parsed document
+ * cannot be shared between threads, into the totals of the module, its
+ * tests and its hot spots. The module summaries are then merged in reactor
+ * order.
+ * </p>
+ */
+@Mojo(name = "aggregate", aggregator = true)
+public class ReactorAggregator extends AbstractMojo {
+
+    /**
+     * The totals of a module report.
+     */
+    private static final class ModuleSummary {
+
+        /**
+         * The module.
+         */
+        private final MavenProject module;
+
+        /**
+         * Total method calls, class initialisations, wall clock time, cpu time and bytes allocated.
+         */
+        private final long[] totals = new long[TOTALS.length];
+
+        /**
+         * The wall clock time of each test, by fully qualified test name.
+         */
+        private final Map<String, Long> testTimes = new LinkedHashMap<>();
+
+        /**
+         * The most called methods of the module.
+         */
+        private Map<String, Long> hotMethods = new HashMap<>();
+
+        /**
+         * The most constructed classes of the module.
+         */
+        private Map<String, Long> hotClasses = new HashMap<>();
+
+        /**
+         * Initialises a new ModuleSummary.
+         *
+         * @param project the module.
+         */
+        ModuleSummary(final MavenProject project) {
+            this.module = project;
+        }
+    }
+
+    /**
+     * Names of the module totals.
+     */
+    private static final String[] TOTALS = {
+            "totalMethodCalls", "totalClassInitialisations", "wallClockTime", "cpuTime", "allocatedBytes"};
+
+    /**
+     * The projects of the reactor.
+     */
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * The reactor summary file.
+     */
+    @Parameter(property = "analyser.reactorReport",
+            defaultValue = "${project.build.directory}/testAnalyserReactorReport.xml")
+    private File reactorReport;
+
+    /**
+     * Number of module reports to read in parallel, 0 for one per processor.
+     */
+    @Parameter(property = "analyser.parallelism", defaultValue = "0")
+    private int parallelism;
+
+    /**
+     * Number of hot spots and slowest tests to report for the reactor.
+     */
+    @Parameter(property = "analyser.hotSpots", defaultValue = "20")
+    private int hotSpots;
+
+    /**
+     * Reads the module reports and writes the reactor summary.
+     *
+     * @throws MojoExecutionException if a report cannot be read or the summary cannot be written.
+     */
+    public final void execute() throws MojoExecutionException {
+        List<MavenProject> modules = new ArrayList<>();
+        for (MavenProject project : this.reactorProjects) {
+            if (new File(project.getBuild().getDirectory(), ReportParser.REPORT_FILE).isFile()) {
+                modules.add(project);
+            } else {
+                getLog().debug("No report in " + project.getArtifactId());
+            }
+        }
+        int threads = this.parallelism > 0 ? this.parallelism : Runtime.getRuntime().availableProcessors();
+        getLog().info("Aggregating the reports of " + modules.size() + " of " + this.reactorProjects.size()
+                + " modules on " + threads + " threads");
+        List<ModuleSummary> summaries = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<ModuleSummary>> tasks = new ArrayList<>();
+            for (MavenProject module : modules) {
+                tasks.add(pool.submit(() -> readModule(module)));
+            }
+            for (ForkJoinTask<ModuleSummary> task : tasks) {
+                summaries.add(task.join());
+            }
+        } catch (IllegalStateException | UncheckedIOException e) {
+            throw new MojoExecutionException("Cannot read module report", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        this.writeSummary(summaries);
+        getLog().info("Reactor summary written to " + this.reactorReport);
+    }
+
+    /**
+     * Writes the reactor summary.
+     *
+     * @param summaries the module summaries in reactor order.
+     * @throws MojoExecutionException if the summary cannot be written.
+     */
+    private void writeSummary(final List<ModuleSummary> summaries) throws MojoExecutionException {
+        long[] totals = new long[TOTALS.length];
+        int tests = 0;
+        Map<String, Long> testTimes = new HashMap<>();
+        Map<String, Long> hotMethods = new HashMap<>();
+        Map<String, Long> hotClasses = new HashMap<>();
+        for (ModuleSummary summary : summaries) {
+            for (int i = 0; i < TOTALS.length; i++) {
+                totals[i] += summary.totals[i];
+            }
+            tests += summary.testTimes.size();
+            summary.testTimes.forEach((test, time) -> testTimes.put(summary.module.getArtifactId() + ":" + test, time));
+            summary.hotMethods.forEach((name, count) -> hotMethods.merge(name, count, Long::sum));
+            summary.hotClasses.forEach((name, count) -> hotClasses.merge(name, count, Long::sum));
+        }
+        String separator = System.lineSeparator();
+        this.reactorReport.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer writer = Files.newBufferedWriter(this.reactorReport.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + separator);
+            writer.write("<ReactorSummary modules=\"" + summaries.size() + "\" tests=\"" + tests + "\""
+                    + getTotals(totals) + ">" + separator);
+            for (ModuleSummary summary : summaries) {
+                writer.write("  <Module artifactId=\"" + escape(summary.module.getArtifactId())
+                        + "\" name=\"" + escape(summary.module.getName())
+                        + "\" tests=\"" + summary.testTimes.size() + "\"" + getTotals(summary.totals)
+                        + "/>" + separator);
+            }
+            writeTop(writer, "SlowestTests", "Test", "wallClockTime", testTimes, separator);
+            writeTop(writer, "HotMethods", "Method", "count", hotMethods, separator);
+            writeTop(writer, "HotClasses", "Class", "count", hotClasses, separator);
+            writer.write("</ReactorSummary>" + separator);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write " + this.reactorReport, e);
+        }
+        for (ModuleSummary summary : summaries) {
+            getLog().info(summary.module.getArtifactId() + ": " + summary.testTimes.size() + " tests, "
+                    + summary.totals[0] + " method calls");
+        }
+    }
+
+    /**
+     * Writes the largest values of a map.
+     *
+     * @param writer    the summary writer.
+     * @param list      the list element name.
+     * @param element   the entry element name.
+     * @param attribute the value attribute name.
+     * @param values    the values by name.
+     * @param separator the line separator.
+     * @throws IOException if the summary cannot be written.
+     */
+    private void writeTop(final Writer writer, final String list, final String element, final String attribute,
+                          final Map<String, Long> values, final String separator) throws IOException {
+        List<Map.Entry<String, Long>> top = values.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(this.hotSpots)
+                .collect(Collectors.toList());
+        writer.write("  <" + list + " count=\"" + top.size() + "\">" + separator);
+        for (Map.Entry<String, Long> entry : top) {
+            writer.write("     <" + element + " " + attribute + "=\"" + entry.getValue()
+                    + "\" name=\"" + escape(entry.getKey()) + "\"/>" + separator);
+        }
+        writer.write("  </" + list + ">" + separator);
+    }
+
+    private static String getTotals(final long[] totals) {
+        StringBuilder attributes = new StringBuilder();
+        for (int i = 0; i < TOTALS.length; i++) {
+            attributes.append(' ').append(TOTALS[i]).append("=\"").append(totals[i]).append('"');
+        }
+        return attributes.toString();
+    }
+
+    /**
+     * Reads the totals of a module report.
+     *
+     * @param module the module.
+     * @return the module summary.
+     */
+    private static ModuleSummary readModule(final MavenProject module) {
+        File report = new File(module.getBuild().getDirectory(), ReportParser.REPORT_FILE);
+        ModuleSummary summary = new ModuleSummary(module);
+        Document doc;
+        try {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException(e);
+        }
+        NodeList nodes = doc.getElementsByTagName("Test");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            Element test = (Element) node;
+            summary.totals[0] += sum(test, "MethodsCalled", "Method", "calls");
+            summary.totals[1] += sum(test, "ClassesInitialised", "Class", "count");
+            summary.totals[2] += parse(test.getAttribute(TOTALS[2]));
+            summary.totals[3] += parse(test.getAttribute(TOTALS[3]));
+            summary.totals[4] += parse(test.getAttribute(TOTALS[4]));
+            summary.testTimes.put(test.getAttribute("class") + "." + test.getAttribute("name"),
+                    parse(test.getAttribute(TOTALS[2])));
+        }
+        NodeList summaries = doc.getElementsByTagName("SuiteSummary");
+        if (summaries.getLength() > 0) {
+            summary.hotMethods = ReportParser.readHotSpots((Element) summaries.item(0), "HotMethods");
+            summary.hotClasses = ReportParser.readHotSpots((Element) summaries.item(0), "HotClasses");
+        }
+        return summary;
+    }
+
+    private static long sum(final Element test, final String list, final String element, final String attribute) {
+        NodeList lists = test.getElementsByTagName(list);
+        if (lists.getLength() == 0) {
+            return 0;
+        }
+        long total = 0;
+        NodeList entries = ((Element) lists.item(0)).getElementsByTagName(element);
+        for (int i = 0; i < entries.getLength(); i++) {
+            total += parse(((Element) entries.item(i)).getAttribute(attribute));
+        }
+        return total;
+    }
+
+    private static long parse(final String value) {
+        return value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,306 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds groups of tests with near identical footprints, the methods they
+ * called and the classes they constructed.
+ * <br>
+ * <p>
+ * Each test is summarised by a MinHash signature of its footprint, the
+ * fraction of equal signature values estimating the Jaccard similarity of
+ * two footprints. The names of the footprint are hashed to 64 bits as in
+ * {@link CountMinSketch}, so names colliding in {@link String#hashCode()}
+ * stay distinct elements. The signatures are split into bands hashed into
+ * buckets, so only tests sharing a bucket are compared: tests above the
+ * similarity threshold share a bucket with high probability while the
+ * number of comparisons stays close to linear in the number of tests. The rows per
+ * band are chosen so the similarity at which two tests are as likely as
+ * not to share a bucket, about (1/bands)^(1/rows), is near the threshold.
+ * Suites small enough are compared pair by pair instead.
+ * </p>
+ */
+final class RedundancyDetector {
+
+    /**
+     * A group of tests with near identical footprints.
+     */
+    static final class Cluster {
+
+        /**
+         * The tests of the group.
+         */
+        private final List<String> tests = new ArrayList<>();
+
+        /**
+         * The least estimated Jaccard similarity of a test to the first test of the group.
+         */
+        private double similarity = 1.0;
+
+        /**
+         * Gets the tests of the group.
+         *
+         * @return the fully qualified test names.
+         */
+        List<String> getTests() {
+            return this.tests;
+        }
+
+        /**
+         * Gets the least estimated Jaccard similarity of a test to the first test of the group.
+         *
+         * @return the similarity.
+         */
+        double getSimilarity() {
+            return this.similarity;
+        }
+    }
+
+    /**
+     * Number of hashes in a signature.
+     */
+    private static final int SIGNATURE_LENGTH = 128;
+
+    /**
+     * Most tests compared pair by pair rather than by band.
+     */
+    private static final int EXHAUSTIVE_LIMIT = 256;
+
+    /**
+     * Multiplier of the hashes.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The least similarity of the tests grouped.
+     */
+    private final double threshold;
+
+    /**
+     * Number of signature values per band.
+     */
+    private final int rows;
+
+    /**
+     * Number of bands of a signature.
+     */
+    private final int bands;
+
+    /**
+     * The tests summarised.
+     */
+    private final List<String> tests = new ArrayList<>();
+
+    /**
+     * The signatures of the tests.
+     */
+    private final List<long[]> signatures = new ArrayList<>();
+
+    /**
+     * Seeds of the signature hashes.
+     */
+    private final long[] seeds = new long[SIGNATURE_LENGTH];
+
+    /**
+     * Initialises a new RedundancyDetector.
+     *
+     * @param similarity the least Jaccard similarity of the tests to group.
+     */
+    RedundancyDetector(final double similarity) {
+        this.threshold = similarity;
+        this.rows = rowsPerBand(similarity);
+        this.bands = SIGNATURE_LENGTH / this.rows;
+        long seed = HASH_MULTIPLIER;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed = mix(seed + HASH_MULTIPLIER);
+            this.seeds[i] = seed | 1;
+        }
+    }
+
+    /**
+     * Summarises the footprint of a finished test.
+     *
+     * @param test    the fully qualified test name.
+     * @param methods the methods the test called.
+     * @param classes the classes the test constructed.
+     */
+    void add(final String test, final Collection<String> methods, final Collection<String> classes) {
+        if (methods.isEmpty() && classes.isEmpty()) {
+            return;
+        }
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String method : methods) {
+            this.addToSignature(signature, CountMinSketch.hash(method));
+        }
+        for (String clazz : classes) {
+            this.addToSignature(signature, ~CountMinSketch.hash(clazz));
+        }
+        this.tests.add(test);
+        this.signatures.add(signature);
+    }
+
+    /**
+     * Groups the tests with near identical footprints.
+     *
+     * @return the groups of more than one test, largest first.
+     */
+    List<Cluster> getClusters() {
+        int[] parent = new int[this.tests.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        if (this.tests.size() <= EXHAUSTIVE_LIMIT) {
+            this.linkPairs(parent);
+        } else {
+            this.linkByBand(parent);
+        }
+        Map<Integer, Cluster> clusters = new HashMap<>();
+        for (int test = 0; test < parent.length; test++) {
+            int root = find(parent, test);
+            Cluster cluster = clusters.computeIfAbsent(root, r -> new Cluster());
+            cluster.tests.add(this.tests.get(test));
+            cluster.similarity = Math.min(cluster.similarity, this.similarity(root, test));
+        }
+        List<Cluster> groups = new ArrayList<>();
+        for (Cluster cluster : clusters.values()) {
+            if (cluster.tests.size() > 1) {
+                groups.add(cluster);
+            }
+        }
+        groups.sort((a, b) -> Integer.compare(b.tests.size(), a.tests.size()));
+        return groups;
+    }
+
+    /**
+     * Links every pair of similar tests.
+     *
+     * @param parent the union find forest of the tests.
+     */
+    private void linkPairs(final int[] parent) {
+        for (int a = 0; a < parent.length; a++) {
+            for (int b = a + 1; b < parent.length; b++) {
+                if (this.similarity(a, b) >= this.threshold) {
+                    parent[find(parent, b)] = find(parent, a);
+                }
+            }
+        }
+    }
+
+    /**
+     * Links the similar tests sharing a bucket in any band.
+     *
+     * @param parent the union find forest of the tests.
+     */
+    private void linkByBand(final int[] parent) {
+        for (int band = 0; band < this.bands; band++) {
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int test = 0; test < this.signatures.size(); test++) {
+                long key = band;
+                long[] signature = this.signatures.get(test);
+                for (int row = band * this.rows; row < (band + 1) * this.rows; row++) {
+                    key = mix(key * HASH_MULTIPLIER + signature[row]);
+                }
+                buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(test);
+            }
+            for (List<Integer> bucket : buckets.values()) {
+                this.link(bucket, parent);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of signature values per band putting the similarity
+     * at which two tests are as likely as not to share a bucket,
+     * (1/bands)^(1/rows), nearest the threshold.
+     *
+     * @param similarity the least Jaccard similarity of the tests to group.
+     * @return the number of rows per band.
+     */
+    private static int rowsPerBand(final double similarity) {
+        int best = 1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int r = 1; r <= SIGNATURE_LENGTH; r++) {
+            int b = SIGNATURE_LENGTH / r;
+            double distance = Math.abs(Math.pow(1.0 / b, 1.0 / r) - similarity);
+            if (distance < bestDistance) {
+                best = r;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Links the similar tests of a bucket. Each test is compared with the
+     * first test of each group found in the bucket so far, so a bucket of
+     * identical tests is linked in a single pass.
+     *
+     * @param bucket the tests sharing a bucket.
+     * @param parent the union find forest of the tests.
+     */
+    private void link(final List<Integer> bucket, final int[] parent) {
+        if (bucket.size() < 2) {
+            return;
+        }
+        List<Integer> leaders = new ArrayList<>();
+        for (int test : bucket) {
+            boolean linked = false;
+            for (int leader : leaders) {
+                if (this.similarity(leader, test) >= this.threshold) {
+                    parent[find(parent, test)] = find(parent, leader);
+                    linked = true;
+                    break;
+                }
+            }
+            if (!linked) {
+                leaders.add(test);
+            }
+        }
+    }
+
+    /**
+     * Estimates the Jaccard similarity of the footprints of two tests.
+     *
+     * @param a the first test.
+     * @param b the second test.
+     * @return the fraction of equal signature values.
+     */
+    private double similarity(final int a, final int b) {
+        long[] first = this.signatures.get(a);
+        long[] second = this.signatures.get(b);
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (first[i] == second[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_LENGTH;
+    }
+
+    private void addToSignature(final long[] signature, final long element) {
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            signature[i] = Math.min(signature[i], mix(element * this.seeds[i]));
+        }
+    }
+
+    private static int find(final int[] parent, final int test) {
+        int root = test;
+        while (parent[root] != root) {
+            parent[root] = parent[parent[root]];
+            root = parent[root];
+        }
+        return root;
+    }
+
+    private static long mix(final long value) {
+        long hash = (value ^ (value >>> 33)) * HASH_MULTIPLIER;
+        hash = (hash ^ (hash >>> 29)) * 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 32);
+    }
+}
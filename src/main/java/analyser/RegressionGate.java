@@ -0,0 +1,125 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the metrics of a run against the baseline.
+ * <br>
+ * <p>
+ * A metric regresses when it grows by more than its relative threshold
+ * over the baseline. Negative thresholds disable a check. Tests missing
+ * from the baseline and metrics not measured in either run are skipped.
+ * </p>
+ */
+final class RegressionGate {
+
+    /**
+     * Allowed relative growth of method calls.
+     */
+    private final double callThreshold;
+
+    /**
+     * Allowed relative growth of the maximum stack depth.
+     */
+    private final double depthThreshold;
+
+    /**
+     * Allowed relative growth of class initialisations.
+     */
+    private final double classInitialisationThreshold;
+
+    /**
+     * Allowed relative growth of wall clock and cpu time.
+     */
+    private final double timeThreshold;
+
+    /**
+     * Allowed relative growth of allocated bytes.
+     */
+    private final double allocationThreshold;
+
+    /**
+     * Initialises a new RegressionGate.
+     *
+     * @param calls               allowed relative growth of method calls.
+     * @param depth               allowed relative growth of the maximum stack depth.
+     * @param classInitialisation allowed relative growth of class initialisations.
+     * @param time                allowed relative growth of wall clock and cpu time.
+     * @param allocation          allowed relative growth of allocated bytes.
+     */
+    RegressionGate(final double calls, final double depth, final double classInitialisation,
+                   final double time, final double allocation) {
+        this.callThreshold = calls;
+        this.depthThreshold = depth;
+        this.classInitialisationThreshold = classInitialisation;
+        this.timeThreshold = time;
+        this.allocationThreshold = allocation;
+    }
+
+    /**
+     * Finds the tests of a run that regressed against the baseline.
+     *
+     * @param baseline the baseline metrics by fully qualified test name.
+     * @param run      the metrics of the run.
+     * @return a description per regressed test listing the metrics and methods that grew.
+     */
+    List<String> check(final Map<String, TestMetrics> baseline, final List<TestMetrics> run) {
+        List<String> regressions = new ArrayList<>();
+        for (TestMetrics test : run) {
+            TestMetrics base = baseline.get(test.getTest());
+            if (base == null) {
+                continue;
+            }
+            List<String> grown = new ArrayList<>();
+            this.compare(grown, "total method calls", base.getTotalMethodCalls(),
+                    test.getTotalMethodCalls(), this.callThreshold);
+            this.compare(grown, "distinct methods called", base.getDistinctMethodCalls(),
+                    test.getDistinctMethodCalls(), this.callThreshold);
+            this.compare(grown, "maximum stack depth", base.getMaximumStackDepth(),
+                    test.getMaximumStackDepth(), this.depthThreshold);
+            this.compare(grown, "class initialisations", base.getTotalClassInitialisations(),
+                    test.getTotalClassInitialisations(), this.classInitialisationThreshold);
+            this.compare(grown, "wall clock time (ns)", base.getWallClockTime(),
+                    test.getWallClockTime(), this.timeThreshold);
+            this.compare(grown, "cpu time (ns)", base.getCpuTime(),
+                    test.getCpuTime(), this.timeThreshold);
+            this.compare(grown, "allocated bytes", base.getAllocatedBytes(),
+                    test.getAllocatedBytes(), this.allocationThreshold);
+            for (Map.Entry<String, Long> method : test.getMethodCalls().entrySet()) {
+                Long baseCalls = base.getMethodCalls().get(method.getKey());
+                if (baseCalls != null) {
+                    this.compare(grown, "calls to " + method.getKey(), baseCalls,
+                            method.getValue(), this.callThreshold);
+                }
+            }
+            if (!grown.isEmpty()) {
+                regressions.add(test.getTest() + System.lineSeparator() + "  "
+                        + String.join(System.lineSeparator() + "  ", grown));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Compares a metric against its baseline.
+     *
+     * @param grown     the descriptions of the metrics that grew.
+     * @param metric    the name of the metric.
+     * @param base      the baseline value, negative if not measured.
+     * @param value     the value of the run, negative if not measured.
+     * @param threshold the allowed relative growth, negative to skip the check.
+     */
+    private void compare(final List<String> grown, final String metric, final long base,
+                         final long value, final double threshold) {
+        if (threshold < 0 || base < 0 || value < 0) {
+            return;
+        }
+        if (value > base * (1 + threshold)) {
+            String growth = base == 0 ? "new" : String.format(Locale.ROOT, "+%.1f%%", 100.0 * (value - base) / base);
+            grown.add(metric + ": " + base + " -> " + value + " (" + growth + ")");
+        }
+    }
+}
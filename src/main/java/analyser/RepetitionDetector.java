@@ -0,0 +1,414 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds call patterns repeated back to back in the traces of the tests,
+ * such as a query issued once per element of a loop.
+ * <br>
+ * <p>
+ * The trace is read once. Each call is identified by a hash of its method
+ * and the hashes of the calls it makes, so two calls hash alike when they
+ * made the same calls in the same order. When a call exits, the sequence of
+ * the calls it made is scanned for runs of a unit of up to
+ * {@link #MAX_PERIOD} calls repeated consecutively. Only the open calls and
+ * their direct callees are held, so the time is linear in the trace length
+ * and the memory is bounded by the widest call.
+ * </p>
+ */
+final class RepetitionDetector {
+
+    /**
+     * A call pattern repeated back to back.
+     */
+    static final class Finding {
+
+        /**
+         * The method making the repeated calls.
+         */
+        private final String caller;
+
+        /**
+         * The methods of the repeated unit.
+         */
+        private final String pattern;
+
+        /**
+         * The number of calls in the repeated unit, nested calls included.
+         */
+        private final long calls;
+
+        /**
+         * The tests the pattern appears in.
+         */
+        private final Set<String> tests = new LinkedHashSet<>();
+
+        /**
+         * The longest run of repetitions.
+         */
+        private long maximumRepetitions;
+
+        /**
+         * The repetitions of all the runs.
+         */
+        private long totalRepetitions;
+
+        /**
+         * The number of runs.
+         */
+        private long runs;
+
+        /**
+         * Initialises a new Finding.
+         *
+         * @param callerName  the method making the repeated calls.
+         * @param unit        the methods of the repeated unit.
+         * @param unitCalls   the number of calls in the repeated unit.
+         */
+        Finding(final String callerName, final String unit, final long unitCalls) {
+            this.caller = callerName;
+            this.pattern = unit;
+            this.calls = unitCalls;
+        }
+
+        /**
+         * Gets the method making the repeated calls.
+         *
+         * @return the caller.
+         */
+        String getCaller() {
+            return this.caller;
+        }
+
+        /**
+         * Gets the methods of the repeated unit.
+         *
+         * @return the pattern.
+         */
+        String getPattern() {
+            return this.pattern;
+        }
+
+        /**
+         * Gets the number of calls in the repeated unit, nested calls included.
+         *
+         * @return the calls per repetition.
+         */
+        long getCalls() {
+            return this.calls;
+        }
+
+        /**
+         * Gets the tests the pattern appears in.
+         *
+         * @return the test names.
+         */
+        Set<String> getTests() {
+            return this.tests;
+        }
+
+        /**
+         * Gets the longest run of repetitions.
+         *
+         * @return the repetitions.
+         */
+        long getMaximumRepetitions() {
+            return this.maximumRepetitions;
+        }
+
+        /**
+         * Gets the repetitions of all the runs.
+         *
+         * @return the repetitions.
+         */
+        long getTotalRepetitions() {
+            return this.totalRepetitions;
+        }
+
+        /**
+         * Gets the number of runs.
+         *
+         * @return the runs.
+         */
+        long getRuns() {
+            return this.runs;
+        }
+    }
+
+    /**
+     * A call open on the stack and the calls it made so far.
+     */
+    private static final class Frame {
+
+        /**
+         * The method id.
+         */
+        private int method;
+
+        /**
+         * Hash of the calls made so far.
+         */
+        private long hash;
+
+        /**
+         * Calls made so far, nested calls included.
+         */
+        private long size;
+
+        /**
+         * Hashes of the direct callees.
+         */
+        private long[] childHashes = new long[INITIAL_CHILDREN];
+
+        /**
+         * Method ids of the direct callees.
+         */
+        private int[] childMethods = new int[INITIAL_CHILDREN];
+
+        /**
+         * Calls made by each direct callee, itself included.
+         */
+        private long[] childSizes = new long[INITIAL_CHILDREN];
+
+        /**
+         * Number of direct callees.
+         */
+        private int children;
+
+        /**
+         * Resets the frame for a new call.
+         *
+         * @param methodId the method id.
+         */
+        void reset(final int methodId) {
+            this.method = methodId;
+            this.hash = methodId;
+            this.size = 1;
+            this.children = 0;
+        }
+
+        /**
+         * Adds a direct callee.
+         *
+         * @param childHash   the hash of the callee.
+         * @param childMethod the method id of the callee.
+         * @param childSize   the calls made by the callee, itself included.
+         */
+        void add(final long childHash, final int childMethod, final long childSize) {
+            if (this.children == this.childHashes.length) {
+                int capacity = this.children * 2;
+                this.childHashes = Arrays.copyOf(this.childHashes, capacity);
+                this.childMethods = Arrays.copyOf(this.childMethods, capacity);
+                this.childSizes = Arrays.copyOf(this.childSizes, capacity);
+            }
+            this.childHashes[this.children] = childHash;
+            this.childMethods[this.children] = childMethod;
+            this.childSizes[this.children] = childSize;
+            this.children++;
+            this.hash = this.hash * HASH_MULTIPLIER + childHash;
+            this.size += childSize;
+        }
+    }
+
+    /**
+     * The longest unit of calls looked for, in direct callees.
+     */
+    static final int MAX_PERIOD = 8;
+
+    /**
+     * Initial capacity of the callees of a frame.
+     */
+    private static final int INITIAL_CHILDREN = 16;
+
+    /**
+     * Multiplier of the call hashes.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The fewest repetitions reported.
+     */
+    private final int minimumRepetitions;
+
+    /**
+     * Method ids by name.
+     */
+    private final Map<String, Integer> methodIds = new HashMap<>();
+
+    /**
+     * Method names by id.
+     */
+    private final List<String> methodNames = new ArrayList<>();
+
+    /**
+     * Findings by caller and repeated unit.
+     */
+    private final Map<String, Finding> findings = new HashMap<>();
+
+    /**
+     * The open calls, reused between tests.
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /**
+     * Number of open calls.
+     */
+    private int depth;
+
+    /**
+     * Initialises a new RepetitionDetector.
+     *
+     * @param repetitions the fewest repetitions to report.
+     */
+    RepetitionDetector(final int repetitions) {
+        this.minimumRepetitions = Math.max(2, repetitions);
+    }
+
+    /**
+     * Finds the repeated call patterns in the trace of a test.
+     *
+     * @param test  the test name.
+     * @param trace the entry and exit steps of the test.
+     */
+    void analyse(final String test, final Iterable<String> trace) {
+        this.depth = 0;
+        this.push(this.methodId(test));
+        for (String step : trace) {
+            int end = step.lastIndexOf(":(");
+            if (end < 0) {
+                continue;
+            }
+            if (step.startsWith(FoldedTrace.ENTRY)) {
+                this.push(this.methodId(step.substring(FoldedTrace.ENTRY.length(), end)));
+            } else if (step.startsWith(FoldedTrace.EXIT)) {
+                this.exit(test, this.methodId(step.substring(FoldedTrace.EXIT.length(), end)));
+            }
+        }
+        while (this.depth > 0) {
+            this.pop(test);
+        }
+    }
+
+    /**
+     * Gets the patterns repeated at least the fewest repetitions to report.
+     *
+     * @return the findings, most repeated calls first.
+     */
+    List<Finding> getFindings() {
+        List<Finding> sorted = new ArrayList<>(this.findings.values());
+        sorted.sort((a, b) -> Long.compare(b.getTotalRepetitions() * b.getCalls(),
+                a.getTotalRepetitions() * a.getCalls()));
+        return sorted;
+    }
+
+    /**
+     * Exits the innermost open call of a method. Calls left open above it,
+     * whose exits were not traced, are exited with it.
+     *
+     * @param test   the test name.
+     * @param method the method id.
+     */
+    private void exit(final String test, final int method) {
+        int frame = this.depth - 1;
+        while (frame > 0 && this.frames.get(frame).method != method) {
+            frame--;
+        }
+        if (frame == 0) {
+            return;
+        }
+        while (this.depth > frame) {
+            this.pop(test);
+        }
+    }
+
+    private void push(final int method) {
+        if (this.depth == this.frames.size()) {
+            this.frames.add(new Frame());
+        }
+        this.frames.get(this.depth++).reset(method);
+    }
+
+    private void pop(final String test) {
+        Frame frame = this.frames.get(--this.depth);
+        this.findRuns(test, frame);
+        if (this.depth > 0) {
+            long hash = frame.hash ^ ((long) frame.children << 32);
+            hash = (hash ^ (hash >>> 33)) * HASH_MULTIPLIER;
+            this.frames.get(this.depth - 1).add(hash ^ (hash >>> 29), frame.method, frame.size);
+        }
+    }
+
+    /**
+     * Finds the runs of repeated units in the direct callees of a call.
+     * At each callee the unit covering the most callees is taken, the
+     * shortest on a tie, and the scan resumes after its run.
+     *
+     * @param test  the test name.
+     * @param frame the exited call.
+     */
+    private void findRuns(final String test, final Frame frame) {
+        long[] hashes = frame.childHashes;
+        int start = 0;
+        while (start + this.minimumRepetitions <= frame.children) {
+            int bestPeriod = 0;
+            int bestRepetitions = 1;
+            int maxPeriod = Math.min(MAX_PERIOD, (frame.children - start) / this.minimumRepetitions);
+            for (int period = 1; period <= maxPeriod; period++) {
+                int end = start;
+                while (end + period < frame.children && hashes[end] == hashes[end + period]) {
+                    end++;
+                }
+                int repetitions = (end - start) / period + 1;
+                if (repetitions * period > bestRepetitions * bestPeriod) {
+                    bestPeriod = period;
+                    bestRepetitions = repetitions;
+                }
+            }
+            if (bestRepetitions >= this.minimumRepetitions) {
+                this.record(test, frame, start, bestPeriod, bestRepetitions);
+                start += bestPeriod * bestRepetitions;
+            } else {
+                start++;
+            }
+        }
+    }
+
+    private void record(final String test, final Frame frame, final int start,
+                        final int period, final int repetitions) {
+        StringBuilder pattern = new StringBuilder();
+        long unitHash = period;
+        long calls = 0;
+        for (int i = start; i < start + period; i++) {
+            if (i > start) {
+                pattern.append(", ");
+            }
+            pattern.append(this.methodNames.get(frame.childMethods[i]));
+            unitHash = unitHash * HASH_MULTIPLIER + frame.childHashes[i];
+            calls += frame.childSizes[i];
+        }
+        String caller = this.methodNames.get(frame.method);
+        long unitCalls = calls;
+        Finding finding = this.findings.computeIfAbsent(caller + "#" + Long.toHexString(unitHash),
+                k -> new Finding(caller, pattern.toString(), unitCalls));
+        finding.tests.add(test);
+        finding.maximumRepetitions = Math.max(finding.maximumRepetitions, repetitions);
+        finding.totalRepetitions += repetitions;
+        finding.runs++;
+    }
+
+    private int methodId(final String method) {
+        Integer id = this.methodIds.get(method);
+        if (id == null) {
+            id = this.methodNames.size();
+            this.methodIds.put(method, id);
+            this.methodNames.add(method);
+        }
+        return id;
+    }
+}
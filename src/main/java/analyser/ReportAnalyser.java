@@ -0,0 +1,48 @@
+package analyser;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+
+/**
+ * Regenerates the graphs of an existing report without running the tests again.
+ */
+@Mojo(name = "analyse-report")
+public class ReportAnalyser extends AbstractMojo {
+
+    /**
+     * The project under test.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject mavenProject;
+
+    /**
+     * The report to regenerate the graphs from.
+     */
+    @Parameter(property = "analyser.reportFile", defaultValue = ReportParser.REPORT_PATH)
+    private File reportFile;
+
+    /**
+     * Number of packages to draw in parallel, 0 for one per processor.
+     */
+    @Parameter(property = "analyser.parallelism", defaultValue = "0")
+    private int parallelism;
+
+    /**
+     * Parses the report and draws the graphs.
+     *
+     * @throws MojoExecutionException if the report does not exist.
+     */
+    public final void execute() throws MojoExecutionException {
+        if (!this.reportFile.isFile()) {
+            throw new MojoExecutionException("No report to analyse at " + this.reportFile);
+        }
+        int threads = this.parallelism > 0 ? this.parallelism : Runtime.getRuntime().availableProcessors();
+        getLog().info("Regenerating graphs from " + this.reportFile + " on " + threads + " threads");
+        new ReportParser(this.mavenProject, this.reportFile, threads).parseReportAndProduceGraphs();
+    }
+}
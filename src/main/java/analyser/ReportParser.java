@@ -4,10 +4,16 @@ import org.apache.maven.project.MavenProject;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
@@ -16,17 +22,147 @@ import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
  * Parse the xml trace and produce the graphs for the metrics.
+ * <br>
+ * <p>
+ * The report is read into the graph data of each package first, as the
+ * parsed document cannot be shared between threads, and the graphs of
+ * the packages are then drawn in parallel on a fork/join pool.
+ * </p>
  */
 public class ReportParser {
 
     /**
      * The report filename for parsing.
      */
-    private static final String REPORT_FILE = "testAnalyserReport.xml";
+    static final String REPORT_FILE = "testAnalyserReport.xml";
+
+    /**
+     * The default report of a module, under its build directory.
+     */
+    static final String REPORT_PATH = "${project.build.directory}/" + REPORT_FILE;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Bytes in a kilobyte.
+     */
+    private static final double BYTES_PER_KILOBYTE = 1024.0;
+
+    /**
+     * Most points plotted in the depth chart of a test, the steps of a
+     * longer trace are plotted by the greatest depth of each bucket of steps.
+     */
+    private static final int DEPTH_CHART_POINTS = 2000;
+
+    /**
+     * The graph data of a test.
+     */
+    private static final class TestData {
+
+        /**
+         * The simple name of the test class.
+         */
+        private final String className;
+
+        /**
+         * The test name.
+         */
+        private final String testName;
+
+        /**
+         * The trace, repeated calls folded.
+         */
+        private final FoldedTrace trace = new FoldedTrace();
+
+        /**
+         * The calling context tree of the test.
+         */
+        private final CallingContextTree callTree = new CallingContextTree();
+
+        /**
+         * Initialises a new TestData.
+         *
+         * @param testClassName the simple name of the test class.
+         * @param name          the test name.
+         */
+        TestData(final String testClassName, final String name) {
+            this.className = testClassName;
+            this.testName = name;
+        }
+    }
+
+    /**
+     * The graph data of a package.
+     */
+    private static final class PackageData {
+
+        /**
+         * The package name.
+         */
+        private final String name;
+
+        /**
+         * The tests of the package.
+         */
+        private final List<TestData> tests = new ArrayList<>();
+
+        /**
+         * Distinct and total method calls per test.
+         */
+        private final HashMap<String, ArrayList<Integer>> testMethodCalls = new HashMap<>();
+
+        /**
+         * Distinct and total class initialisations per test.
+         */
+        private final HashMap<String, ArrayList<Integer>> testClassInits = new HashMap<>();
+
+        /**
+         * Wall clock and cpu time per test.
+         */
+        private final HashMap<String, ArrayList<Double>> testTimes = new HashMap<>();
+
+        /**
+         * Allocation and garbage collection time per test.
+         */
+        private final HashMap<String, ArrayList<Double>> testAllocations = new HashMap<>();
+
+        /**
+         * Classes loaded per test, only the tests with class loading reported.
+         */
+        private final Map<String, Long> testClassLoads = new LinkedHashMap<>();
+
+        /**
+         * Blocked and wait time per test, only the tests that contended monitors.
+         */
+        private final HashMap<String, ArrayList<Double>> testMonitorContention = new HashMap<>();
+
+        /**
+         * Exceptions thrown per test, only the tests with exceptions counted.
+         */
+        private final Map<String, Long> testExceptions = new LinkedHashMap<>();
+
+        /**
+         * The calling context trees of the tests merged.
+         */
+        private final CallingContextTree callTree = new CallingContextTree();
+
+        /**
+         * Initialises a new PackageData.
+         *
+         * @param packageName the package name.
+         */
+        PackageData(final String packageName) {
+            this.name = packageName;
+        }
+    }
 
     /**
      * The project under tests base package.
@@ -43,15 +179,38 @@ public class ReportParser {
      */
     private ChartDrawer drawer;
 
+    /**
+     * The report to parse.
+     */
+    private File reportFile;
+
+    /**
+     * Number of packages to draw in parallel.
+     */
+    private int parallelism;
+
     /**
      * It's a constructor init.
      *
      * @param mavenProject the maven project under analysis.
      */
     public ReportParser(final MavenProject mavenProject) {
+        this(mavenProject, new File(mavenProject.getBuild().getDirectory(), REPORT_FILE), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initialises a ReportParser for a given report.
+     *
+     * @param mavenProject the maven project under analysis.
+     * @param report       the report to parse.
+     * @param threads      the number of packages to draw in parallel.
+     */
+    public ReportParser(final MavenProject mavenProject, final File report, final int threads) {
         this.project = mavenProject;
         this.packages = new HashMap<>();
-        this.drawer = new ChartDrawer();
+        this.drawer = new ChartDrawer(new File(mavenProject.getBuild().getDirectory(), ChartDrawer.OUTPUT_DIRECTORY));
+        this.reportFile = report;
+        this.parallelism = Math.max(1, threads);
     }
 
     /**
@@ -59,11 +218,10 @@ public class ReportParser {
      */
     public void parseReportAndProduceGraphs() {
         try {
-            File report = new File(REPORT_FILE);
             DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = documentBuilder.parse(report);
+            Document doc = documentBuilder.parse(this.reportFile);
             doc.getDocumentElement().normalize();
-            NodeList nodes = doc.getElementsByTagName("test");
+            NodeList nodes = doc.getElementsByTagName("Test");
             // organise nodelist to packages
             for (int i = 0; i < nodes.getLength(); i++) {
                 Node node = nodes.item(i);
@@ -76,45 +234,331 @@ public class ReportParser {
                     packages.put(packageName, packageNodes);
                 }
             }
-            // get trace depth list for package and produce method call and class initialisation graphs per package.
+            List<PackageData> packageData = new ArrayList<>();
             for (Map.Entry<String, ArrayList<Node>> packageName : this.packages.entrySet()) {
-                HashMap<String, ArrayList<Integer>> testMethodCalls = new HashMap<>();
-                HashMap<String, ArrayList<Integer>> testClassInits = new HashMap<>();
-                for (Node n : packageName.getValue()) {
-                    if (n.getNodeType() == Node.ELEMENT_NODE) {
-                        List<Integer> depthTrace = new ArrayList<>();
-                        Element trace = (Element) n;
-                        NodeList traceElements = trace.getElementsByTagName("TraceElement");
-                        for (int i = 0; i < traceElements.getLength(); i++) {
-                            Element traceElement = (Element) traceElements.item(i);
-                            depthTrace.add(Integer.parseInt(traceElement.getAttribute("depth")));
-                        }
-                        String testClass = trace.getAttribute("class");
-                        String testClassName = testClass.substring(testClass.lastIndexOf(".") + 1);
-                        String testName = trace.getAttribute("name");
-                        this.drawer.drawDepthChart(packageName.getKey(), testClassName, testName, depthTrace);
-
-                        ArrayList<Integer> methodCounts = new ArrayList<>();
-                        Element methods = (Element) trace.getElementsByTagName("MethodsCalled").item(0);
-                        methodCounts.add(Integer.parseInt(methods.getAttribute("distinct")));
-                        methodCounts.add(Integer.parseInt(methods.getAttribute("total")));
-                        testMethodCalls.put(testClassName + "." + testName, methodCounts);
-
-                        ArrayList<Integer> classCounts = new ArrayList<>();
-                        Element classes = (Element) trace.getElementsByTagName("ClassesInitialised").item(0);
-                        classCounts.add(Integer.parseInt(classes.getAttribute("distinct")));
-                        classCounts.add(Integer.parseInt(classes.getAttribute("total")));
-                        testClassInits.put(testClassName + "." + testName, classCounts);
-                    }
-
+                packageData.add(readPackage(packageName.getKey(), packageName.getValue()));
+            }
+            this.drawPackages(packageData);
+            NodeList summaries = doc.getElementsByTagName("SuiteSummary");
+            if (summaries.getLength() > 0) {
+                Element summary = (Element) summaries.item(0);
+                this.drawer.drawHotSpotChart("Most called methods", "Suite-Hot-Methods",
+                        readHotSpots(summary, "HotMethods"));
+                this.drawer.drawHotSpotChart("Most constructed classes", "Suite-Hot-Classes",
+                        readHotSpots(summary, "HotClasses"));
+                Map<String, Long> loads = readClassLoadsOutsideTests(summary);
+                if (!loads.isEmpty()) {
+                    this.drawer.drawHotSpotChart("Classes loaded outside tests", "Suite-Class-Loading-Outside-Tests",
+                            loads);
                 }
-                this.drawer.drawClusteredHistogramsForMethodCalls(testMethodCalls, packageName.getKey());
-                this.drawer.drawClusteredHistogramsForConstructorCalls(testClassInits, packageName.getKey());
             }
-
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Draws the graphs of the packages in parallel.
+     *
+     * @param packageData the graph data of the packages.
+     */
+    private void drawPackages(final List<PackageData> packageData) {
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (PackageData data : packageData) {
+                tasks.add(pool.submit(() -> this.drawPackage(data)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads the graph data of the tests of a package.
+     *
+     * @param packageName the package name.
+     * @param nodes       the test nodes of the package.
+     * @return the graph data of the package.
+     */
+    private static PackageData readPackage(final String packageName, final List<Node> nodes) {
+        PackageData data = new PackageData(packageName);
+        // get trace depth list for package and produce method call and class initialisation graphs per package.
+        for (Node n : nodes) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                Element trace = (Element) n;
+                String testClass = trace.getAttribute("class");
+                String testClassName = testClass.substring(testClass.lastIndexOf(".") + 1);
+                String testName = trace.getAttribute("name");
+                TestData test = new TestData(testClassName, testName);
+                NodeList traces = trace.getElementsByTagName("Trace");
+                if (traces.getLength() > 0) {
+                    readTrace((Element) traces.item(0), test.trace);
+                }
+
+                ArrayList<Integer> methodCounts = new ArrayList<>();
+                Element methods = (Element) trace.getElementsByTagName("MethodsCalled").item(0);
+                methodCounts.add(Integer.parseInt(methods.getAttribute("distinct")));
+                methodCounts.add(Integer.parseInt(methods.getAttribute("total")));
+                data.testMethodCalls.put(testClassName + "." + testName, methodCounts);
+
+                ArrayList<Integer> classCounts = new ArrayList<>();
+                Element classes = (Element) trace.getElementsByTagName("ClassesInitialised").item(0);
+                classCounts.add(Integer.parseInt(classes.getAttribute("distinct")));
+                classCounts.add(Integer.parseInt(classes.getAttribute("total")));
+                data.testClassInits.put(testClassName + "." + testName, classCounts);
+
+                ArrayList<Double> times = new ArrayList<>();
+                times.add(toMillis(trace.getAttribute("wallClockTime")));
+                times.add(toMillis(trace.getAttribute("cpuTime")));
+                data.testTimes.put(testClassName + "." + testName, times);
+
+                ArrayList<Double> allocation = new ArrayList<>();
+                allocation.add(toKilobytes(trace.getAttribute("allocatedBytes")));
+                allocation.add(toMillis(trace.getAttribute("gcTime")));
+                data.testAllocations.put(testClassName + "." + testName, allocation);
+
+                NodeList classesLoaded = trace.getElementsByTagName("ClassesLoaded");
+                if (classesLoaded.getLength() > 0) {
+                    data.testClassLoads.put(testClassName + "." + testName,
+                            Long.parseLong(((Element) classesLoaded.item(0)).getAttribute("total")));
+                }
+
+                NodeList monitorContention = trace.getElementsByTagName("MonitorContention");
+                if (monitorContention.getLength() > 0) {
+                    Element contention = (Element) monitorContention.item(0);
+                    ArrayList<Double> contentionTimes = new ArrayList<>();
+                    contentionTimes.add(toMillis(contention.getAttribute("blockedTime")));
+                    contentionTimes.add(toMillis(contention.getAttribute("waitTime")));
+                    data.testMonitorContention.put(testClassName + "." + testName, contentionTimes);
+                }
+
+                NodeList exceptionsThrown = trace.getElementsByTagName("ExceptionsThrown");
+                if (exceptionsThrown.getLength() > 0) {
+                    data.testExceptions.put(testClassName + "." + testName,
+                            Long.parseLong(((Element) exceptionsThrown.item(0)).getAttribute("total")));
+                }
+
+                NodeList callTrees = trace.getElementsByTagName("CallTree");
+                if (callTrees.getLength() > 0) {
+                    readCallTree((Element) callTrees.item(0), test.callTree);
+                    readCallTree((Element) callTrees.item(0), data.callTree);
+                }
+                data.tests.add(test);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Draws the graphs of a package and its tests.
+     *
+     * @param data the graph data of the package.
+     */
+    private void drawPackage(final PackageData data) {
+        for (TestData test : data.tests) {
+            long stepsPerPoint = Math.max(1, (test.trace.size() + DEPTH_CHART_POINTS - 1) / DEPTH_CHART_POINTS);
+            this.drawer.drawDepthChart(data.name, test.className, test.testName,
+                    test.trace.maxDepths(stepsPerPoint), stepsPerPoint);
+            this.drawer.drawFlameGraph(data.name, test.className + "." + test.testName, test.callTree);
+        }
+        this.drawer.drawClusteredHistogramsForMethodCalls(data.testMethodCalls, data.name);
+        this.drawer.drawClusteredHistogramsForConstructorCalls(data.testClassInits, data.name);
+        this.drawer.drawClusteredHistogramsForTestTimes(data.testTimes, data.name);
+        this.drawer.drawClusteredHistogramsForAllocations(data.testAllocations, data.name);
+        this.drawer.drawFlameGraph(data.name, "Package-Flame-Graph", data.callTree);
+        this.drawer.drawHotSpotChart("Classes loaded per test for package",
+                data.name + "/Package-Class-Loading-Summary", data.testClassLoads);
+        this.drawer.drawClusteredHistogramsForMonitorContention(data.testMonitorContention, data.name);
+        this.drawer.drawHotSpotChart("Exceptions thrown per test for package",
+                data.name + "/Package-Exception-Summary", data.testExceptions);
+    }
+
+    /**
+     * Reads the trace elements, keeping the repeat elements folded.
+     * The elements are walked without recursion as repeats may nest.
+     *
+     * @param traceElement the trace element.
+     * @param trace        the trace to read into.
+     */
+    static void readTrace(final Element traceElement, final FoldedTrace trace) {
+        Node n = traceElement.getFirstChild();
+        while (n != null) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) n;
+                if ("Repeat".equals(element.getTagName())) {
+                    trace.openRepeat(Integer.parseInt(element.getAttribute("count")));
+                    if (element.getFirstChild() != null) {
+                        n = element.getFirstChild();
+                        continue;
+                    }
+                    trace.closeRepeat();
+                } else {
+                    trace.append(element.getAttribute("method") + ":(" + element.getAttribute("depth") + ")");
+                }
+            }
+            while (n.getNextSibling() == null && n.getParentNode() != traceElement) {
+                n = n.getParentNode();
+                trace.closeRepeat();
+            }
+            n = n.getNextSibling();
+        }
+    }
+
+    /**
+     * Reads a hot spot list of the suite summary.
+     *
+     * @param summary the suite summary element.
+     * @param list    the name of the hot spot list element.
+     * @return the counts by name, most frequent first.
+     */
+    static LinkedHashMap<String, Long> readHotSpots(final Element summary, final String list) {
+        LinkedHashMap<String, Long> hotSpots = new LinkedHashMap<>();
+        NodeList lists = summary.getElementsByTagName(list);
+        if (lists.getLength() == 0) {
+            return hotSpots;
+        }
+        for (Node n = lists.item(0).getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                Element hotSpot = (Element) n;
+                hotSpots.put(hotSpot.getAttribute("name"), Long.parseLong(hotSpot.getAttribute("count")));
+            }
+        }
+        return hotSpots;
+    }
+
+    /**
+     * Reads the number of classes loaded outside the tests from the suite summary.
+     *
+     * @param summary the suite summary element.
+     * @return the classes loaded by test class or scope.
+     */
+    static LinkedHashMap<String, Long> readClassLoadsOutsideTests(final Element summary) {
+        LinkedHashMap<String, Long> loads = new LinkedHashMap<>();
+        NodeList scopes = summary.getElementsByTagName("Scope");
+        for (int i = 0; i < scopes.getLength(); i++) {
+            Element scope = (Element) scopes.item(i);
+            loads.put(scope.getAttribute("name"), Long.parseLong(scope.getAttribute("total")));
+        }
+        return loads;
+    }
+
+    /**
+     * Reads the measurement of a test back from its report element,
+     * the metrics, method calls and times, class initialisations and trace.
+     *
+     * @param testElement the test element.
+     * @return the test measurement.
+     * @throws IOException if the element cannot be parsed.
+     */
+    static TestMeasurement readTestMeasurement(final String testElement) throws IOException {
+        Element test;
+        try {
+            DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            test = documentBuilder.parse(new InputSource(new StringReader(testElement))).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Cannot parse test element", e);
+        }
+        TestMeasurement tm = new TestMeasurement(test.getAttribute("name"), test.getAttribute("class"));
+        tm.setWallClockTime(Long.parseLong(test.getAttribute("wallClockTime")));
+        tm.setCpuTime(Long.parseLong(test.getAttribute("cpuTime")));
+        tm.setAllocatedBytes(Long.parseLong(test.getAttribute("allocatedBytes")));
+        tm.setGcCount(Long.parseLong(test.getAttribute("gcCount")));
+        tm.setGcTime(Long.parseLong(test.getAttribute("gcTime")));
+        NodeList depths = test.getElementsByTagName("MaxStackDepth");
+        if (depths.getLength() > 0) {
+            tm.setMaximumStackDepth(Long.parseLong(((Element) depths.item(0)).getAttribute("depth")));
+        }
+        NodeList methods = test.getElementsByTagName("Method");
+        for (int i = 0; i < methods.getLength(); i++) {
+            Element method = (Element) methods.item(i);
+            String name = method.getAttribute("name");
+            tm.getMethodCalls().put(name, Long.parseLong(method.getAttribute("calls")));
+            tm.getMethodInclusiveTimes().put(name, Long.parseLong(method.getAttribute("inclusiveTime")));
+            tm.getMethodSelfTimes().put(name, Long.parseLong(method.getAttribute("selfTime")));
+        }
+        NodeList classes = test.getElementsByTagName("Class");
+        for (int i = 0; i < classes.getLength(); i++) {
+            Element clazz = (Element) classes.item(i);
+            tm.getClassInitialisations().put(clazz.getAttribute("name"), Long.parseLong(clazz.getAttribute("count")));
+        }
+        NodeList traces = test.getElementsByTagName("Trace");
+        if (traces.getLength() > 0) {
+            readTrace((Element) traces.item(0), tm.getTrace());
+        }
+        return tm;
+    }
+
+    /**
+     * Reads the nested call elements of a call tree element into a
+     * calling context tree, merging them with the calls already there.
+     *
+     * @param callTree the call tree element.
+     * @param into     the calling context tree to add the calls to.
+     */
+    private static void readCallTree(final Element callTree, final CallingContextTree into) {
+        Deque<Element> open = new ArrayDeque<>();
+        Element call = firstCall(callTree.getFirstChild());
+        while (call != null) {
+            into.enter(call.getAttribute("method"), Long.parseLong(call.getAttribute("calls")));
+            Element child = firstCall(call.getFirstChild());
+            if (child != null) {
+                open.push(call);
+                call = child;
+                continue;
+            }
+            into.exit(Long.parseLong(call.getAttribute("time")));
+            call = firstCall(call.getNextSibling());
+            while (call == null && !open.isEmpty()) {
+                Element parent = open.pop();
+                into.exit(Long.parseLong(parent.getAttribute("time")));
+                call = firstCall(parent.getNextSibling());
+            }
+        }
+    }
+
+    /**
+     * Finds the first call element from a node onwards among its siblings.
+     *
+     * @param node the node to start from.
+     * @return the call element, or null if there is none.
+     */
+    private static Element firstCall(final Node node) {
+        Node n = node;
+        while (n != null && !(n.getNodeType() == Node.ELEMENT_NODE && "Call".equals(n.getNodeName()))) {
+            n = n.getNextSibling();
+        }
+        return (Element) n;
+    }
+
+    /**
+     * Converts a nanosecond time attribute to milliseconds.
+     * Missing or unmeasured times are zero.
+     *
+     * @param nanos the time attribute in nanoseconds.
+     * @return the time in milliseconds.
+     */
+    private static double toMillis(final String nanos) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        return Math.max(0, Long.parseLong(nanos)) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Converts a byte count attribute to kilobytes.
+     * Missing or unmeasured counts are zero.
+     *
+     * @param bytes the byte count attribute.
+     * @return the count in kilobytes.
+     */
+    private static double toKilobytes(final String bytes) {
+        if (bytes.isEmpty()) {
+            return 0;
+        }
+        return Math.max(0, Long.parseLong(bytes)) / BYTES_PER_KILOBYTE;
+    }
 }
@@ -0,0 +1,319 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The distribution of the metrics of a test run repeatedly, the warm-up
+ * runs excluded, and its wall clock and cpu time and classes loaded on the
+ * first run.
+ * <br>
+ * <p>
+ * The metrics are those of {@link TestMetrics} followed by the garbage
+ * collection count and time, named by {@link #METRIC_NAMES}. The inclusive
+ * and self time of each method are distributed separately, a method not
+ * called on a run counting as no time.
+ * </p>
+ */
+final class RunStatistics {
+
+    /**
+     * Names of the metrics, in the order of the percentile values.
+     */
+    static final String[] METRIC_NAMES;
+
+    static {
+        List<String> names = new ArrayList<>(Arrays.asList(TestMetrics.VALUE_NAMES));
+        names.add("gcCount");
+        names.add("gcTime");
+        METRIC_NAMES = names.toArray(new String[0]);
+    }
+
+    /**
+     * Index of the garbage collection count in the metric values.
+     */
+    private static final int GC_COUNT = TestMetrics.VALUE_NAMES.length;
+
+    /**
+     * Index of the garbage collection time in the metric values.
+     */
+    private static final int GC_TIME = GC_COUNT + 1;
+
+    /**
+     * Median percentile.
+     */
+    private static final double MEDIAN = 0.5;
+
+    /**
+     * Tail percentile.
+     */
+    private static final double TAIL = 0.95;
+
+    /**
+     * The metric values of the measured runs, named by {@link #METRIC_NAMES}.
+     */
+    private final List<long[]> samples = new ArrayList<>();
+
+    /**
+     * The inclusive time of each method on the measured runs.
+     */
+    private final List<Map<String, Long>> inclusiveTimes = new ArrayList<>();
+
+    /**
+     * The self time of each method on the measured runs.
+     */
+    private final List<Map<String, Long>> selfTimes = new ArrayList<>();
+
+    /**
+     * Number of warm-up runs excluded.
+     */
+    private final int warmup;
+
+    /**
+     * Number of runs added.
+     */
+    private int runs;
+
+    /**
+     * Wall clock time of the first run in nanoseconds, -1 until run.
+     */
+    private long firstRunWallClockTime = -1;
+
+    /**
+     * Cpu time of the first run in nanoseconds, -1 until run.
+     */
+    private long firstRunCpuTime = -1;
+
+    /**
+     * Classes loaded for the first time on the first run, in load order.
+     */
+    private List<String> firstRunLoadedClasses = new ArrayList<>();
+
+    /**
+     * Initialises a new RunStatistics.
+     *
+     * @param warmupRuns the number of warm-up runs excluded.
+     */
+    RunStatistics(final int warmupRuns) {
+        this.warmup = warmupRuns;
+    }
+
+    /**
+     * Adds the next run of the test, keeping its metrics if past the warm-up.
+     *
+     * @param tm the measurement of the run.
+     */
+    void add(final TestMeasurement tm) {
+        this.runs++;
+        if (this.runs == 1) {
+            this.firstRunWallClockTime = tm.getWallClockTime();
+            this.firstRunCpuTime = tm.getCpuTime();
+            this.firstRunLoadedClasses = new ArrayList<>(tm.getLoadedClasses());
+        }
+        if (this.runs > this.warmup) {
+            long[] values = Arrays.copyOf(TestMetrics.of(tm).values(), METRIC_NAMES.length);
+            values[GC_COUNT] = tm.getGcCount();
+            values[GC_TIME] = tm.getGcTime();
+            this.samples.add(values);
+            this.inclusiveTimes.add(new HashMap<>(tm.getMethodInclusiveTimes()));
+            this.selfTimes.add(new HashMap<>(tm.getMethodSelfTimes()));
+        }
+    }
+
+    /**
+     * Gets the number of runs added.
+     *
+     * @return the number of runs, the warm-up included.
+     */
+    int getRuns() {
+        return this.runs;
+    }
+
+    /**
+     * Gets the number of measured runs.
+     *
+     * @return the number of runs past the warm-up.
+     */
+    int getIterations() {
+        return this.samples.size();
+    }
+
+    /**
+     * Gets the number of warm-up runs excluded.
+     *
+     * @return the number of warm-up runs.
+     */
+    int getWarmup() {
+        return this.warmup;
+    }
+
+    /**
+     * Gets the wall clock time of the first run.
+     *
+     * @return the time in nanoseconds, -1 if not measured.
+     */
+    long getFirstRunWallClockTime() {
+        return this.firstRunWallClockTime;
+    }
+
+    /**
+     * Gets the cpu time of the first run.
+     *
+     * @return the time in nanoseconds, -1 if not measured.
+     */
+    long getFirstRunCpuTime() {
+        return this.firstRunCpuTime;
+    }
+
+    /**
+     * Gets the classes loaded for the first time on the first run, later
+     * runs finding them loaded.
+     *
+     * @return the class names, in load order.
+     */
+    List<String> getFirstRunLoadedClasses() {
+        return this.firstRunLoadedClasses;
+    }
+
+    /**
+     * Gets the least value of each metric.
+     *
+     * @return the values, named by {@link #METRIC_NAMES}.
+     */
+    long[] getMinimum() {
+        return percentile(this.samples, 0);
+    }
+
+    /**
+     * Gets the median of each metric.
+     *
+     * @return the values, named by {@link #METRIC_NAMES}.
+     */
+    long[] getMedian() {
+        return percentile(this.samples, MEDIAN);
+    }
+
+    /**
+     * Gets the 95th percentile of each metric.
+     *
+     * @return the values, named by {@link #METRIC_NAMES}.
+     */
+    long[] getTail() {
+        return percentile(this.samples, TAIL);
+    }
+
+    /**
+     * Gets the greatest value of each metric.
+     *
+     * @return the values, named by {@link #METRIC_NAMES}.
+     */
+    long[] getMaximum() {
+        return percentile(this.samples, 1);
+    }
+
+    /**
+     * Gets the median garbage collection count.
+     *
+     * @return the count, -1 if not measured.
+     */
+    long getMedianGcCount() {
+        return this.getMedian()[GC_COUNT];
+    }
+
+    /**
+     * Gets the median garbage collection time.
+     *
+     * @return the time in nanoseconds, -1 if not measured.
+     */
+    long getMedianGcTime() {
+        return this.getMedian()[GC_TIME];
+    }
+
+    /**
+     * Gets the methods timed on any measured run.
+     *
+     * @return the fully qualified method names, sorted.
+     */
+    Set<String> getTimedMethods() {
+        Set<String> methods = new TreeSet<>();
+        for (Map<String, Long> times : this.inclusiveTimes) {
+            methods.addAll(times.keySet());
+        }
+        return methods;
+    }
+
+    /**
+     * Gets the median and 95th percentile of the inclusive time of a method.
+     *
+     * @param method the fully qualified method name.
+     * @return the median and the 95th percentile in nanoseconds.
+     */
+    long[] getInclusiveTime(final String method) {
+        return methodPercentiles(this.inclusiveTimes, method);
+    }
+
+    /**
+     * Gets the median and 95th percentile of the self time of a method.
+     *
+     * @param method the fully qualified method name.
+     * @return the median and the 95th percentile in nanoseconds.
+     */
+    long[] getSelfTime(final String method) {
+        return methodPercentiles(this.selfTimes, method);
+    }
+
+    /**
+     * Summarises the measured runs by their medians.
+     *
+     * @param test  the fully qualified test name.
+     * @param calls calls per fully qualified method name.
+     * @return the median test metrics.
+     */
+    TestMetrics toMedianMetrics(final String test, final Map<String, Long> calls) {
+        return new TestMetrics(test, Arrays.copyOf(this.getMedian(), TestMetrics.VALUE_NAMES.length), calls);
+    }
+
+    /**
+     * Gets the median and 95th percentile of a method time over the runs.
+     *
+     * @param runs   the method times of each run.
+     * @param method the fully qualified method name.
+     * @return the median and the 95th percentile in nanoseconds.
+     */
+    private static long[] methodPercentiles(final List<Map<String, Long>> runs, final String method) {
+        List<long[]> times = new ArrayList<>();
+        for (Map<String, Long> run : runs) {
+            times.add(new long[] {run.getOrDefault(method, 0L)});
+        }
+        return new long[] {percentile(times, MEDIAN)[0], percentile(times, TAIL)[0]};
+    }
+
+    /**
+     * Gets a nearest rank percentile of each value over the runs.
+     *
+     * @param runs     the values of each run.
+     * @param fraction the percentile, from 0 to 1.
+     * @return the values.
+     */
+    private static long[] percentile(final List<long[]> runs, final double fraction) {
+        if (runs.isEmpty()) {
+            return new long[METRIC_NAMES.length];
+        }
+        long[] result = new long[runs.get(0).length];
+        long[] values = new long[runs.size()];
+        int rank = Math.max(0, (int) Math.ceil(fraction * values.length) - 1);
+        for (int metric = 0; metric < result.length; metric++) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = runs.get(i)[metric];
+            }
+            Arrays.sort(values);
+            result[metric] = values[rank];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+package analyser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long lived test runner.
+ * <br>
+ * <p>
+ * Keeps JUnit, the dependency classpath and the JIT warmed runner
+ * loaded between analyser invocations. Each job names the test
+ * directory and the project output directories, which are loaded
+ * through a fresh child class loader so that recompiled classes are
+ * picked up while everything else stays loaded.
+ * </p>
+ */
+public final class RunnerDaemon {
+
+    /**
+     * Job command to run the tests.
+     */
+    static final String RUN_COMMAND = "run";
+
+    /**
+     * Job command to stop the daemon.
+     */
+    static final String STOP_COMMAND = "stop";
+
+    /**
+     * Number of pending job connections to queue.
+     */
+    private static final int BACKLOG = 1;
+
+    /**
+     * Hash of the classpath the daemon was started with, read by the
+     * analyser to restart a daemon started for another classpath.
+     */
+    private static String classpathHash = "";
+
+    /**
+     * Private constructor.
+     */
+    private RunnerDaemon() {
+        // ignored
+    }
+
+    /**
+     * The main method of the daemon.
+     *
+     * @param args command line args, the port to accept jobs on
+     *             and the hash of the daemon classpath.
+     * @throws IOException if the job socket cannot be opened.
+     */
+    public static void main(final String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        if (args.length > 1) {
+            classpathHash = args[1];
+        }
+        boolean run = true;
+        try (ServerSocket server = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress())) {
+            while (run) {
+                try (Socket socket = server.accept();
+                     BufferedReader reader = new BufferedReader(
+                             new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                    String command = reader.readLine();
+                    if (RUN_COMMAND.equals(command)) {
+                        runJob(reader);
+                    } else if (STOP_COMMAND.equals(command)) {
+                        run = false;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a single job.
+     * The first line is the test directory, each following
+     * line is a project output directory to load the tests from.
+     *
+     * @param reader the job reader.
+     * @throws IOException if the job cannot be read.
+     */
+    private static void runJob(final BufferedReader reader) throws IOException {
+        File testRootDirectory = new File(reader.readLine());
+        List<URL> urls = new ArrayList<>();
+        String line = reader.readLine();
+        while (line != null && !line.isEmpty()) {
+            urls.add(new File(line).toURI().toURL());
+            line = reader.readLine();
+        }
+        try (URLClassLoader loader = new URLClassLoader(urls.toArray(URL[]::new),
+                RunnerDaemon.class.getClassLoader())) {
+            TestRunner.runTests(testRootDirectory, loader);
+        } finally {
+            jobFinished();
+        }
+    }
+
+    /**
+     * Marks the end of a job.
+     * The analyser breaks here to detach from the daemon.
+     */
+    static void jobFinished() {
+        // breakpoint target.
+    }
+}
@@ -0,0 +1,236 @@
+package analyser;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Splits the tests of a report into shards of balanced cost for parallel
+ * workers, writing an include list per shard but the last, and for the last
+ * shard an exclude list of the tests of the others.
+ * <br>
+ * <p>
+ * The tests are assigned longest first to the least loaded shard. The cost
+ * of a test is its wall clock time when the report has it for every test,
+ * falling back to its total method calls and then to its trace length.
+ * Each list has a line per test class, in the surefire
+ * {@code Class#method1+method2} form, for the {@code surefire.includesFile}
+ * and {@code surefire.excludesFile} properties. The last shard runs every
+ * test not assigned to another shard, so tests added since the report, or
+ * missing from it after failing, still run.
+ * </p>
+ */
+@Mojo(name = "balance-shards")
+public class ShardBalancer extends AbstractMojo {
+
+    /**
+     * The costs a test can be measured by, in fallback order.
+     */
+    private static final String[] COSTS = {"wallClockTime", "totalMethodCalls", "traceLength"};
+
+    /**
+     * The report to read the test costs from.
+     */
+    @Parameter(property = "analyser.reportFile", defaultValue = ReportParser.REPORT_PATH)
+    private File reportFile;
+
+    /**
+     * The number of shards.
+     */
+    @Parameter(property = "analyser.shards", defaultValue = "2")
+    private int shards;
+
+    /**
+     * The cost to balance, one of wallClockTime, totalMethodCalls or traceLength.
+     */
+    @Parameter(property = "analyser.shardCost", defaultValue = "wallClockTime")
+    private String shardCost;
+
+    /**
+     * The directory to write the include and exclude lists to.
+     */
+    @Parameter(property = "analyser.shardDirectory", defaultValue = "${project.build.directory}/analyser-shards")
+    private File shardDirectory;
+
+    /**
+     * Balances the tests of the report over the shards.
+     *
+     * @throws MojoExecutionException if the parameters are invalid, the report
+     *                                cannot be read or the lists cannot be written.
+     */
+    public final void execute() throws MojoExecutionException {
+        int costIndex = Arrays.asList(COSTS).indexOf(this.shardCost);
+        if (costIndex < 0) {
+            throw new MojoExecutionException("Unknown shard cost " + this.shardCost + ", expected one of "
+                    + String.join(", ", COSTS));
+        }
+        if (this.shards < 1) {
+            throw new MojoExecutionException("analyser.shards must be at least 1, was " + this.shards);
+        }
+        Map<String, long[]> tests = readCosts(this.reportFile);
+        while (costIndex < COSTS.length - 1 && !allMeasured(tests, costIndex)) {
+            getLog().warn("Not every test in " + this.reportFile + " has a " + COSTS[costIndex]
+                    + ", balancing " + COSTS[costIndex + 1] + " instead");
+            costIndex++;
+        }
+        List<Map.Entry<String, long[]>> ordered = new ArrayList<>(tests.entrySet());
+        final int cost = costIndex;
+        ordered.sort((a, b) -> Long.compare(b.getValue()[cost], a.getValue()[cost]));
+        long[] loads = new long[this.shards];
+        List<List<String>> assigned = new ArrayList<>();
+        PriorityQueue<Integer> leastLoaded = new PriorityQueue<>((a, b) -> loads[a] != loads[b]
+                ? Long.compare(loads[a], loads[b]) : Integer.compare(a, b));
+        for (int shard = 0; shard < this.shards; shard++) {
+            assigned.add(new ArrayList<>());
+            leastLoaded.add(shard);
+        }
+        for (Map.Entry<String, long[]> test : ordered) {
+            int shard = leastLoaded.poll();
+            assigned.get(shard).add(test.getKey());
+            loads[shard] += test.getValue()[cost];
+            leastLoaded.add(shard);
+        }
+        this.shardDirectory.mkdirs();
+        File[] previous = this.shardDirectory.listFiles((dir, name) -> name.matches("shard-\\d+(-excludes)?\\.txt"));
+        for (File stale : previous == null ? new File[0] : previous) {
+            stale.delete();
+        }
+        List<String> assignedElsewhere = new ArrayList<>();
+        for (int shard = 0; shard < this.shards - 1; shard++) {
+            File includes = new File(this.shardDirectory, "shard-" + (shard + 1) + ".txt");
+            writeTests(includes, assigned.get(shard));
+            assignedElsewhere.addAll(assigned.get(shard));
+            getLog().info("Shard " + (shard + 1) + ": " + assigned.get(shard).size() + " tests, "
+                    + COSTS[cost] + " " + loads[shard] + ", include list written to " + includes);
+        }
+        File excludes = new File(this.shardDirectory, "shard-" + this.shards + "-excludes.txt");
+        writeTests(excludes, assignedElsewhere);
+        getLog().info("Shard " + this.shards + ": " + assigned.get(this.shards - 1).size() + " tests and every test"
+                + " not in the report, " + COSTS[cost] + " " + loads[this.shards - 1] + ", exclude list written to "
+                + excludes);
+        getLog().info("Balanced " + tests.size() + " tests over " + this.shards + " shards by " + COSTS[cost]
+                + ", slowest to fastest shard " + spread(loads) + ", alphabetical split "
+                + spread(alphabeticalLoads(tests, cost, this.shards)));
+    }
+
+    /**
+     * Loads of splitting the tests alphabetically into shards of equal test counts, for comparison.
+     *
+     * @param tests  the costs by fully qualified test name, sorted.
+     * @param cost   the index of the cost balanced.
+     * @param shards the number of shards.
+     * @return the load of each shard.
+     */
+    private static long[] alphabeticalLoads(final Map<String, long[]> tests, final int cost, final int shards) {
+        long[] loads = new long[shards];
+        int index = 0;
+        for (long[] costs : tests.values()) {
+            loads[(int) ((long) index * shards / tests.size())] += costs[cost];
+            index++;
+        }
+        return loads;
+    }
+
+    private static String spread(final long[] loads) {
+        long min = Arrays.stream(loads).min().orElse(0);
+        long max = Arrays.stream(loads).max().orElse(0);
+        return min == 0 ? max + " to 0" : String.format(Locale.ROOT, "%.2fx", (double) max / min);
+    }
+
+    private static boolean allMeasured(final Map<String, long[]> tests, final int cost) {
+        for (long[] costs : tests.values()) {
+            if (costs[cost] <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes an include or exclude list, a line per test class.
+     *
+     * @param file  the list file.
+     * @param tests the fully qualified names of the tests listed.
+     * @throws MojoExecutionException if the file cannot be written.
+     */
+    private static void writeTests(final File file, final List<String> tests) throws MojoExecutionException {
+        Map<String, Set<String>> classes = new TreeMap<>();
+        for (String test : tests) {
+            int methodStart = test.lastIndexOf('.');
+            classes.computeIfAbsent(test.substring(0, methodStart), c -> new TreeSet<>())
+                    .add(test.substring(methodStart + 1));
+        }
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Set<String>> testClass : classes.entrySet()) {
+                writer.write(testClass.getKey() + "#" + String.join("+", testClass.getValue())
+                        + System.lineSeparator());
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write " + file, e);
+        }
+    }
+
+    /**
+     * Reads the costs of the tests of a report.
+     *
+     * @param report the report.
+     * @return the costs, in {@link #COSTS} order, by fully qualified test name.
+     * @throws MojoExecutionException if the report cannot be read.
+     */
+    private static Map<String, long[]> readCosts(final File report) throws MojoExecutionException {
+        Map<String, long[]> tests = new TreeMap<>();
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+            NodeList nodes = doc.getElementsByTagName("Test");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                if (node.getNodeType() != Node.ELEMENT_NODE) {
+                    continue;
+                }
+                Element test = (Element) node;
+                long[] costs = new long[COSTS.length];
+                String wallClockTime = test.getAttribute("wallClockTime");
+                costs[0] = wallClockTime.isEmpty() ? 0 : Long.parseLong(wallClockTime);
+                NodeList methodsCalled = test.getElementsByTagName("MethodsCalled");
+                if (methodsCalled.getLength() > 0) {
+                    NodeList methods = ((Element) methodsCalled.item(0)).getElementsByTagName("Method");
+                    for (int j = 0; j < methods.getLength(); j++) {
+                        costs[1] += Long.parseLong(((Element) methods.item(j)).getAttribute("calls"));
+                    }
+                }
+                NodeList traces = test.getElementsByTagName("Trace");
+                if (traces.getLength() > 0) {
+                    String length = ((Element) traces.item(0)).getAttribute("length");
+                    costs[2] = length.isEmpty() ? 0 : Long.parseLong(length);
+                }
+                tests.put(test.getAttribute("class") + "." + test.getAttribute("name"), costs);
+            }
+        } catch (ParserConfigurationException | SAXException | IOException | NumberFormatException e) {
+            throw new MojoExecutionException("Cannot read report " + report, e);
+        }
+        return tests;
+    }
+}
@@ -0,0 +1,141 @@
+package analyser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application class data sharing archive for the test runner VM.
+ * <br>
+ * <p>
+ * The archive is keyed by a hash of the test runner classpath and the
+ * VM version. It is created once from a training run of the test runner
+ * and mapped by later runs instead of parsing and verifying the classes
+ * again. Only jars can be archived, directories on the classpath are
+ * loaded by the test runner itself.
+ * </p>
+ */
+final class SharedArchive {
+
+    /**
+     * The first java feature release supporting dynamic archives.
+     */
+    private static final int DYNAMIC_ARCHIVE_FEATURE = 13;
+
+    /**
+     * Number of hex characters of the hash to use as the archive name.
+     */
+    private static final int KEY_LENGTH = 16;
+
+    /**
+     * Archive file extension.
+     */
+    private static final String EXTENSION = ".jsa";
+
+    /**
+     * Output of the training run.
+     */
+    private static final String TRAINING_LOG = "training.log";
+
+    /**
+     * The archive to map.
+     */
+    private final File archive;
+
+    /**
+     * Initialises a new instance of the SharedArchive class.
+     *
+     * @param directory the directory to keep archives in.
+     * @param classpath the classpath the archive is for.
+     */
+    SharedArchive(final File directory, final String classpath) {
+        this.archive = new File(directory, key(classpath + System.getProperty("java.vm.version")) + EXTENSION);
+    }
+
+    /**
+     * Whether the running java version can create archives.
+     *
+     * @return true if dynamic archives are supported.
+     */
+    static boolean isSupported() {
+        return Runtime.version().feature() >= DYNAMIC_ARCHIVE_FEATURE;
+    }
+
+    /**
+     * Whether the archive has been created.
+     *
+     * @return true if the archive exists.
+     */
+    boolean exists() {
+        return this.archive.isFile();
+    }
+
+    /**
+     * Gets the VM option to map the archive.
+     *
+     * @return the VM option.
+     */
+    String vmOption() {
+        return "\"-XX:SharedArchiveFile=" + this.archive.getAbsolutePath() + "\"";
+    }
+
+    /**
+     * Creates the archive from a training run of the test runner.
+     * The archive cannot be dumped by a VM with the debug agent loaded,
+     * so the training run is launched without it. Concurrent runs each
+     * dump to their own file, the first to finish wins.
+     *
+     * @param javaCommand the java executable.
+     * @param runCommand  the classpath and main class arguments of the test runner.
+     * @throws IOException          if the archive cannot be written.
+     * @throws InterruptedException if interrupted waiting for the training run.
+     */
+    void train(final String javaCommand, final List<String> runCommand)
+            throws IOException, InterruptedException {
+        File directory = this.archive.getParentFile();
+        directory.mkdirs();
+        File dumpFile = File.createTempFile(this.archive.getName(), ".tmp", directory);
+        List<String> command = new ArrayList<>();
+        command.add(javaCommand);
+        command.add("-XX:ArchiveClassesAtExit=" + dumpFile.getAbsolutePath());
+        command.addAll(runCommand);
+        new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(new File(directory, TRAINING_LOG)))
+                .start()
+                .waitFor();
+        if (dumpFile.length() > 0 && !this.archive.exists()) {
+            Files.move(dumpFile.toPath(), this.archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(dumpFile.toPath());
+        }
+    }
+
+    /**
+     * Gets the archive file.
+     *
+     * @return the archive file.
+     */
+    File getArchive() {
+        return this.archive;
+    }
+
+    private static String key(final String in) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(in.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.substring(0, KEY_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-saving summary of the most frequent names in a stream.
+ * <br>
+ * <p>
+ * A fixed number of names are monitored in a min heap of counts. A name
+ * not monitored replaces the least counted one and inherits its count as
+ * the possible overcount, so every name occurring more often than the
+ * stream length over the capacity is guaranteed to be monitored. The
+ * counts are tightened with a {@link CountMinSketch} of the same stream.
+ * </p>
+ */
+final class SpaceSaving {
+
+    /**
+     * A monitored name and its counts.
+     */
+    static final class Entry {
+
+        /**
+         * The name.
+         */
+        private final String name;
+
+        /**
+         * The estimated count, never less than the true count.
+         */
+        private final long count;
+
+        /**
+         * The most the estimated count may exceed the true count by.
+         */
+        private final long error;
+
+        /**
+         * Initialises a new Entry.
+         *
+         * @param entryName  the name.
+         * @param entryCount the estimated count.
+         * @param entryError the most the count may be over.
+         */
+        Entry(final String entryName, final long entryCount, final long entryError) {
+            this.name = entryName;
+            this.count = entryCount;
+            this.error = entryError;
+        }
+
+        /**
+         * Gets the name.
+         *
+         * @return the name.
+         */
+        String getName() {
+            return this.name;
+        }
+
+        /**
+         * Gets the estimated count.
+         *
+         * @return the estimated count.
+         */
+        long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Gets the most the estimated count may exceed the true count by.
+         *
+         * @return the error.
+         */
+        long getError() {
+            return this.error;
+        }
+    }
+
+    /**
+     * Depth of the count-min sketch.
+     */
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * Width of the count-min sketch.
+     */
+    private static final int SKETCH_WIDTH = 1 << 16;
+
+    /**
+     * The monitored names, a min heap on their counts.
+     */
+    private final String[] names;
+
+    /**
+     * The counts of the monitored names.
+     */
+    private final long[] counts;
+
+    /**
+     * The overcount errors of the monitored names.
+     */
+    private final long[] errors;
+
+    /**
+     * Heap position of each monitored name.
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * Sketch of the whole stream.
+     */
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+
+    /**
+     * Number of monitored names.
+     */
+    private int size;
+
+    /**
+     * Initialises a new SpaceSaving summary.
+     *
+     * @param capacity the number of names to monitor.
+     */
+    SpaceSaving(final int capacity) {
+        this.names = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+    }
+
+    /**
+     * Counts an occurrence of a name.
+     *
+     * @param name the name.
+     */
+    void offer(final String name) {
+        this.offer(name, 1);
+    }
+
+    /**
+     * Counts occurrences of a name.
+     *
+     * @param name        the name.
+     * @param occurrences the number of occurrences.
+     */
+    void offer(final String name, final long occurrences) {
+        this.sketch.add(name, occurrences);
+        Integer position = this.positions.get(name);
+        if (position != null) {
+            this.counts[position] += occurrences;
+            this.siftDown(position);
+        } else if (this.size < this.names.length) {
+            this.names[this.size] = name;
+            this.counts[this.size] = occurrences;
+            this.errors[this.size] = 0;
+            this.positions.put(name, this.size);
+            this.siftUp(this.size++);
+        } else {
+            this.positions.remove(this.names[0]);
+            this.errors[0] = this.counts[0];
+            this.counts[0] += occurrences;
+            this.names[0] = name;
+            this.positions.put(name, 0);
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Gets the most frequent names.
+     *
+     * @param k the number of names.
+     * @return up to k names, most frequent first.
+     */
+    List<Entry> top(final int k) {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < this.size; i++) {
+            long count = Math.min(this.counts[i], this.sketch.estimate(this.names[i]));
+            long lowerBound = this.counts[i] - this.errors[i];
+            entries.add(new Entry(this.names[i], count, Math.max(0, count - lowerBound)));
+        }
+        entries.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    private void siftUp(final int from) {
+        int i = from;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (this.counts[parent] <= this.counts[i]) {
+                return;
+            }
+            this.swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(final int from) {
+        int i = from;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < this.size && this.counts[left] < this.counts[smallest]) {
+                smallest = left;
+            }
+            if (right < this.size && this.counts[right] < this.counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            this.swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        String name = this.names[i];
+        this.names[i] = this.names[j];
+        this.names[j] = name;
+        long count = this.counts[i];
+        this.counts[i] = this.counts[j];
+        this.counts[j] = count;
+        long error = this.errors[i];
+        this.errors[i] = this.errors[j];
+        this.errors[j] = error;
+        this.positions.put(this.names[i], i);
+        this.positions.put(this.names[j], j);
+    }
+}
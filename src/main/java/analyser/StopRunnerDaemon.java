@@ -0,0 +1,52 @@
+package analyser;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+
+/**
+ * Stops the long lived runner daemon started by the analyser.
+ */
+@Mojo(name = "stop-daemon")
+public class StopRunnerDaemon extends AbstractMojo {
+
+    /**
+     * The project whose runner daemon to stop.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject mavenProject;
+
+    /**
+     * The port the runner daemon debug agent listens on,
+     * 0 for a port derived from the project base directory.
+     */
+    @Parameter(property = "analyser.daemonDebugPort", defaultValue = "0")
+    private int daemonDebugPort;
+
+    /**
+     * The port the runner daemon accepts jobs on,
+     * 0 for the port after the debug port.
+     */
+    @Parameter(property = "analyser.daemonJobPort", defaultValue = "0")
+    private int daemonJobPort;
+
+    /**
+     * Sends the stop command to the runner daemon.
+     *
+     * @throws MojoExecutionException if the daemon cannot be reached.
+     */
+    public final void execute() throws MojoExecutionException {
+        int debugPort = this.daemonDebugPort > 0 ? this.daemonDebugPort : Connection.daemonPort(this.mavenProject);
+        int jobPort = this.daemonJobPort > 0 ? this.daemonJobPort : debugPort + 1;
+        try {
+            Connection.stopDaemon(jobPort);
+            getLog().info("Stopped the runner daemon");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot reach the runner daemon on port " + jobPort, e);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package analyser;
+
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.connect.IllegalConnectorArgumentsException;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prepares the surefire fork to be traced by the analyser.
+ * <br>
+ * <p>
+ * Listens for a debug connection and adds a debug agent connecting
+ * back to the analyser to the surefire argLine, then collects the
+ * measurements in the background while surefire runs the tests.
+ * The analyse-test goal with attach enabled waits for the collection
+ * and produces the graphs, so the tests only run once.
+ * Surefire must run the tests in a single fork.
+ * </p>
+ */
+@Mojo(name = "prepare-attach", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES,
+        requiresDependencyResolution = ResolutionScope.TEST)
+public class SurefireAttacher extends AbstractMojo {
+
+    /**
+     * The surefire property for the fork VM arguments.
+     */
+    private static final String ARG_LINE = "argLine";
+
+    /**
+     * The project under test.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject mavenProject;
+
+    /**
+     * Test source directory.
+     */
+    @Parameter(defaultValue = "${project.build.testSourceDirectory}")
+    private File testSourceDirectory;
+
+    /**
+     * The port to listen for the surefire fork on, 0 for any free port.
+     */
+    @Parameter(property = "analyser.attachPort", defaultValue = "0")
+    private int attachPort;
+
+    /**
+     * How long to wait for the surefire fork to connect in milliseconds.
+     */
+    @Parameter(property = "analyser.attachTimeout", defaultValue = "300000")
+    private long attachTimeout;
+
+    /**
+     * Stream a Chrome trace event timeline of the tests.
+     */
+    @Parameter(property = "analyser.timeline", defaultValue = "false")
+    private boolean timeline;
+
+    /**
+     * The directory to write the timeline to.
+     */
+    @Parameter(property = "analyser.timelineDirectory", defaultValue = "${project.build.directory}/testAnalysisTimeline")
+    private File timelineDirectory;
+
+    /**
+     * The size in bytes after which the timeline is continued in a new file.
+     */
+    @Parameter(property = "analyser.timelineChunkSize", defaultValue = "268435456")
+    private long timelineChunkSize;
+
+    /**
+     * Number of most called methods and most constructed classes to report for the suite.
+     */
+    @Parameter(property = "analyser.hotSpots", defaultValue = "20")
+    private int hotSpots;
+
+    /**
+     * The fewest back to back repetitions of a call pattern to report.
+     */
+    @Parameter(property = "analyser.repetitionThreshold", defaultValue = "10")
+    private int repetitionThreshold;
+
+    /**
+     * The least Jaccard similarity of the footprints of the tests to group as redundant.
+     */
+    @Parameter(property = "analyser.similarityThreshold", defaultValue = "0.9")
+    private double similarityThreshold;
+
+    /**
+     * Report the project and dependency classes each test loads for the first time.
+     */
+    @Parameter(property = "analyser.classLoading", defaultValue = "false")
+    private boolean classLoading;
+
+    /**
+     * Report the monitors each test contends and waits on in the project classes.
+     */
+    @Parameter(property = "analyser.monitorContention", defaultValue = "false")
+    private boolean monitorContention;
+
+    /**
+     * Count the exceptions each test throws in the project classes, caught or not,
+     * and end failing tests by the exception thrown.
+     */
+    @Parameter(property = "analyser.exceptions", defaultValue = "false")
+    private boolean exceptions;
+
+    /**
+     * The most exceptions a test may throw before it is flagged in the report.
+     */
+    @Parameter(property = "analyser.exceptionThreshold", defaultValue = "100")
+    private int exceptionThreshold;
+
+    /**
+     * Starts listening for the surefire fork.
+     *
+     * @throws MojoExecutionException if the analyser cannot listen for the fork.
+     */
+    @SuppressWarnings("unchecked")
+    public final void execute() throws MojoExecutionException {
+        List<String> projectTestClasspath;
+        try {
+            projectTestClasspath = this.mavenProject.getTestClasspathElements();
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException("Cannot resolve test classpath", e.getCause());
+        }
+        Connection connection = new Connection(projectTestClasspath, this.testSourceDirectory, this.mavenProject);
+        connection.setClassLoading(this.classLoading);
+        connection.setMonitorContention(this.monitorContention);
+        connection.setExceptionTracking(this.exceptions);
+        String address;
+        try {
+            address = connection.startListening(this.attachPort, this.attachTimeout);
+        } catch (IOException | IllegalConnectorArgumentsException e) {
+            throw new MojoExecutionException("Cannot listen for the surefire fork", e);
+        }
+        Properties properties = this.mavenProject.getProperties();
+        String agent = "-agentlib:jdwp=transport=dt_socket,server=n,suspend=y,address=" + address;
+        properties.setProperty(ARG_LINE, (properties.getProperty(ARG_LINE, "") + " " + agent).trim());
+        getLog().info("Listening for the surefire fork on " + address);
+
+        XMLReportWriter report = new XMLReportWriter(this.mavenProject);
+        report.openReport();
+        TraceCollector collector = new TraceCollector(getLog(), report);
+        collector.setKnownTestClasses(this.discoverTests(projectTestClasspath));
+        TraceEventSink traceEventSink = this.createTraceEventSink();
+        collector.setTraceEventSink(traceEventSink);
+        collector.setHotSpotCount(this.hotSpots);
+        collector.setRepetitionThreshold(this.repetitionThreshold);
+        collector.setSimilarityThreshold(this.similarityThreshold);
+        collector.setExceptionThreshold(this.exceptionThreshold);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analyser-attach");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<TraceCollector> collection = executor.submit(() -> {
+            collect(getLog(), connection, collector, report, traceEventSink);
+            return collector;
+        });
+        executor.shutdown();
+        getPluginContext().put(TestAnalyser.ATTACHED_COLLECTION, collection);
+    }
+
+    /**
+     * Collects the measurements from the surefire fork once it connects.
+     *
+     * @param log            the plugin log.
+     * @param connection     the listening connection.
+     * @param collector      the collector to handle the fork events.
+     * @param report         the report to close once the fork exits.
+     * @param traceEventSink the timeline sink to close once the fork exits.
+     * @throws Exception if the collection fails.
+     */
+    private static void collect(final Log log,
+                                final Connection connection,
+                                final TraceCollector collector,
+                                final XMLReportWriter report,
+                                final TraceEventSink traceEventSink) throws Exception {
+        try {
+            connection.acceptAttachedVm();
+            log.info("Surefire fork attached, collecting data");
+            collector.collect(connection);
+        } catch (VMDisconnectedException e) {
+            log.debug(e);
+        } finally {
+            report.closeReport();
+            traceEventSink.close();
+        }
+    }
+
+    /**
+     * Creates the sink for the timeline of the tests.
+     *
+     * @return the timeline writer, or a sink discarding the events if no timeline is wanted.
+     */
+    private TraceEventSink createTraceEventSink() {
+        if (!this.timeline) {
+            return TraceEventSink.NONE;
+        }
+        getLog().info("Writing timeline to " + this.timelineDirectory);
+        return new ChromeTraceWriter(this.timelineDirectory, this.timelineChunkSize);
+    }
+
+    /**
+     * Discovers the tests to recognise in the fork.
+     *
+     * @param projectTestClasspath the test classpath of the project.
+     * @return the test classes, by class name.
+     * @throws MojoExecutionException if the classpath is invalid.
+     */
+    private Map<String, TestClassDataObj> discoverTests(final List<String> projectTestClasspath)
+            throws MojoExecutionException {
+        URL[] urls = new URL[projectTestClasspath.size()];
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = new File(projectTestClasspath.get(i)).toURI().toURL();
+            }
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Invalid test classpath", e);
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(urls, contextClassLoader)) {
+            // Test engines are looked up through the context class loader.
+            thread.setContextClassLoader(loader);
+            return TestRunner.discoverTests(this.testSourceDirectory, loader);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot discover tests", e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+}
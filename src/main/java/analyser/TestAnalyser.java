@@ -1,21 +1,11 @@
 package analyser;
 
 
-import com.sun.jdi.AbsentInformationException;
-import com.sun.jdi.IncompatibleThreadStateException;
-import com.sun.jdi.ThreadReference;
 import com.sun.jdi.VMDisconnectedException;
-import com.sun.jdi.event.BreakpointEvent;
-import com.sun.jdi.event.ClassPrepareEvent;
-import com.sun.jdi.event.Event;
-import com.sun.jdi.event.EventSet;
-import com.sun.jdi.event.MethodEntryEvent;
-import com.sun.jdi.event.MethodExitEvent;
-import com.sun.jdi.event.VMDeathEvent;
-import com.sun.jdi.event.VMDisconnectEvent;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -24,12 +14,14 @@ import org.apache.maven.project.MavenProject;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayDeque;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Deque;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 
 @Mojo(name = "analyse-test", defaultPhase = LifecyclePhase.TEST, requiresDependencyResolution = ResolutionScope.TEST)
@@ -37,46 +29,40 @@ public class TestAnalyser extends AbstractMojo {
 
     // Mojo Fields.
 
-    /**
-     * The buffer size for reading the output streams from
-     * the test runner.
-     */
-    private static final int BUFFER_SIZE = 4096;
-
     /**
      * The empty string.
      */
     private static final String EMPTY_STRING = "";
 
     /**
-     * Constructor method name.
+     * The Junit class prefix.
      */
-    private static final String CONSTRUCTOR = "<init>";
+    public static final String JUNIT_CLASS_PREFIX = "org.junit";
 
     /**
-     * The Junit class prefix.
+     * The previous report while its tests are copied when resuming.
      */
-    public static final String JUNIT_CLASS_PREFIX = "org.junit";
+    private static final String PREVIOUS_REPORT_FILE = ReportParser.REPORT_FILE + ".previous";
 
     /**
-     * {@link TestClassDataObj} containing the class name and test names..
+     * Baseline mode comparing against the median of the latest runs of each test.
      */
-    private TestClassDataObj testClassDataObj = new TestClassDataObj();
+    static final String BASELINE_MEDIAN = "median";
 
     /**
-     * Test we are currently executing.
+     * Baseline mode comparing against a pinned run.
      */
-    private String runningTestName = EMPTY_STRING;
+    static final String BASELINE_PINNED = "pinned";
 
     /**
-     * {@link TestMeasurement} for the in method.
+     * Baseline mode comparing against the latest run of each test.
      */
-    private TestMeasurement testMeasurement;
+    static final String BASELINE_LATEST = "latest";
 
     /**
-     * {@link ArrayList } of test measurements.
+     * Plugin context key of the collection started by {@link SurefireAttacher}.
      */
-    private List<TestMeasurement> testMeasurements = new ArrayList<>();
+    static final String ATTACHED_COLLECTION = "analyser.attachedCollection";
 
     // Parameters from plugin pom.
 
@@ -93,19 +79,232 @@ public class TestAnalyser extends AbstractMojo {
     private File testSourceDirectory;
 
     /**
-     * Breakpoint at which to enable method entry requests.
+     * Collect the measurements from the surefire fork prepared by the
+     * prepare-attach goal instead of running the tests again.
      */
-    public static final int ENABLE_METHOD_ENTRY_LINE = 71;
+    @Parameter(property = "analyser.attach", defaultValue = "false")
+    private boolean attach;
 
     /**
-     * Breakpoint at which to disable method entry requests.
+     * Run the tests in the long lived runner daemon instead of
+     * launching a new test runner VM.
+     */
+    @Parameter(property = "analyser.daemon", defaultValue = "false")
+    private boolean useDaemon;
+
+    /**
+     * Resume the analysis stopped by the test VM dying, running only the
+     * test classes not yet recorded in the progress journal and keeping
+     * their tests from the previous report.
+     */
+    @Parameter(property = "analyser.resume", defaultValue = "false")
+    private boolean resume;
+
+    /**
+     * Number of times to run each test in the launched test runner, reporting
+     * the distribution of its metrics over the runs when more than one.
+     */
+    @Parameter(property = "analyser.iterations", defaultValue = "1")
+    private int iterations;
+
+    /**
+     * Number of first runs of each test excluded from its statistics.
+     */
+    @Parameter(property = "analyser.warmup", defaultValue = "0")
+    private int warmup;
+
+    /**
+     * The port the runner daemon debug agent listens on,
+     * 0 for a port derived from the project base directory.
+     */
+    @Parameter(property = "analyser.daemonDebugPort", defaultValue = "0")
+    private int daemonDebugPort;
+
+    /**
+     * The port the runner daemon accepts jobs on,
+     * 0 for the port after the debug port.
+     */
+    @Parameter(property = "analyser.daemonJobPort", defaultValue = "0")
+    private int daemonJobPort;
+
+    /**
+     * Map a class data sharing archive into the test runner VM,
+     * creating it on the first run.
+     */
+    @Parameter(property = "analyser.classDataSharing", defaultValue = "false")
+    private boolean classDataSharing;
+
+    /**
+     * The directory to keep class data sharing archives in.
+     */
+    @Parameter(property = "analyser.classDataSharingDirectory",
+            defaultValue = "${project.build.directory}/analyser-cds")
+    private File classDataSharingDirectory;
+
+    /**
+     * Stream a Chrome trace event timeline of the tests.
+     */
+    @Parameter(property = "analyser.timeline", defaultValue = "false")
+    private boolean timeline;
+
+    /**
+     * The directory to write the timeline to.
+     */
+    @Parameter(property = "analyser.timelineDirectory", defaultValue = "${project.build.directory}/testAnalysisTimeline")
+    private File timelineDirectory;
+
+    /**
+     * The size in bytes after which the timeline is continued in a new file.
+     */
+    @Parameter(property = "analyser.timelineChunkSize", defaultValue = "268435456")
+    private long timelineChunkSize;
+
+    /**
+     * Number of most called methods and most constructed classes to report for the suite.
+     */
+    @Parameter(property = "analyser.hotSpots", defaultValue = "20")
+    private int hotSpots;
+
+    /**
+     * The fewest back to back repetitions of a call pattern to report.
+     */
+    @Parameter(property = "analyser.repetitionThreshold", defaultValue = "10")
+    private int repetitionThreshold;
+
+    /**
+     * The least Jaccard similarity of the footprints of the tests to group as redundant.
+     */
+    @Parameter(property = "analyser.similarityThreshold", defaultValue = "0.9")
+    private double similarityThreshold;
+
+    /**
+     * Report the project and dependency classes each test loads for the first time.
+     */
+    @Parameter(property = "analyser.classLoading", defaultValue = "false")
+    private boolean classLoading;
+
+    /**
+     * Report the monitors each test contends and waits on in the project classes.
+     */
+    @Parameter(property = "analyser.monitorContention", defaultValue = "false")
+    private boolean monitorContention;
+
+    /**
+     * Count the exceptions each test throws in the project classes, caught or not,
+     * and end failing tests by the exception thrown.
+     */
+    @Parameter(property = "analyser.exceptions", defaultValue = "false")
+    private boolean exceptions;
+
+    /**
+     * The most exceptions a test may throw before it is flagged in the report.
+     */
+    @Parameter(property = "analyser.exceptionThreshold", defaultValue = "100")
+    private int exceptionThreshold;
+
+    /**
+     * Record the metrics of each run in the history store, which grows with
+     * every run and so is only kept when asked for.
+     */
+    @Parameter(property = "analyser.history", defaultValue = "false")
+    private boolean history;
+
+    /**
+     * The history store directory.
+     */
+    @Parameter(property = "analyser.historyDirectory", defaultValue = "${project.basedir}/.analyser/history")
+    private File historyDirectory;
+
+    /**
+     * Record the metrics of each run in the baseline and check them against it.
+     */
+    @Parameter(property = "analyser.baseline", defaultValue = "true")
+    private boolean baseline;
+
+    /**
+     * The append only baseline file.
+     */
+    @Parameter(property = "analyser.baselineFile", defaultValue = "${project.basedir}/.analyser/baseline")
+    private File baselineFile;
+
+    /**
+     * What the run is checked against: the "median" of the last
+     * baselineWindow runs of each test, the run "pinned" by baselineRun,
+     * or the "latest" run of each test.
+     */
+    @Parameter(property = "analyser.baselineMode", defaultValue = BASELINE_MEDIAN)
+    private String baselineMode;
+
+    /**
+     * Number of latest runs of each test the median baseline is taken over.
+     */
+    @Parameter(property = "analyser.baselineWindow", defaultValue = "5")
+    private int baselineWindow;
+
+    /**
+     * The run of the pinned baseline, as logged when the run was recorded.
+     */
+    @Parameter(property = "analyser.baselineRun", defaultValue = "0")
+    private long baselineRun;
+
+    /**
+     * Fail the build if a test regressed against the baseline,
+     * otherwise regressions are only logged.
+     */
+    @Parameter(property = "analyser.failOnRegression", defaultValue = "false")
+    private boolean failOnRegression;
+
+    /**
+     * Allowed relative growth of method calls, negative to disable the check.
+     */
+    @Parameter(property = "analyser.callThreshold", defaultValue = "0.1")
+    private double callThreshold;
+
+    /**
+     * Allowed relative growth of the maximum stack depth, negative to disable the check.
+     */
+    @Parameter(property = "analyser.depthThreshold", defaultValue = "0.1")
+    private double depthThreshold;
+
+    /**
+     * Allowed relative growth of class initialisations, negative to disable the check.
+     */
+    @Parameter(property = "analyser.classInitialisationThreshold", defaultValue = "0.1")
+    private double classInitialisationThreshold;
+
+    /**
+     * Allowed relative growth of wall clock and cpu time, negative to disable the check.
      */
-    public static final int DISABLE_METHOD_ENTRY_LINE = 72;
+    @Parameter(property = "analyser.timeThreshold", defaultValue = "-1")
+    private double timeThreshold;
 
     /**
-     * Stack for counting how deep the test method goes into the code.
+     * Allowed relative growth of allocated bytes, negative to disable the check.
      */
-    private Deque<String> testStack = new ArrayDeque<>();
+    @Parameter(property = "analyser.allocationThreshold", defaultValue = "-1")
+    private double allocationThreshold;
+
+    /**
+     * Record the classes each test used to select the tests affected by a change.
+     */
+    @Parameter(property = "analyser.impact", defaultValue = "true")
+    private boolean impact;
+
+    /**
+     * The impact index file.
+     */
+    @Parameter(property = "analyser.impactFile", defaultValue = "${project.basedir}/.analyser/impact")
+    private File impactFile;
+
+    /**
+     * Breakpoint at which to enable method entry requests.
+     */
+    public static final int ENABLE_METHOD_ENTRY_LINE = 107;
+
+    /**
+     * Breakpoint at which to disable method entry requests.
+     */
+    public static final int DISABLE_METHOD_ENTRY_LINE = 108;
 
     /**
      * Report writer.
@@ -116,10 +315,44 @@ public class TestAnalyser extends AbstractMojo {
      * "Main" plugin method.
      *
      * @throws MojoExecutionException on execution exceptions.
+     * @throws MojoFailureException   if a test exceeded its budget or regressed against the baseline.
      */
-    public final void execute() throws MojoExecutionException {
+    public final void execute() throws MojoExecutionException, MojoFailureException {
+        this.checkBaselineMode();
+        if (this.attach) {
+            TraceCollector attached = this.awaitAttachedCollection();
+            new ReportParser(this.mavenProject).parseReportAndProduceGraphs();
+            if (attached.getUnfinishedClass() != null) {
+                getLog().warn("The surefire VM stopped while analysing " + attached.getUnfinishedClass()
+                        + ", not recording the partial run in the history, impact index or baseline");
+                this.checkBudgets(attached.getBudgetViolations());
+                return;
+            }
+            this.recordHistory(attached.getMetrics());
+            this.recordImpact(attached.getUsedClasses());
+            this.checkBudgets(attached.getBudgetViolations());
+            this.checkBaseline(attached.getMetrics());
+            return;
+        }
+        if (this.iterations < 1 || this.warmup < 0 || this.warmup >= this.iterations) {
+            throw new MojoExecutionException("analyser.warmup must be at least 0 and less than "
+                    + "analyser.iterations, was " + this.warmup + " of " + this.iterations);
+        }
+        ProgressJournal journal = new ProgressJournal(
+                new File(this.mavenProject.getBuild().getDirectory(), ProgressJournal.JOURNAL_FILE));
+        File previousReport = new File(this.mavenProject.getBuild().getDirectory(), PREVIOUS_REPORT_FILE);
+        boolean resuming = this.startJournal(journal, previousReport);
         this.report = new XMLReportWriter(this.mavenProject);
         this.report.openReport();
+        List<TestMeasurement> previousTests = new ArrayList<>();
+        if (resuming) {
+            try {
+                previousTests = this.report.copyTestElements(previousReport, journal.getCompleted());
+                Files.deleteIfExists(previousReport.toPath());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Cannot copy the tests of the previous report " + previousReport, e);
+            }
+        }
         List<String> projectTestClasspath;
         try {
             projectTestClasspath = this.mavenProject.getTestClasspathElements();
@@ -128,36 +361,49 @@ public class TestAnalyser extends AbstractMojo {
         }
         ReportParser reportParser = new ReportParser(this.mavenProject);
         Connection connection = new Connection(projectTestClasspath, this.testSourceDirectory, this.mavenProject);
+        connection.setClassLoading(this.classLoading);
+        connection.setMonitorContention(this.monitorContention);
+        connection.setExceptionTracking(this.exceptions);
+        TraceCollector collector = new TraceCollector(getLog(), this.report);
+        TraceEventSink traceEventSink = this.createTraceEventSink();
+        collector.setTraceEventSink(traceEventSink);
+        collector.setHotSpotCount(this.hotSpots);
+        collector.setRepetitionThreshold(this.repetitionThreshold);
+        collector.setSimilarityThreshold(this.similarityThreshold);
+        collector.setExceptionThreshold(this.exceptionThreshold);
+        collector.setProgressJournal(journal);
+        collector.addPreviousTests(previousTests);
+        if (this.iterations > 1 && this.useDaemon) {
+            getLog().warn("Cannot run tests repeatedly in the runner daemon, running each test once");
+        } else if (this.iterations > 1) {
+            getLog().info("Running each test " + this.iterations + " times, " + this.warmup + " warm-up");
+            connection.setIterations(this.iterations);
+            collector.setIterations(this.iterations, this.warmup);
+        }
+        if (!journal.getCompleted().isEmpty()) {
+            connection.setExcludedClasses(journal.getFile());
+        }
         try {
             getLog().info("Running tests and collecting data");
-            connection.launchTestRunner();
-            EventSet eventSet;
-            boolean run = true;
-            while (run) {
-                eventSet = connection.getVm().eventQueue().remove();
-                for (Event event : eventSet) {
-                    getLog().debug(event.toString());
-                    if (event instanceof ClassPrepareEvent) {
-                        handleClassPrepareEvent(connection, event);
-                    }
-                    if (event instanceof BreakpointEvent) {
-                        handleBreakpointEvent(connection, event);
-                    }
-                    if (event instanceof MethodEntryEvent) {
-                        handleMethodEntryEvent(connection, event);
-                    }
-                    if (event instanceof MethodExitEvent) {
-                        handleMethodExitEvent(connection, event);
-                    }
-                    if (event instanceof VMDeathEvent || event instanceof VMDisconnectEvent) {
-                        getLog().info("Disconnecting from the VM");
-                        logRunnerOutput(connection);
-                        run = false;
-                        break;
-                    }
-                    connection.getVm().resume();
+            if (this.useDaemon) {
+                if (this.classDataSharing) {
+                    getLog().warn("Class data sharing is not applied to the runner daemon, which keeps its"
+                            + " classes loaded between runs instead");
+                }
+                int debugPort = this.daemonDebugPort > 0 ? this.daemonDebugPort
+                        : Connection.daemonPort(this.mavenProject);
+                int jobPort = this.daemonJobPort > 0 ? this.daemonJobPort : debugPort + 1;
+                if (connection.attachToDaemon(debugPort, jobPort)) {
+                    getLog().info("Restarted the runner daemon on port " + debugPort
+                            + " as it was started with another classpath");
+                }
+            } else {
+                if (this.classDataSharing) {
+                    this.useSharedArchive(connection);
                 }
+                connection.launchTestRunner();
             }
+            collector.collect(connection);
         } catch (VMDisconnectedException e) {
             getLog().debug(e);
         } catch (Exception e) {
@@ -165,296 +411,263 @@ public class TestAnalyser extends AbstractMojo {
             throw new MojoExecutionException("Exception occurred in plugin", e.getCause());
         } finally {
             this.report.closeReport();
+            traceEventSink.close();
             getLog().info(EMPTY_STRING);
             getLog().debug("Measurements collected:");
-            try {
-                logRunnerOutput(connection);
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (!this.useDaemon) {
+                try {
+                    collector.logRunnerOutput(connection);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
             reportParser.parseReportAndProduceGraphs();
         }
+        String unfinishedClass = collector.getUnfinishedClass();
+        if (unfinishedClass != null) {
+            getLog().warn("The test VM stopped while analysing " + unfinishedClass + ", not recording the"
+                    + " partial run in the history, impact index or baseline; run again with"
+                    + " -Danalyser.resume=true to analyse the test classes left and record the whole run");
+        } else {
+            this.recordHistory(collector.getMetrics());
+            this.recordImpact(collector.getUsedClasses());
+        }
+        this.checkBudgets(collector.getBudgetViolations());
+        if (unfinishedClass == null) {
+            this.checkBaseline(collector.getMetrics());
+        }
     }
 
     /**
-     * Log output from test runner.
+     * Starts the progress journal of the run. When resuming, the journal of
+     * the previous run is kept and the previous report is moved aside for
+     * the tests of the classes it recorded to be copied from, otherwise a
+     * new journal is started.
      *
-     * @param connection The test runner connection.
-     * @throws IOException If the streams cannot be read.
+     * @param journal        the progress journal.
+     * @param previousReport the file to move the previous report to.
+     * @return true if resuming from the previous report.
+     * @throws MojoExecutionException if the journal or the previous report cannot be read or written.
      */
-    private void logRunnerOutput(final Connection connection) throws IOException {
-        String testRunnerOutput = readOutAndErrStreams(connection);
-        if (!testRunnerOutput.isEmpty()) {
-            getLog().info(testRunnerOutput);
+    private boolean startJournal(final ProgressJournal journal, final File previousReport)
+            throws MojoExecutionException {
+        try {
+            if (this.resume && this.useDaemon) {
+                getLog().warn("Cannot resume with the runner daemon, analysing all test classes");
+            } else if (this.resume) {
+                journal.load();
+                if (!journal.getCompleted().isEmpty()) {
+                    getLog().info("Resuming, skipping the " + journal.getCompleted().size()
+                            + " test classes recorded in " + journal.getFile());
+                    File report = new File(this.mavenProject.getBuild().getDirectory(), ReportParser.REPORT_FILE);
+                    if (report.isFile()) {
+                        Files.move(report.toPath(), previousReport.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    } else {
+                        Files.deleteIfExists(previousReport.toPath());
+                    }
+                    return true;
+                }
+            }
+            journal.reset();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot read progress journal " + journal.getFile(), e);
         }
+        return false;
     }
 
     /**
-     * Handles the Class Prepare Events.
+     * Records the classes used by the tests of the run in the impact index.
      *
-     * @param connection the connection.
-     * @param event      the event to handle.
-     * @throws AbsentInformationException if debug info is not available.
-     */
-    private void handleClassPrepareEvent(final Connection connection, final Event event)
-            throws AbsentInformationException {
-        ClassPrepareEvent classPrepareEvent = (ClassPrepareEvent) event;
-        getLog().debug("Handling class prepare event: " + event.toString());
-        connection.setBreakPoints(classPrepareEvent);
+     * @param usedClasses the used classes by fully qualified test name.
+     */
+    private void recordImpact(final Map<String, Set<String>> usedClasses) {
+        if (!this.impact || usedClasses.isEmpty()) {
+            return;
+        }
+        try {
+            ImpactIndex index = new ImpactIndex(this.impactFile).load();
+            for (Map.Entry<String, Set<String>> test : usedClasses.entrySet()) {
+                index.record(test.getKey(), test.getValue());
+            }
+            index.save(ImpactIndex.hashInputs(this.mavenProject.getTestClasspathElements()));
+            getLog().info("Recorded " + usedClasses.size() + " tests in impact index " + this.impactFile);
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            getLog().warn("Cannot record run in impact index " + this.impactFile, e);
+        }
     }
 
     /**
-     * Handles Breakpoint Events.
+     * Fails the build if a test exceeded the budget set by its annotations.
      *
-     * @param connection the connection.
-     * @param event      the event to handle.
-     * @throws IncompatibleThreadStateException if the thread is not suspended.
-     * @throws AbsentInformationException       if debug info is not available.
-     * @throws IOException                      if reading the output streams cause an exception..
-     */
-    private void handleBreakpointEvent(final Connection connection, final Event event)
-            throws IncompatibleThreadStateException, AbsentInformationException, IOException {
-        int lineNumber = ((BreakpointEvent) event).location().lineNumber();
-        if (lineNumber == ENABLE_METHOD_ENTRY_LINE) {
-            this.testClassDataObj = connection.readTestNamesFromRunner((BreakpointEvent) event);
-            getLog().info("---------------------------------");
-            getLog().info("Analysing tests in: " + this.testClassDataObj.getTestClassName());
-            getLog().info("---------------------------------");
-            connection.enableMethodEntryRequest();
-            connection.enableMethodExitRequest();
+     * @param violations the budgets exceeded.
+     * @throws MojoFailureException if a budget was exceeded.
+     */
+    private void checkBudgets(final List<String> violations) throws MojoFailureException {
+        if (violations.isEmpty()) {
+            return;
         }
-        if (lineNumber == DISABLE_METHOD_ENTRY_LINE) {
-            connection.disableMethodEntryRequest();
-            connection.disableMethodExitRequest();
-            logRunnerOutput(connection);
+        for (String violation : violations) {
+            getLog().error("Budget exceeded: " + violation);
         }
+        throw new MojoFailureException(violations.size() + " test budget(s) exceeded:" + System.lineSeparator()
+                + String.join(System.lineSeparator(), violations));
     }
 
     /**
-     * Handles Method Entry Events.
+     * Records the metrics of the run in the history store.
      *
-     * @param connection the connection.
-     * @param event      the event to handle.
-     */
-    private void handleMethodEntryEvent(final Connection connection, final Event event) {
-        MethodEntryEvent methodEntryEvent = (MethodEntryEvent) event;
-        getLog().debug("Handling Method Entry Event: " + methodEntryEvent.toString());
-        String methodName = methodEntryEvent.method().name();
-        String className = methodEntryEvent.method().declaringType().name();
-        if (this.testClassDataObj.getTestMethods().contains(methodName)) {
-            this.handleTestEntry(connection, methodEntryEvent, methodName);
+     * @param metrics the metrics of the tests of the run.
+     */
+    private void recordHistory(final List<TestMetrics> metrics) {
+        if (!this.history || metrics.isEmpty()) {
+            return;
         }
-        if (this.inTest()) {
-            this.handleMethodEntryWhileInTestExecution(
-                    methodName,
-                    className
-            );
+        try {
+            MetricsHistory store = new MetricsHistory(this.historyDirectory).open();
+            store.append(metrics);
+            getLog().info("Recorded build " + store.getBuildCount() + " in history " + this.historyDirectory);
+        } catch (IOException | RuntimeException e) {
+            getLog().warn("Cannot record run in history " + this.historyDirectory, e);
         }
     }
 
     /**
-     * Handles Method Exit Events.
+     * Checks the baseline mode before the tests are run.
      *
-     * @param connection the connection.
-     * @param event      the event to handle.
-     */
-    private void handleMethodExitEvent(final Connection connection, final Event event) {
-        MethodExitEvent methodExitEvent = (MethodExitEvent) event;
-        String className = methodExitEvent.method().declaringType().name();
-        String methodname = methodExitEvent.method().name();
-        getLog().debug("Handling Method Exit Event: " + methodExitEvent.toString());
-        if (methodname.equals(this.runningTestName)) {
-            this.exitTest(className + "." + methodname);
+     * @throws MojoExecutionException if the mode or its window is not valid.
+     */
+    private void checkBaselineMode() throws MojoExecutionException {
+        if (!this.baseline) {
+            return;
         }
-        if (this.inTest()) {
-            handleMethodExitEventInTest(className + "." + methodname, className);
+        if (!BASELINE_MEDIAN.equals(this.baselineMode) && !BASELINE_PINNED.equals(this.baselineMode)
+                && !BASELINE_LATEST.equals(this.baselineMode)) {
+            throw new MojoExecutionException("analyser.baselineMode must be " + BASELINE_MEDIAN + ", "
+                    + BASELINE_PINNED + " or " + BASELINE_LATEST + ", was " + this.baselineMode);
         }
-    }
-
-    private void handleMethodExitEventInTest(final String fqMethodname, final String className) {
-        if (!className.startsWith(JUNIT_CLASS_PREFIX)) {
-            this.testStack.removeFirst();
-            this.testMeasurement.getTrace().add("Exit: " + fqMethodname + ":(" + (testStack.size()) + ")");
-            this.testMeasurement.getDepthTrace().add(testStack.size());
+        if (BASELINE_MEDIAN.equals(this.baselineMode) && this.baselineWindow < 1) {
+            throw new MojoExecutionException("analyser.baselineWindow must be at least 1, was "
+                    + this.baselineWindow);
         }
     }
 
-
     /**
-     * Suspends the running thread if it is still running.
+     * Checks the metrics of the run against the baseline, the median of
+     * the latest runs, a pinned run or the latest run of each test, and
+     * records the run in it. A run failing the check is not recorded.
      *
-     * @param thread the thread to suspend.
+     * @param metrics the metrics of the tests of the run.
+     * @throws MojoExecutionException if the baseline cannot be read.
+     * @throws MojoFailureException   if a test regressed and regressions fail the build.
      */
-    private void suspendIfRequired(final ThreadReference thread) {
-        if (!thread.isSuspended()) {
-            thread.suspend();
+    private void checkBaseline(final List<TestMetrics> metrics)
+            throws MojoExecutionException, MojoFailureException {
+        if (!this.baseline || metrics.isEmpty()) {
+            return;
         }
-    }
-
-    /**
-     * Handle test entry events.
-     *
-     * @param connection the connection.
-     * @param event      the event.
-     * @param methodName the method entered.
-     */
-    private void handleTestEntry(final Connection connection,
-                                 final MethodEntryEvent event,
-                                 final String methodName) {
-        this.runningTestName = methodName;
-        String className = this.testClassDataObj.getTestClassName();
-        getLog().info("Analysing Test: "
-                + className
-                + "."
-                + this.runningTestName);
-        this.testMeasurement = new TestMeasurement(
-                this.runningTestName, className
-        );
-        connection.enableMethodExitRequest();
-    }
-
-    /**
-     * Handles a method entry event.
-     * Counts methods entered and classes constructed.
-     * <br>
-     * <p>
-     * If the test throws an exception (even an expected exception)
-     * it does not exit normally (in junit4) and
-     * trigger a MethodExitEvent so we need to check for the
-     * fireTest and fail methods of junit instead.
-     * </p>
-     *
-     * @param methodName The name of the method entered.
-     * @param className  The name of the class the method belongs to.
-     */
-    private void handleMethodEntryWhileInTestExecution(
-            final String methodName,
-            final String className) {
-        String fullyQualifiedMethodName = className + "." + methodName;
-        if (!className.startsWith(JUNIT_CLASS_PREFIX)) {
-            this.testMeasurement.getTrace().add("Entry: " + fullyQualifiedMethodName + ":(" + (testStack.size()) + ")");
-            this.testMeasurement.getDepthTrace().add(testStack.size());
-            this.testStack.addFirst(className);
+        Baseline store = new Baseline(this.baselineFile);
+        Map<String, TestMetrics> previous;
+        String against;
+        try {
+            if (BASELINE_PINNED.equals(this.baselineMode)) {
+                previous = store.loadRun(this.baselineRun);
+                if (previous.isEmpty()) {
+                    throw new MojoExecutionException("No run " + this.baselineRun + " recorded in baseline "
+                            + this.baselineFile + ", set analyser.baselineRun to a recorded run");
+                }
+                against = "run " + this.baselineRun;
+            } else if (BASELINE_LATEST.equals(this.baselineMode)) {
+                previous = store.load(1);
+                against = "the latest run";
+            } else {
+                previous = store.load(this.baselineWindow);
+                against = "the median of the last " + this.baselineWindow + " runs";
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MojoExecutionException("Cannot read baseline " + this.baselineFile, e);
         }
-
-        getLog().debug("Method execution in test:  " + fullyQualifiedMethodName);
-        int depth = testStack.size() - 1;
-        if (depth > this.testMeasurement.getMaximumStackDepth()) {
-            this.testMeasurement.setMaximumStackDepth(depth);
+        RegressionGate gate = new RegressionGate(this.callThreshold, this.depthThreshold,
+                this.classInitialisationThreshold, this.timeThreshold, this.allocationThreshold);
+        List<String> regressions = gate.check(previous, metrics);
+        for (String regression : regressions) {
+            getLog().warn("Regression against " + against + " of the baseline: " + regression);
         }
-        if (isTextExitMethod(methodName, className)) {
-            this.exitTest(fullyQualifiedMethodName);
-        } else if (isRecordableMethodCall(methodName, className)) {
-            this.incrementOrAddKey(fullyQualifiedMethodName, this.testMeasurement.getMethodCalls());
+        if (!regressions.isEmpty() && this.failOnRegression) {
+            throw new MojoFailureException(regressions.size() + " test(s) regressed against " + against
+                    + " of baseline " + this.baselineFile + ":" + System.lineSeparator()
+                    + String.join(System.lineSeparator(), regressions));
         }
-        if (isConstructor(methodName) && !className.startsWith(JUNIT_CLASS_PREFIX)) {
-            this.incrementOrAddKey(className, this.testMeasurement.getClassInitialisations());
+        try {
+            long run = store.append(metrics);
+            getLog().info("Recorded " + metrics.size() + " tests in baseline " + this.baselineFile + " as run " + run);
+        } catch (IOException e) {
+            getLog().warn("Cannot record run in baseline " + this.baselineFile, e);
         }
     }
 
     /**
-     * Whether the method is a constructor.
-     *
-     * @param methodName the method to determine.
-     * @return whether the method is a constructor.
-     */
-    private boolean isConstructor(final String methodName) {
-        return methodName.equals(CONSTRUCTOR);
-    }
-
-    /**
-     * Should we record the method call.
-     *
-     * @param methodName the method.
-     * @param className  the class of the method.
-     * @return whether we should record the method call.
-     */
-    private boolean isRecordableMethodCall(final String methodName, final String className) {
-        return !(className.startsWith(JUNIT_CLASS_PREFIX)
-                || methodName.equals(this.runningTestName)
-                || isConstructor(methodName)
-                || methodName.equals("<clinit>"));
-    }
-
-    /**
-     * Determine if a method indicates a test is finished.
+     * Creates the sink for the timeline of the tests.
      *
-     * @param methodName the method tot check.
-     * @param className  the class the method belongs to.
-     * @return whether the method is an exit method.
+     * @return the timeline writer, or a sink discarding the events if no timeline is wanted.
      */
-    private boolean isTextExitMethod(final String methodName, final String className) {
-        return (methodName.startsWith("fireTest") || methodName.startsWith("fail"))
-                && className.startsWith(JUNIT_CLASS_PREFIX);
+    private TraceEventSink createTraceEventSink() {
+        if (!this.timeline) {
+            return TraceEventSink.NONE;
+        }
+        getLog().info("Writing timeline to " + this.timelineDirectory);
+        return new ChromeTraceWriter(this.timelineDirectory, this.timelineChunkSize);
     }
 
     /**
-     * Increment or add key, value to HashMap.
+     * Waits for the collection from the surefire fork to finish.
      *
-     * @param keyToIncrement The item in the map to be incremented or added.
-     * @param hashMap        The map the item is in.
+     * @return the collector of the tests run by the fork.
+     * @throws MojoExecutionException if the collection was not started or failed.
      */
-    private void incrementOrAddKey(final String keyToIncrement, final HashMap<String, Long> hashMap) {
-        long val = hashMap.getOrDefault(keyToIncrement, (long) 0);
-        hashMap.put(keyToIncrement, ++val);
+    @SuppressWarnings("unchecked")
+    private TraceCollector awaitAttachedCollection() throws MojoExecutionException {
+        Future<TraceCollector> collection = (Future<TraceCollector>) getPluginContext().get(ATTACHED_COLLECTION);
+        if (collection == null) {
+            throw new MojoExecutionException("No surefire fork to collect from, run the prepare-attach goal first");
+        }
+        getLog().info("Waiting for the surefire fork measurements");
+        try {
+            return collection.get();
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException("Exception occurred collecting from the surefire fork", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted waiting for the surefire fork", e);
+        } finally {
+            getPluginContext().remove(ATTACHED_COLLECTION);
+        }
     }
 
     /**
-     * Check if a test is running.
+     * Sets up the class data sharing archive for the test runner if
+     * the running java version supports it.
      *
-     * @return true if a test is running otherwise false.
+     * @param connection The test runner connection.
      */
-    private boolean inTest() {
-        return !this.runningTestName.isEmpty();
-    }
-
-    /**
-     * Handle exiting a test.
-     *
-     * @param fqMethodname fully qualified method name.
-     */
-    private void exitTest(final String fqMethodname) {
-        this.testMeasurement.getTrace().add("Exit: " + fqMethodname + ":(" + (testStack.size() - 1) + ")");
-        this.testMeasurement.getDepthTrace().add(testStack.size() - 1);
-        this.report.addTestMeasurement(this.testMeasurement);
-        getLog().info("Test finished: " + this.testClassDataObj.getTestClassName() + "." + this.runningTestName);
-        this.runningTestName = EMPTY_STRING;
-        this.testStack.clear();
-    }
-
-    /**
-     * Method to read the output and error streams from the launched VM and
-     * return it as a string.
-     *
-     * @param connection The connection to read from.
-     * @return the output string from the test runner.
-     * @throws IOException If the test runner output streams cannot be read.
-     */
-    private String readOutAndErrStreams(final Connection connection) throws IOException {
-        Process process = connection.getVm().process();
-        InputStreamReader readerOut = new InputStreamReader(process.getInputStream());
-        InputStreamReader readerErr = new InputStreamReader(process.getErrorStream());
-        StringBuilder testRunnerOutput = new StringBuilder();
-        String lineSeparator = System.lineSeparator();
-        if (readerOut.ready()) {
-            testRunnerOutput.append(streamToString(readerOut)).append(lineSeparator);
+    private void useSharedArchive(final Connection connection) {
+        if (!SharedArchive.isSupported()) {
+            getLog().warn("Class data sharing archives need java "
+                    + "13 or later, launching the test runner without one");
+            return;
+        }
+        SharedArchive archive = connection.useSharedArchive(this.classDataSharingDirectory);
+        if (!archive.exists()) {
+            getLog().info("Creating class data sharing archive " + archive.getArchive());
+            try {
+                connection.createSharedArchive();
+            } catch (IOException e) {
+                getLog().warn("Cannot create class data sharing archive", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
-        if (readerErr.ready()) {
-            testRunnerOutput.append(streamToString(readerErr)).append(lineSeparator);
+        if (archive.exists()) {
+            getLog().info("Using class data sharing archive " + archive.getArchive());
         }
-        return testRunnerOutput.toString();
-    }
-
-    /**
-     * Reads a char stream to a string.
-     *
-     * @param reader The stream to read from.
-     * @return The converted string.
-     * @throws IOException If an IO exception occurs.
-     */
-    private String streamToString(final InputStreamReader reader) throws IOException {
-        char[] buffer = new char[BUFFER_SIZE];
-        int charsInBuffer = reader.read(buffer);
-        return new String(buffer, 0, charsInBuffer);
     }
 }
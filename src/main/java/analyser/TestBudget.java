@@ -0,0 +1,165 @@
+package analyser;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The performance budget of a test, read from its {@link MaxMethodCalls},
+ * {@link MaxStackDepth} and {@link MaxClassInits} annotations.
+ */
+final class TestBudget {
+
+    /**
+     * No budget set.
+     */
+    static final long NONE = -1;
+
+    /**
+     * Number of values of a budget.
+     */
+    static final int VALUES = 3;
+
+    /**
+     * Number of the largest contributors listed for a violation.
+     */
+    private static final int CONTRIBUTORS = 3;
+
+    /**
+     * The most method calls, {@link #NONE} if not set.
+     */
+    private final long maxMethodCalls;
+
+    /**
+     * The deepest stack, {@link #NONE} if not set.
+     */
+    private final long maxStackDepth;
+
+    /**
+     * The most class initialisations, {@link #NONE} if not set.
+     */
+    private final long maxClassInits;
+
+    /**
+     * Initialises a new TestBudget.
+     *
+     * @param methodCalls the most method calls, {@link #NONE} if not set.
+     * @param stackDepth  the deepest stack, {@link #NONE} if not set.
+     * @param classInits  the most class initialisations, {@link #NONE} if not set.
+     */
+    TestBudget(final long methodCalls, final long stackDepth, final long classInits) {
+        this.maxMethodCalls = methodCalls;
+        this.maxStackDepth = stackDepth;
+        this.maxClassInits = classInits;
+    }
+
+    /**
+     * Reads the budgets of the tests of a class from their annotations.
+     *
+     * @param testClass   the test class.
+     * @param testMethods the test names.
+     * @return the method call, stack depth and class initialisation budgets
+     * of each test in turn, {@link #NONE} where not set.
+     */
+    static long[] read(final Class<?> testClass, final String[] testMethods) {
+        long[] budgets = new long[testMethods.length * VALUES];
+        for (int i = 0; i < testMethods.length; i++) {
+            Method method = findMethod(testClass, testMethods[i]);
+            MaxMethodCalls calls = method == null ? null : method.getAnnotation(MaxMethodCalls.class);
+            MaxStackDepth depth = method == null ? null : method.getAnnotation(MaxStackDepth.class);
+            MaxClassInits inits = method == null ? null : method.getAnnotation(MaxClassInits.class);
+            budgets[i * VALUES] = calls == null ? NONE : calls.value();
+            budgets[i * VALUES + 1] = depth == null ? NONE : depth.value();
+            budgets[i * VALUES + 2] = inits == null ? NONE : inits.value();
+        }
+        return budgets;
+    }
+
+    /**
+     * Maps the budgets read by {@link #read(Class, String[])} to the tests.
+     *
+     * @param testMethods the test names.
+     * @param budgets     the budgets of each test in turn.
+     * @return the budgets by test name, only the tests with a budget set.
+     */
+    static Map<String, TestBudget> of(final List<String> testMethods, final long[] budgets) {
+        Map<String, TestBudget> tests = new HashMap<>();
+        for (int i = 0; i < testMethods.size() && (i + 1) * VALUES <= budgets.length; i++) {
+            TestBudget budget = new TestBudget(budgets[i * VALUES], budgets[i * VALUES + 1],
+                    budgets[i * VALUES + 2]);
+            if (budget.isSet()) {
+                tests.put(testMethods.get(i), budget);
+            }
+        }
+        return tests;
+    }
+
+    /**
+     * Checks the measurements of a finished test against the budget.
+     *
+     * @param test the fully qualified test name.
+     * @param tm   the test measurements.
+     * @return a description of each budget exceeded.
+     */
+    List<String> check(final String test, final TestMeasurement tm) {
+        List<String> violations = new ArrayList<>();
+        if (this.maxMethodCalls != NONE && tm.totalMethodCalls() > this.maxMethodCalls) {
+            violations.add(test + " made " + tm.totalMethodCalls() + " method calls, over its @MaxMethodCalls("
+                    + this.maxMethodCalls + ") budget, most called: " + largest(tm.getMethodCalls()));
+        }
+        if (this.maxStackDepth != NONE && tm.getMaximumStackDepth() > this.maxStackDepth) {
+            violations.add(test + " reached a stack depth of " + tm.getMaximumStackDepth()
+                    + ", over its @MaxStackDepth(" + this.maxStackDepth + ") budget");
+        }
+        if (this.maxClassInits != NONE && tm.totalClassesInitialised() > this.maxClassInits) {
+            violations.add(test + " made " + tm.totalClassesInitialised()
+                    + " class initialisations, over its @MaxClassInits(" + this.maxClassInits
+                    + ") budget, most initialised: " + largest(tm.getClassInitialisations()));
+        }
+        return violations;
+    }
+
+    /**
+     * Whether any budget is set.
+     *
+     * @return whether any budget is set.
+     */
+    private boolean isSet() {
+        return this.maxMethodCalls != NONE || this.maxStackDepth != NONE || this.maxClassInits != NONE;
+    }
+
+    /**
+     * Lists the largest counts.
+     *
+     * @param counts the counts by name.
+     * @return the largest counts and their names.
+     */
+    private static String largest(final Map<String, Long> counts) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(CONTRIBUTORS)
+                .map(e -> e.getKey() + " (" + e.getValue() + ")")
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Finds a test method by name in a test class or its superclasses.
+     *
+     * @param testClass the test class.
+     * @param name      the test name.
+     * @return the method, null if not found.
+     */
+    private static Method findMethod(final Class<?> testClass, final String name) {
+        for (Class<?> c = testClass; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.getName().equals(name)) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,7 +1,9 @@
 package analyser;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class to hold test class data.
@@ -20,14 +22,31 @@ public class TestClassDataObj {
      */
     private final List<String> testMethods;
 
+    /**
+     * The budgets of the test methods that set one.
+     */
+    private final Map<String, TestBudget> budgets;
+
     /**
      * Initialises a new instance of the TestClassDO.
      * @param classname The name of the class.
      * @param testmethods The test methods in this class.
      */
     public TestClassDataObj(final String classname, final List<String> testmethods) {
+        this(classname, testmethods, new HashMap<>());
+    }
+
+    /**
+     * Initialises a new instance of the TestClassDO with test budgets.
+     * @param classname The name of the class.
+     * @param testmethods The test methods in this class.
+     * @param testBudgets The budgets of the test methods that set one.
+     */
+    TestClassDataObj(final String classname, final List<String> testmethods,
+                     final Map<String, TestBudget> testBudgets) {
         this.className = classname;
         this.testMethods = testmethods;
+        this.budgets = testBudgets;
     }
 
     /**
@@ -37,6 +56,7 @@ public class TestClassDataObj {
     public TestClassDataObj() {
         this.className = "";
         this.testMethods = new ArrayList<>();
+        this.budgets = new HashMap<>();
     }
 
     /**
@@ -54,4 +74,13 @@ public class TestClassDataObj {
     public List<String> getTestMethods() {
         return this.testMethods;
     }
+
+    /**
+     * Gets the budget of a test method.
+     * @param testMethod The test method.
+     * @return the budget, null if the test does not set one.
+     */
+    TestBudget getBudget(final String testMethod) {
+        return this.budgets.get(testMethod);
+    }
 }
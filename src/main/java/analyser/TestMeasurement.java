@@ -1,8 +1,11 @@
 package analyser;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Holds collected test measurements.
@@ -31,28 +34,76 @@ public final class TestMeasurement {
     private HashMap<String, Long> classInitialisations;
 
     /**
-     * The stack trace of the test.
+     * Inclusive time spent in each method in nanoseconds.
      */
-    private ArrayList<String> trace;
+    private HashMap<String, Long> methodInclusiveTimes;
 
     /**
-     * Gets the depth trace.
-     * @return the depth trace.
+     * Self time spent in each method in nanoseconds.
      */
-    public List<Integer> getDepthTrace() {
-        return depthTrace;
-    }
+    private HashMap<String, Long> methodSelfTimes;
+
+    /**
+     * Wall clock time of the test in nanoseconds, -1 if not measured.
+     */
+    private long wallClockTime;
+
+    /**
+     * Cpu time of the test thread in nanoseconds, -1 if not measured.
+     */
+    private long cpuTime;
+
+    /**
+     * Bytes allocated by the test thread, -1 if not measured.
+     */
+    private long allocatedBytes;
 
     /**
-     * Trace of stack depth over time.
+     * Garbage collections during the test, -1 if not measured.
      */
-    private List<Integer> depthTrace;
+    private long gcCount;
+
+    /**
+     * Garbage collection time during the test in nanoseconds, -1 if not measured.
+     */
+    private long gcTime;
+
+    /**
+     * The stack trace of the test, repeated calls folded.
+     */
+    private FoldedTrace trace;
+
+    /**
+     * The calling context tree of the test.
+     */
+    private CallingContextTree callTree;
+
+    /**
+     * The classes loaded for the first time during the test, in load order.
+     */
+    private final List<String> loadedClasses = new ArrayList<>();
+
+    /**
+     * The monitors contended during the test, by lock class and contending method.
+     */
+    private final Map<String, MonitorContention> monitorContentions = new TreeMap<>();
+
+    /**
+     * The exceptions thrown during the test, caught or not, counted by
+     * exception type and then by throwing method.
+     */
+    private final Map<String, Map<String, Long>> exceptions = new TreeMap<>();
+
+    /**
+     * Whether the test threw more exceptions than the threshold.
+     */
+    private boolean exceptionThresholdExceeded;
 
     /**
      * Gets trace.
      * @return trace.
      */
-    public List<String> getTrace() {
+    FoldedTrace getTrace() {
         return this.trace;
     }
 
@@ -68,8 +119,15 @@ public final class TestMeasurement {
         this.maximumStackDepth = 0;
         this.methodCalls = new HashMap<>();
         this.classInitialisations = new HashMap<>();
-        this.trace = new ArrayList<>();
-        this.depthTrace = new ArrayList<>();
+        this.trace = new FoldedTrace();
+        this.callTree = new CallingContextTree();
+        this.methodInclusiveTimes = new HashMap<>();
+        this.methodSelfTimes = new HashMap<>();
+        this.wallClockTime = -1;
+        this.cpuTime = -1;
+        this.allocatedBytes = -1;
+        this.gcCount = -1;
+        this.gcTime = -1;
     }
 
     /**
@@ -81,6 +139,107 @@ public final class TestMeasurement {
         return this.methodCalls;
     }
 
+    /**
+     * Gets the classes loaded for the first time during the test.
+     *
+     * @return the class names, in load order.
+     */
+    List<String> getLoadedClasses() {
+        return this.loadedClasses;
+    }
+
+    /**
+     * Records a class loaded for the first time during the test.
+     *
+     * @param name the class name.
+     */
+    void addLoadedClass(final String name) {
+        this.loadedClasses.add(name);
+    }
+
+    /**
+     * Replaces the classes loaded for the first time during the test.
+     *
+     * @param names the class names, in load order.
+     */
+    void setLoadedClasses(final List<String> names) {
+        this.loadedClasses.clear();
+        this.loadedClasses.addAll(names);
+    }
+
+    /**
+     * Gets the monitors contended during the test.
+     *
+     * @return the contention, by lock class and contending method.
+     */
+    Collection<MonitorContention> getMonitorContentions() {
+        return this.monitorContentions.values();
+    }
+
+    /**
+     * Gets the contention on a monitor by a method, recording it if new.
+     *
+     * @param lockClass the class of the monitor.
+     * @param method    the fully qualified name of the contending method.
+     * @return the contention.
+     */
+    MonitorContention getMonitorContention(final String lockClass, final String method) {
+        return this.monitorContentions.computeIfAbsent(lockClass + " " + method,
+                key -> new MonitorContention(lockClass, method));
+    }
+
+    /**
+     * Gets the exceptions thrown during the test.
+     *
+     * @return the counts by exception type and then by throwing method.
+     */
+    Map<String, Map<String, Long>> getExceptions() {
+        return this.exceptions;
+    }
+
+    /**
+     * Records an exception thrown during the test.
+     *
+     * @param type   the exception class name.
+     * @param method the fully qualified name of the throwing method.
+     */
+    void addException(final String type, final String method) {
+        this.exceptions.computeIfAbsent(type, t -> new TreeMap<>()).merge(method, 1L, Long::sum);
+    }
+
+    /**
+     * Gets the number of exceptions thrown during the test.
+     *
+     * @return the exceptions thrown, caught or not.
+     */
+    long getExceptionCount() {
+        long count = 0;
+        for (Map<String, Long> methods : this.exceptions.values()) {
+            for (long thrown : methods.values()) {
+                count += thrown;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether the test threw more exceptions than the threshold.
+     *
+     * @return true if the threshold is exceeded.
+     */
+    boolean isExceptionThresholdExceeded() {
+        return this.exceptionThresholdExceeded;
+    }
+
+    /**
+     * Sets whether the test threw more exceptions than the threshold.
+     *
+     * @param exceeded whether the threshold is exceeded.
+     */
+    void setExceptionThresholdExceeded(final boolean exceeded) {
+        this.exceptionThresholdExceeded = exceeded;
+    }
+
     /**
      * Gets the class initialisations hash map.
      *
@@ -90,6 +249,123 @@ public final class TestMeasurement {
         return this.classInitialisations;
     }
 
+    /**
+     * Gets the inclusive method times.
+     *
+     * @return the inclusive time per method in nanoseconds.
+     */
+    public HashMap<String, Long> getMethodInclusiveTimes() {
+        return this.methodInclusiveTimes;
+    }
+
+    /**
+     * Gets the self method times.
+     *
+     * @return the self time per method in nanoseconds.
+     */
+    public HashMap<String, Long> getMethodSelfTimes() {
+        return this.methodSelfTimes;
+    }
+
+    /**
+     * Gets the calling context tree of the test.
+     *
+     * @return the calling context tree.
+     */
+    CallingContextTree getCallTree() {
+        return this.callTree;
+    }
+
+    /**
+     * Gets the wall clock time of the test.
+     *
+     * @return the wall clock time in nanoseconds, -1 if not measured.
+     */
+    long getWallClockTime() {
+        return this.wallClockTime;
+    }
+
+    /**
+     * Sets the wall clock time of the test.
+     *
+     * @param time the wall clock time in nanoseconds.
+     */
+    void setWallClockTime(final long time) {
+        this.wallClockTime = time;
+    }
+
+    /**
+     * Gets the cpu time of the test thread.
+     *
+     * @return the cpu time in nanoseconds, -1 if not measured.
+     */
+    long getCpuTime() {
+        return this.cpuTime;
+    }
+
+    /**
+     * Sets the cpu time of the test thread.
+     *
+     * @param time the cpu time in nanoseconds.
+     */
+    void setCpuTime(final long time) {
+        this.cpuTime = time;
+    }
+
+    /**
+     * Gets the bytes allocated by the test thread.
+     *
+     * @return the allocated bytes, -1 if not measured.
+     */
+    long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Sets the bytes allocated by the test thread.
+     *
+     * @param bytes the allocated bytes.
+     */
+    void setAllocatedBytes(final long bytes) {
+        this.allocatedBytes = bytes;
+    }
+
+    /**
+     * Gets the number of garbage collections during the test.
+     *
+     * @return the garbage collection count, -1 if not measured.
+     */
+    long getGcCount() {
+        return this.gcCount;
+    }
+
+    /**
+     * Sets the number of garbage collections during the test.
+     *
+     * @param count the garbage collection count.
+     */
+    void setGcCount(final long count) {
+        this.gcCount = count;
+    }
+
+    /**
+     * Gets the garbage collection time during the test.
+     *
+     * @return the garbage collection time in nanoseconds, -1 if not measured.
+     */
+    long getGcTime() {
+        return this.gcTime;
+    }
+
+    /**
+     * Sets the garbage collection time during the test.
+     *
+     * @param time the garbage collection time in nanoseconds.
+     */
+    void setGcTime(final long time) {
+        this.gcTime = time;
+    }
+
     /**
      * Sets the maximum stack depth.
      *
@@ -166,6 +442,29 @@ public final class TestMeasurement {
         sb.append("Maximum stack depth: ")
                 .append(this.maximumStackDepth)
                 .append(lineSeparator);
+        if (this.wallClockTime >= 0) {
+            sb.append("Wall clock time (ns): ")
+                    .append(this.wallClockTime)
+                    .append(lineSeparator);
+        }
+        if (this.cpuTime >= 0) {
+            sb.append("Cpu time (ns): ")
+                    .append(this.cpuTime)
+                    .append(lineSeparator);
+        }
+        if (this.allocatedBytes >= 0) {
+            sb.append("Allocated bytes: ")
+                    .append(this.allocatedBytes)
+                    .append(lineSeparator);
+        }
+        if (this.gcCount >= 0) {
+            sb.append("Garbage collections: ")
+                    .append(this.gcCount)
+                    .append(" (")
+                    .append(this.gcTime)
+                    .append("ns)")
+                    .append(lineSeparator);
+        }
         if (!this.methodCalls.isEmpty()) {
             sb.append("Method Calls: ")
                     .append(lineSeparator);
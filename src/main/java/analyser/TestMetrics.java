@@ -0,0 +1,273 @@
+package analyser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Summary metrics of a single test, kept once the full
+ * {@link TestMeasurement} and its trace have been reported.
+ */
+final class TestMetrics {
+
+    /**
+     * Separates the fields of a stored record.
+     */
+    static final String FIELD_SEPARATOR = "\t";
+
+    /**
+     * Names of the metric values, in record order.
+     */
+    static final String[] VALUE_NAMES = {
+            "totalMethodCalls",
+            "distinctMethodCalls",
+            "totalClassInitialisations",
+            "distinctClassInitialisations",
+            "maximumStackDepth",
+            "wallClockTime",
+            "cpuTime",
+            "allocatedBytes"
+    };
+
+    /**
+     * Number of fields of a stored test record.
+     */
+    private static final int TEST_FIELDS = VALUE_NAMES.length + 2;
+
+    /**
+     * The fully qualified test name.
+     */
+    private final String test;
+
+    /**
+     * Total method calls.
+     */
+    private final long totalMethodCalls;
+
+    /**
+     * Distinct methods called.
+     */
+    private final long distinctMethodCalls;
+
+    /**
+     * Total class initialisations.
+     */
+    private final long totalClassInitialisations;
+
+    /**
+     * Distinct classes initialised.
+     */
+    private final long distinctClassInitialisations;
+
+    /**
+     * Maximum stack depth.
+     */
+    private final long maximumStackDepth;
+
+    /**
+     * Wall clock time in nanoseconds, -1 if not measured.
+     */
+    private final long wallClockTime;
+
+    /**
+     * Cpu time in nanoseconds, -1 if not measured.
+     */
+    private final long cpuTime;
+
+    /**
+     * Bytes allocated, -1 if not measured.
+     */
+    private final long allocatedBytes;
+
+    /**
+     * Calls per fully qualified method name.
+     */
+    private final Map<String, Long> methodCalls;
+
+    /**
+     * Initialises a new TestMetrics.
+     *
+     * @param testName the fully qualified test name.
+     * @param values   total and distinct method calls, total and distinct class
+     *                 initialisations, maximum depth, wall clock time, cpu time and
+     *                 allocated bytes, in that order.
+     * @param calls    calls per fully qualified method name.
+     */
+    TestMetrics(final String testName, final long[] values, final Map<String, Long> calls) {
+        this.test = testName;
+        this.totalMethodCalls = values[0];
+        this.distinctMethodCalls = values[1];
+        this.totalClassInitialisations = values[2];
+        this.distinctClassInitialisations = values[3];
+        this.maximumStackDepth = values[4];
+        this.wallClockTime = values[5];
+        this.cpuTime = values[6];
+        this.allocatedBytes = values[7];
+        this.methodCalls = calls;
+    }
+
+    /**
+     * Summarises a test measurement.
+     *
+     * @param tm the test measurement.
+     * @return the test metrics.
+     */
+    static TestMetrics of(final TestMeasurement tm) {
+        return new TestMetrics(tm.getFQTestname(), new long[] {
+                tm.totalMethodCalls(),
+                tm.getMethodCalls().size(),
+                tm.totalClassesInitialised(),
+                tm.getClassInitialisations().size(),
+                tm.getMaximumStackDepth(),
+                tm.getWallClockTime(),
+                tm.getCpuTime(),
+                tm.getAllocatedBytes()
+        }, new HashMap<>(tm.getMethodCalls()));
+    }
+
+    /**
+     * Formats the test as a stored record, a test line
+     * followed by a line per method called.
+     *
+     * @param lineSeparator the line separator.
+     * @return the record.
+     */
+    String toRecord(final String lineSeparator) {
+        StringBuilder record = new StringBuilder();
+        record.append("T").append(FIELD_SEPARATOR).append(this.test);
+        for (long value : this.values()) {
+            record.append(FIELD_SEPARATOR).append(value);
+        }
+        record.append(lineSeparator);
+        for (Map.Entry<String, Long> entry : this.methodCalls.entrySet()) {
+            record.append("M").append(FIELD_SEPARATOR).append(entry.getKey())
+                    .append(FIELD_SEPARATOR).append(entry.getValue())
+                    .append(lineSeparator);
+        }
+        return record.toString();
+    }
+
+    /**
+     * Parses a stored test line.
+     *
+     * @param fields the fields of the test line.
+     * @return the test metrics, without method calls until they are read.
+     */
+    static TestMetrics fromRecord(final String[] fields) {
+        if (fields.length != TEST_FIELDS) {
+            throw new IllegalArgumentException("Malformed test record: " + String.join(FIELD_SEPARATOR, fields));
+        }
+        long[] values = new long[TEST_FIELDS - 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Long.parseLong(fields[i + 2]);
+        }
+        return new TestMetrics(fields[1], values, new HashMap<>());
+    }
+
+    /**
+     * Gets the metric values in record order.
+     *
+     * @return the values, named by {@link #VALUE_NAMES}.
+     */
+    long[] values() {
+        return new long[] {
+                this.totalMethodCalls,
+                this.distinctMethodCalls,
+                this.totalClassInitialisations,
+                this.distinctClassInitialisations,
+                this.maximumStackDepth,
+                this.wallClockTime,
+                this.cpuTime,
+                this.allocatedBytes
+        };
+    }
+
+    /**
+     * Gets the fully qualified test name.
+     *
+     * @return the test name.
+     */
+    String getTest() {
+        return this.test;
+    }
+
+    /**
+     * Gets the total method calls.
+     *
+     * @return the total method calls.
+     */
+    long getTotalMethodCalls() {
+        return this.totalMethodCalls;
+    }
+
+    /**
+     * Gets the distinct methods called.
+     *
+     * @return the distinct method count.
+     */
+    long getDistinctMethodCalls() {
+        return this.distinctMethodCalls;
+    }
+
+    /**
+     * Gets the total class initialisations.
+     *
+     * @return the total class initialisations.
+     */
+    long getTotalClassInitialisations() {
+        return this.totalClassInitialisations;
+    }
+
+    /**
+     * Gets the distinct classes initialised.
+     *
+     * @return the distinct class count.
+     */
+    long getDistinctClassInitialisations() {
+        return this.distinctClassInitialisations;
+    }
+
+    /**
+     * Gets the maximum stack depth.
+     *
+     * @return the maximum stack depth.
+     */
+    long getMaximumStackDepth() {
+        return this.maximumStackDepth;
+    }
+
+    /**
+     * Gets the wall clock time.
+     *
+     * @return the wall clock time in nanoseconds, -1 if not measured.
+     */
+    long getWallClockTime() {
+        return this.wallClockTime;
+    }
+
+    /**
+     * Gets the cpu time.
+     *
+     * @return the cpu time in nanoseconds, -1 if not measured.
+     */
+    long getCpuTime() {
+        return this.cpuTime;
+    }
+
+    /**
+     * Gets the allocated bytes.
+     *
+     * @return the allocated bytes, -1 if not measured.
+     */
+    long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Gets the calls per method.
+     *
+     * @return the calls per fully qualified method name.
+     */
+    Map<String, Long> getMethodCalls() {
+        return this.methodCalls;
+    }
+}
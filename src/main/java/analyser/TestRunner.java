@@ -1,6 +1,5 @@
 package analyser;
 
-import org.junit.platform.launcher.EngineFilter;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
 import org.junit.platform.launcher.TestIdentifier;
@@ -10,11 +9,19 @@ import org.junit.platform.launcher.core.LauncherFactory;
 import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
@@ -31,6 +38,21 @@ public final class TestRunner {
         // ignored
     }
 
+    /**
+     * Number of probe calls made to calibrate the tracing overhead.
+     */
+    static final int CALIBRATION_CALLS = 1000;
+
+    /**
+     * System property naming a file of test classes to skip, a class name per line.
+     */
+    static final String EXCLUDED_CLASSES_PROPERTY = "analyser.excludedClasses";
+
+    /**
+     * System property setting the number of times the tests of each class are run.
+     */
+    static final String ITERATIONS_PROPERTY = "analyser.iterations";
+
     /**
      * The array of test class names to be executed.
      */
@@ -39,17 +61,31 @@ public final class TestRunner {
     /**
      * The main method of the test runner class.
      *
-     * @param args command line args.
+     * @param args command line args, the test directory followed by
+     *             any classpath directories to load the tests from.
      * @throws MalformedURLException if a malformed url is used.
      */
     public static void main(final String[] args) throws MalformedURLException {
-        SummaryGeneratingListener listener = new SummaryGeneratingListener();
         File testRootDirectory = new File(args[0]);
+        URL[] urls = new URL[args.length];
+        urls[0] = testRootDirectory.toURI().toURL();
+        for (int i = 1; i < args.length; i++) {
+            urls[i] = new File(args[i]).toURI().toURL();
+        }
+        runTests(testRootDirectory, new URLClassLoader(urls));
+    }
+
+    /**
+     * Discovers and executes the tests found under the test root directory.
+     *
+     * @param testRootDirectory the directory to scan for test classes.
+     * @param loader            the class loader to load the test classes from.
+     */
+    static void runTests(final File testRootDirectory, final ClassLoader loader) {
+        calibrate();
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
         DirectoryScanner scanner = new DirectoryScanner();
-        testClassNames = scanner.scanDirectory(testRootDirectory);
-        URL url = testRootDirectory.toURI().toURL();
-        URL[] urls = {url};
-        ClassLoader loader = new URLClassLoader(urls);
+        testClassNames = withoutExcludedClasses(scanner.scanDirectory(testRootDirectory));
         for (String testClass : testClassNames) {
             Class<?> test;
             try {
@@ -61,19 +97,53 @@ public final class TestRunner {
             LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
                     .selectors(selectClass(test))
                     .build();
-            List<EngineFilter> params = request.getEngineFilters();
             Launcher launcher = LauncherFactory.create();
             TestPlan plan = launcher.discover(request);
-            // testMethods to be read by jdi to executing mojo.
+            // testMethods and testBudgets to be read by jdi to executing mojo.
             if (plan.containsTests()) {
                 String[] testMethods = getTestNamesFromPlan(plan);
+                long[] testBudgets = TestBudget.read(test, testMethods);
                 launcher.registerTestExecutionListeners(listener);
-                launcher.execute(request);
+                execute(launcher, request);
                 int x = 1; // Need this line to put a breakpoint here.
             }
         }
     }
 
+    /**
+     * Runs the tests of a class the number of times set by the
+     * {@link #ITERATIONS_PROPERTY} system property, once if not set.
+     *
+     * @param launcher the launcher.
+     * @param request  the discovery request of the test class.
+     */
+    private static void execute(final Launcher launcher, final LauncherDiscoveryRequest request) {
+        int iterations = Math.max(1, Integer.getInteger(ITERATIONS_PROPERTY, 1));
+        for (int i = 0; i < iterations; i++) {
+            launcher.execute(request);
+        }
+    }
+
+    /**
+     * Removes the test classes listed in the file named by the
+     * {@link #EXCLUDED_CLASSES_PROPERTY} system property.
+     *
+     * @param classNames the test class names found.
+     * @return the test class names to run.
+     */
+    private static ArrayList<String> withoutExcludedClasses(final ArrayList<String> classNames) {
+        String excluded = System.getProperty(EXCLUDED_CLASSES_PROPERTY);
+        if (excluded == null) {
+            return classNames;
+        }
+        try {
+            classNames.removeAll(new HashSet<>(Files.readAllLines(Paths.get(excluded), StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return classNames;
+    }
+
     /**
      * Method to get test names from test plan.
      *
@@ -99,5 +169,60 @@ public final class TestRunner {
         }
         return tests.toArray(String[]::new);
     }
-}
 
+    /**
+     * Discovers the tests under the test root directory without running them.
+     *
+     * @param testRootDirectory the directory to scan for test classes.
+     * @param loader            the class loader to load the test classes from.
+     * @return the classes containing tests, by class name.
+     */
+    static Map<String, TestClassDataObj> discoverTests(final File testRootDirectory, final ClassLoader loader) {
+        Map<String, TestClassDataObj> testClasses = new HashMap<>();
+        Launcher launcher = LauncherFactory.create();
+        for (String testClass : new DirectoryScanner().scanDirectory(testRootDirectory)) {
+            try {
+                Class<?> test = loader.loadClass(testClass);
+                LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+                        .selectors(selectClass(test))
+                        .build();
+                TestPlan plan = launcher.discover(request);
+                if (plan.containsTests()) {
+                    String[] testMethods = getTestNamesFromPlan(plan);
+                    testClasses.put(testClass, new TestClassDataObj(testClass, Arrays.asList(testMethods),
+                            TestBudget.of(Arrays.asList(testMethods), TestBudget.read(test, testMethods))));
+                }
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+        return testClasses;
+    }
+
+    /**
+     * Measures the cost of tracing a call in this VM.
+     * The analyser traces the entry and exit of each probe call
+     * and reads the returned cost.
+     *
+     * @return the wall clock and cpu cost of an event in nanoseconds.
+     */
+    static long[] calibrate() {
+        long[] start = ThreadSampler.sample();
+        for (int i = 0; i < CALIBRATION_CALLS; i++) {
+            calibrationProbe();
+        }
+        long[] end = ThreadSampler.sample();
+        long[] cost = new long[start.length];
+        for (int i = 0; i < cost.length; i++) {
+            cost[i] = (end[i] - start[i]) / (2L * CALIBRATION_CALLS);
+        }
+        return cost;
+    }
+
+    /**
+     * Empty call traced to calibrate the tracing overhead.
+     */
+    private static void calibrationProbe() {
+        // traced by the analyser.
+    }
+}
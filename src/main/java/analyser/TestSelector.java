@@ -0,0 +1,130 @@
+package analyser;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects the tests affected by the classes changed since the impact index
+ * was recorded and restricts surefire to them.
+ * <br>
+ * <p>
+ * The selection is written to a file and set as the surefire test
+ * property, so surefire running later in the same build only runs the
+ * affected tests. Without an index, or when a resource or dependency jar
+ * changed, as the index does not record which tests use them, every test
+ * is run.
+ * </p>
+ */
+@Mojo(name = "select-tests", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES,
+        requiresDependencyResolution = ResolutionScope.TEST)
+public class TestSelector extends AbstractMojo {
+
+    /**
+     * The surefire property selecting the tests to run.
+     */
+    private static final String TEST_PROPERTY = "test";
+
+    /**
+     * The project under test.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject mavenProject;
+
+    /**
+     * The impact index file.
+     */
+    @Parameter(property = "analyser.impactFile", defaultValue = "${project.basedir}/.analyser/impact")
+    private File impactFile;
+
+    /**
+     * The file to write the selected tests to.
+     */
+    @Parameter(property = "analyser.selectionFile", defaultValue = "${project.build.directory}/analyser-selected-tests.txt")
+    private File selectionFile;
+
+    /**
+     * Selects the affected tests.
+     *
+     * @throws MojoExecutionException if the index or the compiled classes cannot be read.
+     */
+    public final void execute() throws MojoExecutionException {
+        ImpactIndex index = new ImpactIndex(this.impactFile);
+        if (!index.exists()) {
+            getLog().info("No impact index at " + this.impactFile + ", running all tests");
+            return;
+        }
+        Map<String, String> hashes;
+        Set<String> testClasses;
+        try {
+            index.load();
+            File testOutput = new File(this.mavenProject.getBuild().getTestOutputDirectory());
+            hashes = ImpactIndex.hashInputs(this.mavenProject.getTestClasspathElements());
+            testClasses = new TreeSet<>(ImpactIndex.hashClasses(testOutput).keySet());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot read impact index " + this.impactFile, e);
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException("Cannot resolve test classpath", e);
+        }
+        Set<String> changed = index.changedClasses(hashes);
+        for (String input : changed) {
+            if (!ImpactIndex.isClass(input)) {
+                getLog().info(input + " changed since the impact index was recorded, running all tests");
+                return;
+            }
+        }
+        Map<String, Set<String>> selected = index.select(changed, testClasses);
+        List<String> patterns = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> testClass : selected.entrySet()) {
+            patterns.add(testClass.getValue().isEmpty() ? testClass.getKey()
+                    : testClass.getKey() + "#" + String.join("+", testClass.getValue()));
+        }
+        getLog().info(changed.size() + " classes changed since the impact index of "
+                + index.getTestCount() + " tests, selected " + patterns.size() + " test classes");
+        for (String pattern : patterns) {
+            getLog().debug("Selected " + pattern);
+        }
+        this.writeSelection(patterns);
+        Properties properties = this.mavenProject.getProperties();
+        if (patterns.isEmpty()) {
+            properties.setProperty("skipTests", "true");
+        } else {
+            properties.setProperty(TEST_PROPERTY, String.join(",", patterns));
+            properties.setProperty("surefire.failIfNoSpecifiedTests", "false");
+        }
+    }
+
+    /**
+     * Writes the selected tests, a line per test class.
+     *
+     * @param patterns the surefire patterns of the selected tests.
+     * @throws MojoExecutionException if the selection cannot be written.
+     */
+    private void writeSelection(final List<String> patterns) throws MojoExecutionException {
+        this.selectionFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer writer = Files.newBufferedWriter(this.selectionFile.toPath(), StandardCharsets.UTF_8)) {
+            for (String pattern : patterns) {
+                writer.write(pattern + System.lineSeparator());
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write " + this.selectionFile, e);
+        }
+    }
+}
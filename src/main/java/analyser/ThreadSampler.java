@@ -0,0 +1,100 @@
+package analyser;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Samples the clocks, allocation and garbage collection of the calling thread in the test VM.
+ * Invoked by the analyser through the java debug interface
+ * at the start and end of each test.
+ */
+public final class ThreadSampler {
+
+    /**
+     * Index of the wall clock time in a sample.
+     */
+    static final int WALL_CLOCK = 0;
+
+    /**
+     * Index of the thread cpu time in a sample.
+     */
+    static final int CPU = 1;
+
+    /**
+     * Index of the bytes allocated by the thread in a sample.
+     */
+    static final int ALLOCATED_BYTES = 2;
+
+    /**
+     * Index of the garbage collection count in a sample.
+     */
+    static final int GC_COUNT = 3;
+
+    /**
+     * Index of the garbage collection time in a sample.
+     */
+    static final int GC_TIME = 4;
+
+    /**
+     * Milliseconds to nanoseconds.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * The thread management bean of the test VM.
+     */
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The garbage collector management beans of the test VM.
+     */
+    private static final List<GarbageCollectorMXBean> GC_MX_BEANS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /**
+     * Private constructor.
+     */
+    private ThreadSampler() {
+        // ignored
+    }
+
+    /**
+     * Samples the calling thread.
+     *
+     * @return the wall clock and thread cpu time in nanoseconds, the bytes
+     * allocated by the thread, the number of garbage collections and the
+     * garbage collection time in nanoseconds. The cpu time and allocated
+     * bytes are -1 if they are not supported.
+     */
+    public static long[] sample() {
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : GC_MX_BEANS) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {
+                System.nanoTime(),
+                THREAD_MX_BEAN.getCurrentThreadCpuTime(),
+                allocatedBytes(),
+                gcCount,
+                gcTime * NANOS_PER_MILLI
+        };
+    }
+
+    /**
+     * Gets the bytes allocated by the calling thread.
+     *
+     * @return the allocated bytes, -1 if not supported by the VM.
+     */
+    private static long allocatedBytes() {
+        if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,1070 @@
+package analyser;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.ClassNotLoadedException;
+import com.sun.jdi.ClassObjectReference;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.InvalidTypeException;
+import com.sun.jdi.InvocationException;
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.event.BreakpointEvent;
+import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.EventSet;
+import com.sun.jdi.event.ExceptionEvent;
+import com.sun.jdi.event.LocatableEvent;
+import com.sun.jdi.event.MethodEntryEvent;
+import com.sun.jdi.event.MethodExitEvent;
+import com.sun.jdi.event.MonitorContendedEnterEvent;
+import com.sun.jdi.event.MonitorContendedEnteredEvent;
+import com.sun.jdi.event.MonitorWaitEvent;
+import com.sun.jdi.event.MonitorWaitedEvent;
+import com.sun.jdi.event.VMDeathEvent;
+import com.sun.jdi.event.VMDisconnectEvent;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static analyser.TestAnalyser.DISABLE_METHOD_ENTRY_LINE;
+import static analyser.TestAnalyser.ENABLE_METHOD_ENTRY_LINE;
+import static analyser.TestAnalyser.JUNIT_CLASS_PREFIX;
+
+/**
+ * Collects test measurements from the events of a test VM
+ * and adds them to the report.
+ */
+final class TraceCollector {
+
+    /**
+     * The buffer size for reading the output streams from
+     * the test runner.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The empty string.
+     */
+    private static final String EMPTY_STRING = "";
+
+    /**
+     * Constructor method name.
+     */
+    private static final String CONSTRUCTOR = "<init>";
+
+    /**
+     * Number of methods and classes monitored for the suite hot spots.
+     */
+    private static final int HOT_SPOT_CAPACITY = 1024;
+
+    /**
+     * The fewest back to back repetitions of a call pattern reported by default.
+     */
+    private static final int DEFAULT_REPETITIONS = 10;
+
+    /**
+     * The least similarity of the tests grouped as redundant by default.
+     */
+    private static final double DEFAULT_SIMILARITY = 0.9;
+
+    /**
+     * Default most exceptions a test may throw before it is flagged.
+     */
+    private static final int DEFAULT_EXCEPTIONS = 100;
+
+    /**
+     * Scope of the classes loaded while no test class runs, by the runner setup.
+     */
+    static final String OUTSIDE_TESTS = "(outside tests)";
+
+    /**
+     * The plugin log.
+     */
+    private final Log log;
+
+    /**
+     * Classes loaded outside the tests, by test class or {@link #OUTSIDE_TESTS}.
+     */
+    private final Map<String, List<String>> classLoadsOutsideTests = new LinkedHashMap<>();
+
+    /**
+     * Report writer.
+     */
+    private final XMLReportWriter report;
+
+    /**
+     * {@link TestClassDataObj} containing the class name and test names..
+     */
+    private TestClassDataObj testClassDataObj = new TestClassDataObj();
+
+    /**
+     * Test classes known before the VM runs, by class name.
+     * Used when the tests are not run by the {@link TestRunner}.
+     */
+    private Map<String, TestClassDataObj> knownTestClasses = new HashMap<>();
+
+    /**
+     * Test we are currently executing.
+     */
+    private String runningTestName = EMPTY_STRING;
+
+    /**
+     * {@link TestMeasurement} for the in method.
+     */
+    private TestMeasurement testMeasurement;
+
+    /**
+     * Stack for counting how deep the test method goes into the code.
+     */
+    private Deque<String> testStack = new ArrayDeque<>();
+
+    /**
+     * Times the methods entered by the running test.
+     */
+    private final MethodTimer methodTimer = new MethodTimer();
+
+    /**
+     * Summary metrics of the finished tests.
+     */
+    private final List<TestMetrics> metrics = new ArrayList<>();
+
+    /**
+     * The classes used by each finished test, by fully qualified test name.
+     */
+    private final Map<String, Set<String>> usedClasses = new HashMap<>();
+
+    /**
+     * Descriptions of the test budgets exceeded.
+     */
+    private final List<String> budgetViolations = new ArrayList<>();
+
+    /**
+     * Most called methods across the suite.
+     */
+    private final SpaceSaving hotMethods = new SpaceSaving(HOT_SPOT_CAPACITY);
+
+    /**
+     * Most constructed classes across the suite.
+     */
+    private final SpaceSaving hotClasses = new SpaceSaving(HOT_SPOT_CAPACITY);
+
+    /**
+     * Number of suite hot spots to report.
+     */
+    private int hotSpotCount = 20;
+
+    /**
+     * Finds call patterns repeated back to back in the tests.
+     */
+    private RepetitionDetector repetitionDetector = new RepetitionDetector(DEFAULT_REPETITIONS);
+
+    /**
+     * Finds groups of tests with near identical footprints.
+     */
+    private RedundancyDetector redundancyDetector = new RedundancyDetector(DEFAULT_SIMILARITY);
+
+    /**
+     * Number of events seen from the VM.
+     */
+    private long eventCount;
+
+    /**
+     * The calibrated cpu cost of an event in nanoseconds.
+     */
+    private long cpuEventCost;
+
+    /**
+     * Thread sample taken when the running test started.
+     */
+    private long[] testStartSample;
+
+    /**
+     * Number of events seen when the running test started.
+     */
+    private long testStartEvents;
+
+    /**
+     * Number of times each test is run.
+     */
+    private int iterations = 1;
+
+    /**
+     * Number of first runs of each test excluded from its statistics.
+     */
+    private int warmup;
+
+    /**
+     * The statistics of the tests being run repeatedly, by fully qualified test name.
+     */
+    private final Map<String, RunStatistics> runStatistics = new HashMap<>();
+
+    /**
+     * Journal of the test classes analysed, null if not kept.
+     */
+    private ProgressJournal journal;
+
+    /**
+     * Whether the runner is running the tests of the current test class.
+     */
+    private boolean classRunning;
+
+    /**
+     * Receives the events of the running tests for timeline export.
+     */
+    private TraceEventSink traceEventSink = TraceEventSink.NONE;
+
+    /**
+     * The monitor each thread of the running test is blocked entering, by thread id.
+     */
+    private final Map<Long, MonitorContention> blockedMonitors = new HashMap<>();
+
+    /**
+     * When each thread of the running test blocked entering a monitor, by thread id.
+     */
+    private final Map<Long, Long> blockedSince = new HashMap<>();
+
+    /**
+     * The monitor each thread of the running test is waiting on, by thread id.
+     */
+    private final Map<Long, MonitorContention> waitedMonitors = new HashMap<>();
+
+    /**
+     * When each thread of the running test started waiting on a monitor, by thread id.
+     */
+    private final Map<Long, Long> waitingSince = new HashMap<>();
+
+    /**
+     * The most exceptions a test may throw before it is flagged.
+     */
+    private int exceptionThreshold = DEFAULT_EXCEPTIONS;
+
+    /**
+     * Initialises a new instance of the TraceCollector class.
+     *
+     * @param pluginLog    the plugin log.
+     * @param reportWriter the report to add measurements to.
+     */
+    TraceCollector(final Log pluginLog, final XMLReportWriter reportWriter) {
+        this.log = pluginLog;
+        this.report = reportWriter;
+    }
+
+    /**
+     * Gets the summary metrics of the tests finished so far.
+     *
+     * @return the test metrics.
+     */
+    List<TestMetrics> getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the classes used by the tests finished so far.
+     *
+     * @return the used classes by fully qualified test name.
+     */
+    Map<String, Set<String>> getUsedClasses() {
+        return this.usedClasses;
+    }
+
+    /**
+     * Gets the test budgets exceeded so far.
+     *
+     * @return a description of each budget exceeded.
+     */
+    List<String> getBudgetViolations() {
+        return this.budgetViolations;
+    }
+
+    /**
+     * Sets the number of most called methods and most constructed
+     * classes to report for the suite.
+     *
+     * @param count the number of hot spots.
+     */
+    void setHotSpotCount(final int count) {
+        this.hotSpotCount = Math.min(count, HOT_SPOT_CAPACITY);
+    }
+
+    /**
+     * Sets the fewest back to back repetitions of a call pattern to report.
+     *
+     * @param repetitions the fewest repetitions.
+     */
+    void setRepetitionThreshold(final int repetitions) {
+        this.repetitionDetector = new RepetitionDetector(repetitions);
+    }
+
+    /**
+     * Sets the most exceptions a test may throw before it is flagged.
+     *
+     * @param threshold the most exceptions.
+     */
+    void setExceptionThreshold(final int threshold) {
+        this.exceptionThreshold = threshold;
+    }
+
+    /**
+     * Sets the least Jaccard similarity of the footprints of the tests to group as redundant.
+     *
+     * @param similarity the least similarity.
+     */
+    void setSimilarityThreshold(final double similarity) {
+        this.redundancyDetector = new RedundancyDetector(similarity);
+    }
+
+    /**
+     * Sets the number of times each test is run and how many of the first
+     * runs are excluded from its statistics as warm-up.
+     *
+     * @param runs       the number of runs.
+     * @param warmupRuns the number of warm-up runs.
+     */
+    void setIterations(final int runs, final int warmupRuns) {
+        this.iterations = runs;
+        this.warmup = warmupRuns;
+    }
+
+    /**
+     * Adds the tests analysed by a previous run, read back from its report,
+     * to the suite summary, the metrics and the classes used.
+     *
+     * @param previousTests the measurements of the tests.
+     */
+    void addPreviousTests(final List<TestMeasurement> previousTests) {
+        for (TestMeasurement tm : previousTests) {
+            String test = tm.getFQTestname();
+            for (Map.Entry<String, Long> entry : tm.getMethodCalls().entrySet()) {
+                this.hotMethods.offer(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : tm.getClassInitialisations().entrySet()) {
+                this.hotClasses.offer(entry.getKey(), entry.getValue());
+            }
+            this.repetitionDetector.analyse(test, tm.getTrace());
+            this.metrics.add(TestMetrics.of(tm));
+            this.recordUsedClasses(test, tm);
+            this.redundancyDetector.add(test, tm.getMethodCalls().keySet(), tm.getClassInitialisations().keySet());
+        }
+    }
+
+    /**
+     * Sets the journal to record the test classes analysed in.
+     *
+     * @param progressJournal the progress journal.
+     */
+    void setProgressJournal(final ProgressJournal progressJournal) {
+        this.journal = progressJournal;
+    }
+
+    /**
+     * Gets the test class the runner was running when the VM stopped, or
+     * the class of the test running when an attached VM stopped.
+     *
+     * @return the test class name, null if every class and test started finished.
+     */
+    String getUnfinishedClass() {
+        return this.classRunning || this.inTest() ? this.testClassDataObj.getTestClassName() : null;
+    }
+
+    /**
+     * Sets the sink to stream the events of the running tests to.
+     *
+     * @param sink the trace event sink.
+     */
+    void setTraceEventSink(final TraceEventSink sink) {
+        this.traceEventSink = sink;
+    }
+
+    /**
+     * Sets the test classes to recognise tests by when
+     * the VM does not run the {@link TestRunner}.
+     *
+     * @param testClasses the test classes by class name.
+     */
+    void setKnownTestClasses(final Map<String, TestClassDataObj> testClasses) {
+        this.knownTestClasses = testClasses;
+    }
+
+    /**
+     * Handles the events of the connected VM until it
+     * disconnects or the runner daemon finishes the job.
+     *
+     * @param connection the connection.
+     * @throws InterruptedException             if interrupted waiting for events.
+     * @throws IncompatibleThreadStateException if the thread is not suspended.
+     * @throws AbsentInformationException       if debug info is not available.
+     * @throws IOException                      if reading the output streams cause an exception.
+     */
+    void collect(final Connection connection) throws InterruptedException,
+            IncompatibleThreadStateException, AbsentInformationException, IOException {
+        EventSet eventSet;
+        boolean run = true;
+        if (connection.isMonitorContentionUnavailable()) {
+            this.log.warn("The test VM cannot report monitor events, monitor contention is not reported");
+        }
+        while (run) {
+            eventSet = connection.getVm().eventQueue().remove();
+            for (Event event : eventSet) {
+                this.eventCount++;
+                this.log.debug(event.toString());
+                if (event instanceof ClassPrepareEvent) {
+                    handleClassPrepareEvent(connection, event);
+                }
+                if (event instanceof BreakpointEvent) {
+                    if (connection.isJobFinished((BreakpointEvent) event)) {
+                        this.log.info("Detaching from the runner daemon");
+                        connection.detach();
+                        run = false;
+                        break;
+                    }
+                    handleBreakpointEvent(connection, event);
+                }
+                if (event instanceof MethodEntryEvent) {
+                    handleMethodEntryEvent(connection, event);
+                }
+                if (event instanceof MethodExitEvent) {
+                    handleMethodExitEvent(connection, event);
+                }
+                if (event instanceof MonitorContendedEnterEvent || event instanceof MonitorContendedEnteredEvent
+                        || event instanceof MonitorWaitEvent || event instanceof MonitorWaitedEvent) {
+                    handleMonitorEvent(connection, event);
+                }
+                if (event instanceof ExceptionEvent) {
+                    handleExceptionEvent(connection, (ExceptionEvent) event);
+                }
+                if (event instanceof VMDeathEvent || event instanceof VMDisconnectEvent) {
+                    this.log.info("Disconnecting from the VM");
+                    logRunnerOutput(connection);
+                    run = false;
+                    break;
+                }
+                connection.getVm().resume();
+            }
+        }
+        List<RepetitionDetector.Finding> repetitions = this.repetitionDetector.getFindings();
+        for (RepetitionDetector.Finding finding : repetitions) {
+            this.log.warn("Repeated calls: " + finding.getCaller() + " calls [" + finding.getPattern() + "] "
+                    + finding.getMaximumRepetitions() + " times in a row in " + finding.getTests());
+        }
+        List<RedundancyDetector.Cluster> clusters = this.redundancyDetector.getClusters();
+        for (RedundancyDetector.Cluster cluster : clusters) {
+            this.log.warn("Redundant tests: " + cluster.getTests().size() + " tests with footprints "
+                    + String.format(Locale.ROOT, "%.2f", cluster.getSimilarity()) + " similar: " + cluster.getTests());
+        }
+        this.report.addSuiteSummary(this.hotMethods.top(this.hotSpotCount), this.hotClasses.top(this.hotSpotCount),
+                repetitions, clusters, this.classLoadsOutsideTests);
+    }
+
+    /**
+     * Log output from test runner.
+     *
+     * @param connection The test runner connection.
+     * @throws IOException If the streams cannot be read.
+     */
+    void logRunnerOutput(final Connection connection) throws IOException {
+        String testRunnerOutput = readOutAndErrStreams(connection);
+        if (!testRunnerOutput.isEmpty()) {
+            this.log.info(testRunnerOutput);
+        }
+    }
+
+    /**
+     * Handles the Class Prepare Events.
+     *
+     * @param connection the connection.
+     * @param event      the event to handle.
+     * @throws AbsentInformationException if debug info is not available.
+     */
+    private void handleClassPrepareEvent(final Connection connection, final Event event)
+            throws AbsentInformationException {
+        ClassPrepareEvent classPrepareEvent = (ClassPrepareEvent) event;
+        if (connection.isClassLoading(event)) {
+            String loaded = classPrepareEvent.referenceType().name();
+            if (this.inTest()) {
+                this.testMeasurement.addLoadedClass(loaded);
+            } else {
+                String scope = this.classRunning ? this.testClassDataObj.getTestClassName() : OUTSIDE_TESTS;
+                this.classLoadsOutsideTests.computeIfAbsent(scope, s -> new ArrayList<>()).add(loaded);
+            }
+            return;
+        }
+        this.log.debug("Handling class prepare event: " + event.toString());
+        connection.setBreakPoints(classPrepareEvent);
+    }
+
+    /**
+     * Counts an exception thrown during the running test, ending the test
+     * if the exception escapes the test method.
+     *
+     * @param connection the connection.
+     * @param event      the exception event.
+     * @throws IncompatibleThreadStateException if the thread is not suspended.
+     */
+    private void handleExceptionEvent(final Connection connection, final ExceptionEvent event)
+            throws IncompatibleThreadStateException {
+        if (!this.inTest()) {
+            return;
+        }
+        Location location = event.location();
+        String method = location.declaringType().name() + "." + location.method().name();
+        this.testMeasurement.addException(event.exception().referenceType().name(), method);
+        if (this.escapesTest(event)) {
+            this.log.debug("Test ended by " + event.exception().referenceType().name() + " thrown in " + method);
+            this.exitTest(connection, event.thread(),
+                    this.testClassDataObj.getTestClassName() + "." + this.runningTestName);
+        }
+    }
+
+    /**
+     * Whether an exception is thrown through the running test method, by
+     * the frames of the throwing thread from the throw to the catch.
+     * Exceptions thrown on other threads never end the test.
+     *
+     * @param event the exception event.
+     * @return true if the test method is on the stack below the throw and above the catch.
+     * @throws IncompatibleThreadStateException if the thread is not suspended.
+     */
+    private boolean escapesTest(final ExceptionEvent event) throws IncompatibleThreadStateException {
+        Location catchLocation = event.catchLocation();
+        for (StackFrame frame : event.thread().frames()) {
+            Method method = frame.location().method();
+            if (catchLocation != null && method.equals(catchLocation.method())) {
+                return false;
+            }
+            if (method.name().equals(this.runningTestName)
+                    && method.declaringType().name().equals(this.testClassDataObj.getTestClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Handles the monitor contended and wait events of the running test,
+     * timing each block and wait from its start event to its end event on
+     * the same thread. Monitors contended or waited on outside the traced
+     * classes are ignored.
+     *
+     * @param connection the connection.
+     * @param event      the monitor event.
+     */
+    private void handleMonitorEvent(final Connection connection, final Event event) {
+        if (!this.inTest()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long thread = ((LocatableEvent) event).thread().uniqueID();
+        if (event instanceof MonitorContendedEnterEvent) {
+            MonitorContendedEnterEvent enter = (MonitorContendedEnterEvent) event;
+            MonitorContention contention = this.getMonitorContention(connection, enter.monitor(), enter);
+            if (contention != null) {
+                contention.contended();
+                this.blockedMonitors.put(thread, contention);
+                this.blockedSince.put(thread, now);
+            }
+        } else if (event instanceof MonitorContendedEnteredEvent) {
+            MonitorContention contention = this.blockedMonitors.remove(thread);
+            Long since = this.blockedSince.remove(thread);
+            if (contention != null) {
+                contention.entered(now - since);
+            }
+        } else if (event instanceof MonitorWaitEvent) {
+            MonitorWaitEvent wait = (MonitorWaitEvent) event;
+            MonitorContention contention = this.getMonitorContention(connection, wait.monitor(), wait);
+            if (contention != null) {
+                contention.waiting();
+                this.waitedMonitors.put(thread, contention);
+                this.waitingSince.put(thread, now);
+            }
+        } else {
+            MonitorContention contention = this.waitedMonitors.remove(thread);
+            Long since = this.waitingSince.remove(thread);
+            if (contention != null) {
+                contention.waited(now - since);
+            }
+        }
+    }
+
+    /**
+     * Gets the contention of the running test on a monitor by the innermost
+     * method of the traced classes on the stack of the event, the caller of
+     * a synchronized platform method or of {@code Object.wait}.
+     *
+     * @param connection the connection.
+     * @param monitor    the monitor, a class object for a static synchronized method.
+     * @param event      the monitor event.
+     * @return the contention, null if no traced method is on the stack or the stack cannot be read.
+     */
+    private MonitorContention getMonitorContention(final Connection connection, final ObjectReference monitor,
+                                                   final LocatableEvent event) {
+        List<StackFrame> frames;
+        try {
+            frames = event.thread().frames();
+        } catch (IncompatibleThreadStateException | ObjectCollectedException e) {
+            this.log.debug(e);
+            return null;
+        }
+        for (StackFrame frame : frames) {
+            Location location = frame.location();
+            if (connection.isTracedClass(location.declaringType().name())) {
+                String lockClass = monitor instanceof ClassObjectReference
+                        ? ((ClassObjectReference) monitor).reflectedType().name()
+                        : monitor.referenceType().name();
+                String method = location.declaringType().name() + "." + location.method().name();
+                return this.testMeasurement.getMonitorContention(lockClass, method);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Handles Breakpoint Events.
+     *
+     * @param connection the connection.
+     * @param event      the event to handle.
+     * @throws IncompatibleThreadStateException if the thread is not suspended.
+     * @throws AbsentInformationException       if debug info is not available.
+     * @throws IOException                      if reading the output streams cause an exception..
+     */
+    private void handleBreakpointEvent(final Connection connection, final Event event)
+            throws IncompatibleThreadStateException, AbsentInformationException, IOException {
+        int lineNumber = ((BreakpointEvent) event).location().lineNumber();
+        if (lineNumber == ENABLE_METHOD_ENTRY_LINE) {
+            this.testClassDataObj = connection.readTestNamesFromRunner((BreakpointEvent) event);
+            this.log.info("---------------------------------");
+            this.log.info("Analysing tests in: " + this.testClassDataObj.getTestClassName());
+            this.log.info("---------------------------------");
+            this.classRunning = true;
+            connection.enableMethodEntryRequest();
+            connection.enableMethodExitRequest();
+            connection.enableMonitorRequests();
+        }
+        if (lineNumber == DISABLE_METHOD_ENTRY_LINE) {
+            connection.disableMethodEntryRequest();
+            connection.disableMethodExitRequest();
+            connection.disableMonitorRequests();
+            logRunnerOutput(connection);
+            this.classRunning = false;
+            if (this.journal != null) {
+                this.journal.complete(this.testClassDataObj.getTestClassName());
+            }
+        }
+    }
+
+    /**
+     * Handles Method Entry Events.
+     *
+     * @param connection the connection.
+     * @param event      the event to handle.
+     */
+    private void handleMethodEntryEvent(final Connection connection, final Event event) {
+        if (connection.isCalibration(event)) {
+            return;
+        }
+        MethodEntryEvent methodEntryEvent = (MethodEntryEvent) event;
+        this.log.debug("Handling Method Entry Event: " + methodEntryEvent.toString());
+        String methodName = methodEntryEvent.method().name();
+        String className = methodEntryEvent.method().declaringType().name();
+        if (!this.inTest() && this.knownTestClasses.containsKey(className)) {
+            this.testClassDataObj = this.knownTestClasses.get(className);
+        }
+        if (this.testClassDataObj.getTestMethods().contains(methodName)) {
+            this.handleTestEntry(connection, methodEntryEvent, methodName);
+        }
+        if (this.inTest()) {
+            this.handleMethodEntryWhileInTestExecution(
+                    connection,
+                    methodEntryEvent.thread(),
+                    methodName,
+                    className
+            );
+        }
+    }
+
+    /**
+     * Handles Method Exit Events.
+     *
+     * @param connection the connection.
+     * @param event      the event to handle.
+     */
+    private void handleMethodExitEvent(final Connection connection, final Event event) {
+        MethodExitEvent methodExitEvent = (MethodExitEvent) event;
+        String className = methodExitEvent.method().declaringType().name();
+        String methodname = methodExitEvent.method().name();
+        if (connection.isCalibration(event)) {
+            if (methodname.equals("calibrate")) {
+                this.handleCalibration(connection, methodExitEvent);
+            }
+            return;
+        }
+        this.log.debug("Handling Method Exit Event: " + methodExitEvent.toString());
+        if (methodname.equals(this.runningTestName)) {
+            this.exitTest(connection, methodExitEvent.thread(), className + "." + methodname);
+        }
+        if (this.inTest()) {
+            handleMethodExitEventInTest(methodExitEvent.thread(), className + "." + methodname, className);
+        }
+    }
+
+    private void handleMethodExitEventInTest(final ThreadReference thread,
+                                             final String fqMethodname,
+                                             final String className) {
+        if (!className.startsWith(JUNIT_CLASS_PREFIX)) {
+            this.testStack.removeFirst();
+            long now = System.nanoTime();
+            this.methodTimer.exit(now, this.eventCount, this.testMeasurement);
+            this.traceEventSink.methodExited(fqMethodname, thread.uniqueID(), now);
+            this.testMeasurement.getTrace().add("Exit: " + fqMethodname + ":(" + (testStack.size()) + ")");
+        }
+    }
+
+
+    /**
+     * Suspends the running thread if it is still running.
+     *
+     * @param thread the thread to suspend.
+     */
+    private void suspendIfRequired(final ThreadReference thread) {
+        if (!thread.isSuspended()) {
+            thread.suspend();
+        }
+    }
+
+    /**
+     * Handle test entry events.
+     *
+     * @param connection the connection.
+     * @param event      the event.
+     * @param methodName the method entered.
+     */
+    private void handleTestEntry(final Connection connection,
+                                 final MethodEntryEvent event,
+                                 final String methodName) {
+        this.runningTestName = methodName;
+        String className = this.testClassDataObj.getTestClassName();
+        this.log.info("Analysing Test: "
+                + className
+                + "."
+                + this.runningTestName);
+        this.testMeasurement = new TestMeasurement(
+                this.runningTestName, className
+        );
+        this.traceEventSink.testStarted(className + "." + this.runningTestName,
+                event.thread().uniqueID(), System.nanoTime());
+        this.testStartSample = this.sampleThread(connection, event.thread());
+        this.testStartEvents = this.eventCount;
+        this.blockedMonitors.clear();
+        this.blockedSince.clear();
+        this.waitedMonitors.clear();
+        this.waitingSince.clear();
+        connection.enableMethodExitRequest();
+    }
+
+    /**
+     * Handles the end of the tracing overhead calibration.
+     *
+     * @param connection the connection.
+     * @param event      the exit event of the calibration.
+     */
+    private void handleCalibration(final Connection connection, final MethodExitEvent event) {
+        long[] cost = connection.readCalibration(event);
+        this.methodTimer.setEventCost(cost[ThreadSampler.WALL_CLOCK]);
+        this.cpuEventCost = Math.max(0, cost[ThreadSampler.CPU]);
+        this.log.info("Calibrated tracing overhead: "
+                + cost[ThreadSampler.WALL_CLOCK] + "ns wall clock, "
+                + this.cpuEventCost + "ns cpu per event");
+    }
+
+    /**
+     * Samples the clocks of the test thread.
+     *
+     * @param connection the connection.
+     * @param thread     the test thread, suspended by an event.
+     * @return the sample, or null if the thread cannot be sampled.
+     */
+    private long[] sampleThread(final Connection connection, final ThreadReference thread) {
+        try {
+            return connection.sampleThread(thread);
+        } catch (InvocationException | IncompatibleThreadStateException
+                | InvalidTypeException | ClassNotLoadedException e) {
+            this.log.debug(e);
+            return null;
+        }
+    }
+
+    /**
+     * Handles a method entry event.
+     * Counts methods entered and classes constructed.
+     * <br>
+     * <p>
+     * If the test throws an exception (even an expected exception)
+     * it does not exit normally (in junit4) and
+     * trigger a MethodExitEvent so we need to check for the
+     * fireTest and fail methods of junit instead.
+     * </p>
+     *
+     * @param connection The connection.
+     * @param thread     The thread entering the method.
+     * @param methodName The name of the method entered.
+     * @param className  The name of the class the method belongs to.
+     */
+    private void handleMethodEntryWhileInTestExecution(
+            final Connection connection,
+            final ThreadReference thread,
+            final String methodName,
+            final String className) {
+        String fullyQualifiedMethodName = className + "." + methodName;
+        if (!className.startsWith(JUNIT_CLASS_PREFIX)) {
+            this.testMeasurement.getTrace().add("Entry: " + fullyQualifiedMethodName + ":(" + (testStack.size()) + ")");
+            this.testStack.addFirst(className);
+            long now = System.nanoTime();
+            this.methodTimer.enter(fullyQualifiedMethodName, now, this.eventCount, this.testMeasurement);
+            this.traceEventSink.methodEntered(fullyQualifiedMethodName, thread.uniqueID(), now);
+        }
+
+        this.log.debug("Method execution in test:  " + fullyQualifiedMethodName);
+        int depth = testStack.size() - 1;
+        if (depth > this.testMeasurement.getMaximumStackDepth()) {
+            this.testMeasurement.setMaximumStackDepth(depth);
+        }
+        if (isTextExitMethod(methodName, className)) {
+            this.exitTest(connection, thread, fullyQualifiedMethodName);
+        } else if (isRecordableMethodCall(methodName, className)) {
+            this.incrementOrAddKey(fullyQualifiedMethodName, this.testMeasurement.getMethodCalls());
+            this.hotMethods.offer(fullyQualifiedMethodName);
+        }
+        if (isConstructor(methodName) && !className.startsWith(JUNIT_CLASS_PREFIX)) {
+            this.incrementOrAddKey(className, this.testMeasurement.getClassInitialisations());
+            this.hotClasses.offer(className);
+        }
+    }
+
+    /**
+     * Whether the method is a constructor.
+     *
+     * @param methodName the method to determine.
+     * @return whether the method is a constructor.
+     */
+    private boolean isConstructor(final String methodName) {
+        return methodName.equals(CONSTRUCTOR);
+    }
+
+    /**
+     * Should we record the method call.
+     *
+     * @param methodName the method.
+     * @param className  the class of the method.
+     * @return whether we should record the method call.
+     */
+    private boolean isRecordableMethodCall(final String methodName, final String className) {
+        return !(className.startsWith(JUNIT_CLASS_PREFIX)
+                || methodName.equals(this.runningTestName)
+                || isConstructor(methodName)
+                || methodName.equals("<clinit>"));
+    }
+
+    /**
+     * Determine if a method indicates a test is finished. Tests failing by
+     * an exception thrown in a traced class also end by the exception when
+     * exceptions are tracked.
+     *
+     * @param methodName the method tot check.
+     * @param className  the class the method belongs to.
+     * @return whether the method is an exit method.
+     */
+    private boolean isTextExitMethod(final String methodName, final String className) {
+        return (methodName.startsWith("fireTest") || methodName.startsWith("fail"))
+                && className.startsWith(JUNIT_CLASS_PREFIX);
+    }
+
+    /**
+     * Increment or add key, value to HashMap.
+     *
+     * @param keyToIncrement The item in the map to be incremented or added.
+     * @param hashMap        The map the item is in.
+     */
+    private void incrementOrAddKey(final String keyToIncrement, final HashMap<String, Long> hashMap) {
+        long val = hashMap.getOrDefault(keyToIncrement, (long) 0);
+        hashMap.put(keyToIncrement, ++val);
+    }
+
+    /**
+     * Check if a test is running.
+     *
+     * @return true if a test is running otherwise false.
+     */
+    private boolean inTest() {
+        return !this.runningTestName.isEmpty();
+    }
+
+    /**
+     * Handle exiting a test.
+     *
+     * @param connection   the connection.
+     * @param thread       the test thread, suspended by an event.
+     * @param fqMethodname fully qualified method name.
+     */
+    private void exitTest(final Connection connection, final ThreadReference thread, final String fqMethodname) {
+        long now = System.nanoTime();
+        long testTime = this.methodTimer.exitAll(now, this.eventCount, this.testMeasurement);
+        this.traceEventSink.testFinished(this.testClassDataObj.getTestClassName() + "." + this.runningTestName,
+                thread.uniqueID(), now);
+        this.recordTestTimes(connection, thread, testTime);
+        this.testMeasurement.getTrace().add("Exit: " + fqMethodname + ":(" + (testStack.size() - 1) + ")");
+        String test = this.testClassDataObj.getTestClassName() + "." + this.runningTestName;
+        RunStatistics statistics = null;
+        TestMetrics median = null;
+        if (this.iterations > 1) {
+            statistics = this.runStatistics.computeIfAbsent(test, t -> new RunStatistics(this.warmup));
+            statistics.add(this.testMeasurement);
+            if (statistics.getRuns() < this.iterations) {
+                this.log.debug("Run " + statistics.getRuns() + " of " + this.iterations + " finished: " + test);
+                this.runningTestName = EMPTY_STRING;
+                this.testStack.clear();
+                return;
+            }
+            median = statistics.toMedianMetrics(test, new HashMap<>(this.testMeasurement.getMethodCalls()));
+            this.testMeasurement.setWallClockTime(median.getWallClockTime());
+            this.testMeasurement.setCpuTime(median.getCpuTime());
+            this.testMeasurement.setAllocatedBytes(median.getAllocatedBytes());
+            this.testMeasurement.setGcCount(statistics.getMedianGcCount());
+            this.testMeasurement.setGcTime(statistics.getMedianGcTime());
+            this.testMeasurement.setLoadedClasses(statistics.getFirstRunLoadedClasses());
+        }
+        long exceptions = this.testMeasurement.getExceptionCount();
+        if (exceptions > this.exceptionThreshold) {
+            this.testMeasurement.setExceptionThresholdExceeded(true);
+            this.log.warn("Exceptions: " + test + " throws " + exceptions + " exceptions, more than "
+                    + this.exceptionThreshold);
+        }
+        this.repetitionDetector.analyse(test, this.testMeasurement.getTrace());
+        this.report.addTestMeasurement(this.testMeasurement, statistics);
+        this.metrics.add(median == null ? TestMetrics.of(this.testMeasurement) : median);
+        this.recordUsedClasses(test, this.testMeasurement);
+        this.redundancyDetector.add(this.testClassDataObj.getTestClassName() + "." + this.runningTestName,
+                this.testMeasurement.getMethodCalls().keySet(), this.testMeasurement.getClassInitialisations().keySet());
+        TestBudget budget = this.testClassDataObj.getBudget(this.runningTestName);
+        if (budget != null) {
+            this.budgetViolations.addAll(budget.check(
+                    this.testClassDataObj.getTestClassName() + "." + this.runningTestName, this.testMeasurement));
+        }
+        this.log.info("Test finished: " + this.testClassDataObj.getTestClassName() + "." + this.runningTestName);
+        this.runningTestName = EMPTY_STRING;
+        this.testStack.clear();
+    }
+
+    /**
+     * Records the classes whose methods a finished test called or whose instances it constructed.
+     *
+     * @param test the fully qualified test name.
+     * @param tm   the test measurement.
+     */
+    private void recordUsedClasses(final String test, final TestMeasurement tm) {
+        Set<String> classes = new HashSet<>(tm.getClassInitialisations().keySet());
+        for (String method : tm.getMethodCalls().keySet()) {
+            classes.add(method.substring(0, method.lastIndexOf('.')));
+        }
+        this.usedClasses.put(test, classes);
+    }
+
+    /**
+     * Records the wall clock and cpu time of the finished test,
+     * less the calibrated cost of the events seen during the test.
+     * Falls back to the traced time of the test method when the
+     * test thread cannot be sampled.
+     *
+     * @param connection the connection.
+     * @param thread     the test thread, suspended by an event.
+     * @param testTime   the traced time of the test method in nanoseconds.
+     */
+    private void recordTestTimes(final Connection connection, final ThreadReference thread, final long testTime) {
+        long[] testEndSample = this.sampleThread(connection, thread);
+        if (this.testStartSample == null || testEndSample == null) {
+            this.testMeasurement.setWallClockTime(testTime);
+            return;
+        }
+        long events = this.eventCount - this.testStartEvents;
+        this.testMeasurement.setWallClockTime(Math.max(0,
+                testEndSample[ThreadSampler.WALL_CLOCK] - this.testStartSample[ThreadSampler.WALL_CLOCK]
+                        - events * this.methodTimer.getEventCost()));
+        if (this.testStartSample[ThreadSampler.CPU] >= 0) {
+            this.testMeasurement.setCpuTime(Math.max(0,
+                    testEndSample[ThreadSampler.CPU] - this.testStartSample[ThreadSampler.CPU]
+                            - events * this.cpuEventCost));
+        }
+        this.recordTestMemory(testEndSample);
+    }
+
+    /**
+     * Records the bytes allocated by the test thread and the garbage
+     * collections during the finished test.
+     *
+     * @param testEndSample the thread sample taken when the test finished.
+     */
+    private void recordTestMemory(final long[] testEndSample) {
+        if (this.testStartSample[ThreadSampler.ALLOCATED_BYTES] >= 0) {
+            this.testMeasurement.setAllocatedBytes(Math.max(0,
+                    testEndSample[ThreadSampler.ALLOCATED_BYTES]
+                            - this.testStartSample[ThreadSampler.ALLOCATED_BYTES]));
+        }
+        this.testMeasurement.setGcCount(
+                testEndSample[ThreadSampler.GC_COUNT] - this.testStartSample[ThreadSampler.GC_COUNT]);
+        this.testMeasurement.setGcTime(
+                testEndSample[ThreadSampler.GC_TIME] - this.testStartSample[ThreadSampler.GC_TIME]);
+    }
+
+    /**
+     * Method to read the output and error streams from the launched VM and
+     * return it as a string.
+     *
+     * @param connection The connection to read from.
+     * @return the output string from the test runner.
+     * @throws IOException If the test runner output streams cannot be read.
+     */
+    private String readOutAndErrStreams(final Connection connection) throws IOException {
+        Process process = connection.getVm().process();
+        if (process == null) {
+            // Attached VMs write to their own streams.
+            return EMPTY_STRING;
+        }
+        InputStreamReader readerOut = new InputStreamReader(process.getInputStream());
+        InputStreamReader readerErr = new InputStreamReader(process.getErrorStream());
+        StringBuilder testRunnerOutput = new StringBuilder();
+        String lineSeparator = System.lineSeparator();
+        if (readerOut.ready()) {
+            testRunnerOutput.append(streamToString(readerOut)).append(lineSeparator);
+        }
+        if (readerErr.ready()) {
+            testRunnerOutput.append(streamToString(readerErr)).append(lineSeparator);
+        }
+        return testRunnerOutput.toString();
+    }
+
+    /**
+     * Reads a char stream to a string.
+     *
+     * @param reader The stream to read from.
+     * @return The converted string.
+     * @throws IOException If an IO exception occurs.
+     */
+    private String streamToString(final InputStreamReader reader) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int charsInBuffer = reader.read(buffer);
+        return new String(buffer, 0, charsInBuffer);
+    }
+}
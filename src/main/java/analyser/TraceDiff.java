@@ -0,0 +1,324 @@
+package analyser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aligned difference of the traces of two runs of a test.
+ * <br>
+ * <p>
+ * The steps are interned to ids, ignoring their depth so that a call moved
+ * under a new caller still aligns, and the shortest edit script between the
+ * two id sequences is found with the linear space refinement of Myers'
+ * O(ND) algorithm: the middle snake of the edit graph is found by searching
+ * from both ends at once and the two halves are diffed in turn, so only
+ * two vectors of the combined trace length are held. The steps left
+ * unmatched are then grouped into the call subtrees removed from the base
+ * run and inserted in the current run.
+ * </p>
+ */
+final class TraceDiff {
+
+    /**
+     * The call subtrees of a method inserted or removed.
+     */
+    static final class Change {
+
+        /**
+         * The number of subtrees.
+         */
+        private long subtrees;
+
+        /**
+         * The calls in the subtrees, nested calls included.
+         */
+        private long calls;
+
+        /**
+         * Gets the number of subtrees.
+         *
+         * @return the subtrees.
+         */
+        long getSubtrees() {
+            return this.subtrees;
+        }
+
+        /**
+         * Gets the calls in the subtrees, nested calls included.
+         *
+         * @return the calls.
+         */
+        long getCalls() {
+            return this.calls;
+        }
+    }
+
+    /**
+     * Initial capacity of the step ids of a trace.
+     */
+    private static final int INITIAL_STEPS = 1024;
+
+    /**
+     * Step ids of the base run.
+     */
+    private final int[] base;
+
+    /**
+     * Step ids of the current run.
+     */
+    private final int[] current;
+
+    /**
+     * Steps by id.
+     */
+    private final String[] steps;
+
+    /**
+     * Steps of the base run left unmatched.
+     */
+    private final BitSet removed = new BitSet();
+
+    /**
+     * Steps of the current run left unmatched.
+     */
+    private final BitSet inserted = new BitSet();
+
+    /**
+     * Furthest reaching forward paths by diagonal.
+     */
+    private final int[] forward;
+
+    /**
+     * Furthest reaching backward paths by diagonal.
+     */
+    private final int[] backward;
+
+    /**
+     * Index of diagonal 0 in the path vectors.
+     */
+    private final int middle;
+
+    /**
+     * Diffs the traces of two runs of a test.
+     *
+     * @param baseTrace    the trace of the base run.
+     * @param currentTrace the trace of the current run.
+     */
+    TraceDiff(final Iterable<String> baseTrace, final Iterable<String> currentTrace) {
+        Map<String, Integer> ids = new HashMap<>();
+        this.base = intern(baseTrace, ids);
+        this.current = intern(currentTrace, ids);
+        this.steps = new String[ids.size()];
+        for (Map.Entry<String, Integer> id : ids.entrySet()) {
+            this.steps[id.getValue()] = id.getKey();
+        }
+        this.middle = this.base.length + this.current.length + 2;
+        this.forward = new int[2 * this.middle + 1];
+        this.backward = new int[2 * this.middle + 1];
+        this.compare(0, this.base.length, 0, this.current.length);
+    }
+
+    /**
+     * Gets the number of steps of the base run.
+     *
+     * @return the base length.
+     */
+    int getBaseLength() {
+        return this.base.length;
+    }
+
+    /**
+     * Gets the number of steps of the current run.
+     *
+     * @return the current length.
+     */
+    int getCurrentLength() {
+        return this.current.length;
+    }
+
+    /**
+     * Gets the number of steps of the base run left unmatched.
+     *
+     * @return the removed steps.
+     */
+    int getRemovedSteps() {
+        return this.removed.cardinality();
+    }
+
+    /**
+     * Gets the number of steps of the current run left unmatched.
+     *
+     * @return the inserted steps.
+     */
+    int getInsertedSteps() {
+        return this.inserted.cardinality();
+    }
+
+    /**
+     * Gets the call subtrees removed from the base run.
+     *
+     * @return the changes by the method at the root of the subtrees.
+     */
+    Map<String, Change> getRemoved() {
+        return this.subtrees(this.base, this.removed);
+    }
+
+    /**
+     * Gets the call subtrees inserted in the current run.
+     *
+     * @return the changes by the method at the root of the subtrees.
+     */
+    Map<String, Change> getInserted() {
+        return this.subtrees(this.current, this.inserted);
+    }
+
+    /**
+     * Groups runs of unmatched steps into call subtrees. A subtree starts at
+     * an entry outside any other unmatched call and ends at its exit, or at
+     * the end of the run when its exit was matched.
+     *
+     * @param trace     the step ids.
+     * @param unmatched the unmatched steps.
+     * @return the changes by the method at the root of the subtrees.
+     */
+    private Map<String, Change> subtrees(final int[] trace, final BitSet unmatched) {
+        Map<String, Change> changes = new TreeMap<>();
+        int start = unmatched.nextSetBit(0);
+        while (start >= 0) {
+            int end = unmatched.nextClearBit(start);
+            int open = 0;
+            Change change = null;
+            for (int i = start; i < end; i++) {
+                String step = this.steps[trace[i]];
+                if (step.startsWith(FoldedTrace.ENTRY)) {
+                    if (open++ == 0) {
+                        change = changes.computeIfAbsent(step.substring(FoldedTrace.ENTRY.length()),
+                                m -> new Change());
+                        change.subtrees++;
+                    }
+                    change.calls++;
+                } else if (step.startsWith(FoldedTrace.EXIT) && open > 0) {
+                    open--;
+                }
+            }
+            start = unmatched.nextSetBit(end);
+        }
+        return changes;
+    }
+
+    /**
+     * Finds the shortest edit script between two ranges of the runs.
+     *
+     * @param baseFrom    the start of the base range.
+     * @param baseTo      the end of the base range.
+     * @param currentFrom the start of the current range.
+     * @param currentTo   the end of the current range.
+     */
+    private void compare(final int baseFrom, final int baseTo, final int currentFrom, final int currentTo) {
+        int aFrom = baseFrom;
+        int aTo = baseTo;
+        int bFrom = currentFrom;
+        int bTo = currentTo;
+        while (aFrom < aTo && bFrom < bTo && this.base[aFrom] == this.current[bFrom]) {
+            aFrom++;
+            bFrom++;
+        }
+        while (aFrom < aTo && bFrom < bTo && this.base[aTo - 1] == this.current[bTo - 1]) {
+            aTo--;
+            bTo--;
+        }
+        if (aFrom == aTo) {
+            this.inserted.set(bFrom, bTo);
+        } else if (bFrom == bTo) {
+            this.removed.set(aFrom, aTo);
+        } else {
+            int[] snake = this.middleSnake(aFrom, aTo, bFrom, bTo);
+            this.compare(aFrom, snake[0], bFrom, snake[1]);
+            this.compare(snake[2], aTo, snake[3], bTo);
+        }
+    }
+
+    /**
+     * Finds the middle snake of the edit graph of two ranges, the diagonal
+     * run where the furthest reaching forward and backward paths meet.
+     *
+     * @param aFrom the start of the base range.
+     * @param aTo   the end of the base range.
+     * @param bFrom the start of the current range.
+     * @param bTo   the end of the current range.
+     * @return the base and current positions of the start and end of the snake.
+     */
+    private int[] middleSnake(final int aFrom, final int aTo, final int bFrom, final int bTo) {
+        int n = aTo - aFrom;
+        int m = bTo - bFrom;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int mid = this.middle;
+        this.forward[mid + 1] = 0;
+        this.backward[mid + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && this.forward[mid + k - 1] < this.forward[mid + k + 1])
+                        ? this.forward[mid + k + 1] : this.forward[mid + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && this.base[aFrom + x] == this.current[bFrom + y]) {
+                    x++;
+                    y++;
+                }
+                this.forward[mid + k] = x;
+                int reverse = delta - k;
+                if (odd && reverse >= -(d - 1) && reverse <= d - 1 && x + this.backward[mid + reverse] >= n) {
+                    return new int[] {aFrom + startX, bFrom + startY, aFrom + x, bFrom + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && this.backward[mid + k - 1] < this.backward[mid + k + 1])
+                        ? this.backward[mid + k + 1] : this.backward[mid + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && this.base[aTo - 1 - x] == this.current[bTo - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                this.backward[mid + k] = x;
+                int ahead = delta - k;
+                if (!odd && ahead >= -d && ahead <= d && x + this.forward[mid + ahead] >= n) {
+                    return new int[] {aTo - x, bTo - y, aTo - startX, bTo - startY};
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake between " + n + " and " + m + " steps");
+    }
+
+    /**
+     * Interns the steps of a trace, ignoring their depth.
+     *
+     * @param trace the trace.
+     * @param ids   the ids by step, added to.
+     * @return the step ids.
+     */
+    private static int[] intern(final Iterable<String> trace, final Map<String, Integer> ids) {
+        int[] interned = new int[INITIAL_STEPS];
+        int size = 0;
+        for (String step : trace) {
+            int depth = step.lastIndexOf(":(");
+            String key = depth < 0 ? step : step.substring(0, depth);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                ids.put(key, id);
+            }
+            if (size == interned.length) {
+                interned = Arrays.copyOf(interned, size * 2);
+            }
+            interned[size++] = id;
+        }
+        return Arrays.copyOf(interned, size);
+    }
+}
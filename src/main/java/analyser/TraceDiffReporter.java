@@ -0,0 +1,213 @@
+package analyser;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Diffs the traces of the tests in two reports, reporting the call subtrees
+ * inserted and removed and the change in the calls of each method.
+ */
+@Mojo(name = "diff-traces")
+public class TraceDiffReporter extends AbstractMojo {
+
+    /**
+     * The report of the base run.
+     */
+    @Parameter(property = "analyser.baseReport", required = true)
+    private File baseReport;
+
+    /**
+     * The report of the current run.
+     */
+    @Parameter(property = "analyser.reportFile", defaultValue = ReportParser.REPORT_PATH)
+    private File reportFile;
+
+    /**
+     * The file to write the differences to.
+     */
+    @Parameter(property = "analyser.diffFile", defaultValue = "${project.build.directory}/testAnalyserDiff.xml")
+    private File diffFile;
+
+    /**
+     * Diffs the tests found in both reports.
+     *
+     * @throws MojoExecutionException if a report cannot be read or the differences cannot be written.
+     */
+    public final void execute() throws MojoExecutionException {
+        Map<String, Element> baseTests = readTests(this.baseReport);
+        Map<String, Element> tests = readTests(this.reportFile);
+        String separator = System.lineSeparator();
+        int changed = 0;
+        try (Writer writer = Files.newBufferedWriter(this.diffFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + separator);
+            writer.write("<TraceDiff base=\"" + escape(this.baseReport.getPath())
+                    + "\" report=\"" + escape(this.reportFile.getPath()) + "\">" + separator);
+            for (Map.Entry<String, Element> test : tests.entrySet()) {
+                Element baseTest = baseTests.get(test.getKey());
+                if (baseTest == null) {
+                    getLog().info("Only in " + this.reportFile + ": " + test.getKey());
+                    continue;
+                }
+                TraceDiff diff = new TraceDiff(readTrace(baseTest), readTrace(test.getValue()));
+                Map<String, long[]> counts = countChanges(baseTest, test.getValue());
+                if (diff.getRemovedSteps() == 0 && diff.getInsertedSteps() == 0 && counts.isEmpty()) {
+                    continue;
+                }
+                changed++;
+                getLog().info(test.getKey() + ": " + diff.getRemovedSteps() + " steps removed, "
+                        + diff.getInsertedSteps() + " steps inserted");
+                writer.write(getTestDiff(test.getValue(), diff, counts, separator));
+            }
+            for (String test : baseTests.keySet()) {
+                if (!tests.containsKey(test)) {
+                    getLog().info("Only in " + this.baseReport + ": " + test);
+                }
+            }
+            writer.write("</TraceDiff>" + separator);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write " + this.diffFile, e);
+        }
+        getLog().info(changed + " tests differ, written to " + this.diffFile);
+    }
+
+    /**
+     * Builds the difference element of a test.
+     *
+     * @param test      the test element of the current run.
+     * @param diff      the trace difference.
+     * @param counts    the calls before and after by method.
+     * @param separator the line separator.
+     * @return the element.
+     */
+    private String getTestDiff(final Element test, final TraceDiff diff, final Map<String, long[]> counts,
+                               final String separator) {
+        StringBuilder element = new StringBuilder();
+        element.append("  <TestDiff baseLength=\"").append(diff.getBaseLength())
+                .append("\" class=\"").append(escape(test.getAttribute("class")))
+                .append("\" insertedSteps=\"").append(diff.getInsertedSteps())
+                .append("\" length=\"").append(diff.getCurrentLength())
+                .append("\" name=\"").append(escape(test.getAttribute("name")))
+                .append("\" removedSteps=\"").append(diff.getRemovedSteps())
+                .append("\">").append(separator);
+        for (Map.Entry<String, TraceDiff.Change> change : diff.getInserted().entrySet()) {
+            appendChange(element, "Inserted", change, separator);
+        }
+        for (Map.Entry<String, TraceDiff.Change> change : diff.getRemoved().entrySet()) {
+            appendChange(element, "Removed", change, separator);
+        }
+        for (Map.Entry<String, long[]> count : counts.entrySet()) {
+            element.append("     <CallCount after=\"").append(count.getValue()[1])
+                    .append("\" before=\"").append(count.getValue()[0])
+                    .append("\" method=\"").append(escape(count.getKey()))
+                    .append("\"/>").append(separator);
+        }
+        element.append("  </TestDiff>").append(separator);
+        return element.toString();
+    }
+
+    private static void appendChange(final StringBuilder element, final String tag,
+                                     final Map.Entry<String, TraceDiff.Change> change, final String separator) {
+        element.append("     <").append(tag)
+                .append(" calls=\"").append(change.getValue().getCalls())
+                .append("\" method=\"").append(escape(change.getKey()))
+                .append("\" subtrees=\"").append(change.getValue().getSubtrees())
+                .append("\"/>").append(separator);
+    }
+
+    /**
+     * Compares the calls of each method in two runs of a test.
+     *
+     * @param baseTest the test element of the base run.
+     * @param test     the test element of the current run.
+     * @return the calls before and after of the methods whose calls changed.
+     */
+    private static Map<String, long[]> countChanges(final Element baseTest, final Element test) {
+        Map<String, Long> before = readMethodCalls(baseTest);
+        Map<String, Long> after = readMethodCalls(test);
+        Map<String, long[]> changes = new LinkedHashMap<>();
+        TreeSet<String> methods = new TreeSet<>(before.keySet());
+        methods.addAll(after.keySet());
+        for (String method : methods) {
+            long beforeCalls = before.getOrDefault(method, 0L);
+            long afterCalls = after.getOrDefault(method, 0L);
+            if (beforeCalls != afterCalls) {
+                changes.put(method, new long[] {beforeCalls, afterCalls});
+            }
+        }
+        return changes;
+    }
+
+    private static Map<String, Long> readMethodCalls(final Element test) {
+        Map<String, Long> calls = new HashMap<>();
+        NodeList methodsCalled = test.getElementsByTagName("MethodsCalled");
+        if (methodsCalled.getLength() == 0) {
+            return calls;
+        }
+        NodeList methods = ((Element) methodsCalled.item(0)).getElementsByTagName("Method");
+        for (int i = 0; i < methods.getLength(); i++) {
+            Element method = (Element) methods.item(i);
+            calls.put(method.getAttribute("name"), Long.parseLong(method.getAttribute("calls")));
+        }
+        return calls;
+    }
+
+    private static FoldedTrace readTrace(final Element test) {
+        FoldedTrace trace = new FoldedTrace();
+        NodeList traces = test.getElementsByTagName("Trace");
+        if (traces.getLength() > 0) {
+            ReportParser.readTrace((Element) traces.item(0), trace);
+        }
+        return trace;
+    }
+
+    /**
+     * Reads the test elements of a report.
+     *
+     * @param report the report.
+     * @return the test elements by fully qualified test name.
+     * @throws MojoExecutionException if the report cannot be read.
+     */
+    private static Map<String, Element> readTests(final File report) throws MojoExecutionException {
+        Map<String, Element> tests = new LinkedHashMap<>();
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+            NodeList nodes = doc.getElementsByTagName("Test");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    Element test = (Element) node;
+                    tests.put(test.getAttribute("class") + "." + test.getAttribute("name"), test);
+                }
+            }
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            throw new MojoExecutionException("Cannot read report " + report, e);
+        }
+        return tests;
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,66 @@
+package analyser;
+
+/**
+ * Receives the test and method events of the running tests as
+ * they are collected, for exporting timelines of the test execution.
+ * Timestamps are debugger side {@link System#nanoTime()} readings.
+ */
+interface TraceEventSink {
+
+    /**
+     * A sink discarding every event.
+     */
+    TraceEventSink NONE = new TraceEventSink() {
+    };
+
+    /**
+     * Called when a test starts.
+     *
+     * @param test     the fully qualified test name.
+     * @param threadId the id of the test thread.
+     * @param nanos    the time of the event in nanoseconds.
+     */
+    default void testStarted(String test, long threadId, long nanos) {
+        // ignored
+    }
+
+    /**
+     * Called when a method is entered during a test.
+     *
+     * @param method   the fully qualified method name.
+     * @param threadId the id of the calling thread.
+     * @param nanos    the time of the event in nanoseconds.
+     */
+    default void methodEntered(String method, long threadId, long nanos) {
+        // ignored
+    }
+
+    /**
+     * Called when a method exits during a test.
+     *
+     * @param method   the fully qualified method name.
+     * @param threadId the id of the calling thread.
+     * @param nanos    the time of the event in nanoseconds.
+     */
+    default void methodExited(String method, long threadId, long nanos) {
+        // ignored
+    }
+
+    /**
+     * Called when a test finishes, closing any methods still running.
+     *
+     * @param test     the fully qualified test name.
+     * @param threadId the id of the test thread.
+     * @param nanos    the time of the event in nanoseconds.
+     */
+    default void testFinished(String test, long threadId, long nanos) {
+        // ignored
+    }
+
+    /**
+     * Flushes and closes the sink.
+     */
+    default void close() {
+        // ignored
+    }
+}
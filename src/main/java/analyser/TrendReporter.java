@@ -0,0 +1,85 @@
+package analyser;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the trend of a test metric over the builds recorded in the history store.
+ */
+@Mojo(name = "trend")
+public class TrendReporter extends AbstractMojo {
+
+    /**
+     * The project under test.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject mavenProject;
+
+    /**
+     * The history store directory.
+     */
+    @Parameter(property = "analyser.historyDirectory", defaultValue = "${project.basedir}/.analyser/history")
+    private File historyDirectory;
+
+    /**
+     * The metric to draw.
+     */
+    @Parameter(property = "analyser.trendMetric", defaultValue = "totalMethodCalls")
+    private String metric;
+
+    /**
+     * The number of latest builds to draw.
+     */
+    @Parameter(property = "analyser.trendBuilds", defaultValue = "20")
+    private int builds;
+
+    /**
+     * Draws a trend chart per test class.
+     *
+     * @throws MojoExecutionException if the metric is unknown or the history cannot be read.
+     */
+    public final void execute() throws MojoExecutionException {
+        int metricIndex = Arrays.asList(TestMetrics.VALUE_NAMES).indexOf(this.metric);
+        if (metricIndex < 0) {
+            throw new MojoExecutionException("Unknown metric " + this.metric + ", expected one of "
+                    + String.join(", ", TestMetrics.VALUE_NAMES));
+        }
+        MetricsHistory history;
+        try {
+            history = new MetricsHistory(this.historyDirectory).open();
+        } catch (IOException | RuntimeException e) {
+            throw new MojoExecutionException("Cannot read history " + this.historyDirectory, e);
+        }
+        int toBuild = history.getBuildCount();
+        int fromBuild = Math.max(0, toBuild - this.builds);
+        getLog().info("Drawing " + this.metric + " for builds " + (fromBuild + 1) + " to " + toBuild);
+        Map<String, Map<String, long[][]>> classes = new HashMap<>();
+        try {
+            for (String test : history.getTests()) {
+                long[][] series = history.query(test, metricIndex, fromBuild, toBuild);
+                String className = test.substring(0, test.lastIndexOf('.'));
+                classes.computeIfAbsent(className, c -> new HashMap<>())
+                        .put(test.substring(test.lastIndexOf('.') + 1), series);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot read history " + this.historyDirectory, e);
+        }
+        ChartDrawer drawer = new ChartDrawer(new File(this.mavenProject.getBuild().getDirectory(), ChartDrawer.OUTPUT_DIRECTORY));
+        for (Map.Entry<String, Map<String, long[][]>> testClass : classes.entrySet()) {
+            String className = testClass.getKey();
+            int packageEnd = className.lastIndexOf('.');
+            String packageName = packageEnd < 0 ? "" : className.substring(0, packageEnd);
+            drawer.drawTrendChart(packageName, className.substring(packageEnd + 1), this.metric, testClass.getValue());
+        }
+        getLog().info("Drew trends of " + history.getTests().size() + " tests in " + classes.size() + " classes");
+    }
+}
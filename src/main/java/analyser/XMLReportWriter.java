@@ -2,10 +2,23 @@ package analyser;
 
 import org.apache.maven.project.MavenProject;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Create an xml report from the test measurements
@@ -22,6 +35,12 @@ public final class XMLReportWriter {
      * Output file name.
      */
     private static final String OUTPUT_FILE_NAME = "testAnalyserReport.xml";
+
+    /**
+     * Matches the class attribute of a test element.
+     */
+    private static final Pattern CLASS_ATTRIBUTE = Pattern.compile(" class=\"([^\"]*)\"");
+
     /**
      * The project under test.
      */
@@ -45,8 +64,9 @@ public final class XMLReportWriter {
 
     XMLReportWriter(final MavenProject project) {
         this.mavenProject = project;
-        this.outputfile = new File(OUTPUT_FILE_NAME);
+        this.outputfile = new File(project.getBuild().getDirectory(), OUTPUT_FILE_NAME);
         this.separator = System.lineSeparator();
+        this.outputfile.getParentFile().mkdirs();
         try {
             this.writer = new FileWriter(this.outputfile, false);
         } catch (IOException e) {
@@ -75,9 +95,19 @@ public final class XMLReportWriter {
      * @param tm the test measurements to add to the report.
      */
     public void addTestMeasurement(final TestMeasurement tm) {
+        this.addTestMeasurement(tm, null);
+    }
+
+    /**
+     * Adds a test run repeatedly to the report, with the statistics of its runs.
+     *
+     * @param tm         the test measurements of the last run to add to the report.
+     * @param statistics the statistics of the runs, null if run once.
+     */
+    void addTestMeasurement(final TestMeasurement tm, final RunStatistics statistics) {
         try {
             this.writer = new FileWriter(this.outputfile, true);
-            String testNode = this.measurementToNode(tm);
+            String testNode = this.measurementToNode(tm, statistics);
             writer.write(testNode);
             writer.close();
 
@@ -86,6 +116,110 @@ public final class XMLReportWriter {
         }
     }
 
+    /**
+     * Copies the test elements of the given test classes from a previous report,
+     * a line at a time, and reads back the measurements of the tests copied.
+     *
+     * @param previousReport the previous report.
+     * @param testClasses    the test class names.
+     * @return the measurements of the tests copied, empty if the report does not exist.
+     * @throws IOException if the previous report cannot be read or the report written.
+     */
+    List<TestMeasurement> copyTestElements(final File previousReport, final Set<String> testClasses)
+            throws IOException {
+        List<TestMeasurement> copied = new ArrayList<>();
+        if (!previousReport.isFile()) {
+            return copied;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(previousReport.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter out = new BufferedWriter(new FileWriter(this.outputfile, true))) {
+            StringBuilder test = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String element = line.trim();
+                if (element.startsWith("<Test ")) {
+                    Matcher testClass = CLASS_ATTRIBUTE.matcher(element);
+                    test = testClass.find() && testClasses.contains(testClass.group(1)) ? new StringBuilder() : null;
+                }
+                if (test != null) {
+                    out.write(line);
+                    out.write(this.separator);
+                    test.append(line).append(this.separator);
+                    if (element.equals("</Test>")) {
+                        copied.add(ReportParser.readTestMeasurement(test.toString()));
+                        test = null;
+                    }
+                }
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Adds the suite summary to the report.
+     *
+     * @param hotMethods the most called methods across the suite.
+     * @param hotClasses the most constructed classes across the suite.
+     * @param patterns   the call patterns repeated back to back.
+     * @param clusters   the groups of tests with near identical footprints.
+     * @param loads      the classes loaded outside the tests, by test class or scope.
+     */
+    void addSuiteSummary(final List<SpaceSaving.Entry> hotMethods, final List<SpaceSaving.Entry> hotClasses,
+                         final List<RepetitionDetector.Finding> patterns,
+                         final List<RedundancyDetector.Cluster> clusters,
+                         final Map<String, List<String>> loads) {
+        StringBuilder summary = new StringBuilder();
+        summary.append("  <SuiteSummary>").append(separator);
+        summary.append("     <HotMethods count=\"").append(hotMethods.size()).append("\">").append(separator);
+        for (SpaceSaving.Entry entry : hotMethods) {
+            summary.append(getHotSpotElement("Method", entry));
+        }
+        summary.append("     </HotMethods>").append(separator);
+        summary.append("     <HotClasses count=\"").append(hotClasses.size()).append("\">").append(separator);
+        for (SpaceSaving.Entry entry : hotClasses) {
+            summary.append(getHotSpotElement("Class", entry));
+        }
+        summary.append("     </HotClasses>").append(separator);
+        summary.append("     <RepeatedPatterns count=\"").append(patterns.size()).append("\">").append(separator);
+        for (RepetitionDetector.Finding finding : patterns) {
+            summary.append("          <Pattern caller=\"").append(escape(finding.getCaller()))
+                    .append("\" calls=\"").append(finding.getCalls())
+                    .append("\" maxRepetitions=\"").append(finding.getMaximumRepetitions())
+                    .append("\" methods=\"").append(escape(finding.getPattern()))
+                    .append("\" repetitions=\"").append(finding.getTotalRepetitions())
+                    .append("\" runs=\"").append(finding.getRuns())
+                    .append("\">").append(separator);
+            for (String test : finding.getTests()) {
+                summary.append("              <Occurrence test=\"").append(escape(test)).append("\"/>").append(separator);
+            }
+            summary.append("          </Pattern>").append(separator);
+        }
+        summary.append("     </RepeatedPatterns>").append(separator);
+        summary.append("     <RedundantTests count=\"").append(clusters.size()).append("\">").append(separator);
+        for (RedundancyDetector.Cluster cluster : clusters) {
+            summary.append("          <Cluster similarity=\"")
+                    .append(String.format(Locale.ROOT, "%.3f", cluster.getSimilarity()))
+                    .append("\" tests=\"").append(cluster.getTests().size())
+                    .append("\">").append(separator);
+            for (String test : cluster.getTests()) {
+                summary.append("              <Occurrence test=\"").append(escape(test)).append("\"/>").append(separator);
+            }
+            summary.append("          </Cluster>").append(separator);
+        }
+        summary.append("     </RedundantTests>").append(separator);
+        if (!loads.isEmpty()) {
+            appendClassLoadsOutsideTests(summary, loads);
+        }
+        summary.append("  </SuiteSummary>").append(separator);
+        try {
+            this.writer = new FileWriter(this.outputfile, true);
+            writer.write(summary.toString());
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Closes the xml report.
      */
@@ -100,7 +234,7 @@ public final class XMLReportWriter {
         }
     }
 
-    private String measurementToNode(final TestMeasurement tm) {
+    private String measurementToNode(final TestMeasurement tm, final RunStatistics statistics) {
         StringBuilder test = new StringBuilder();
         String testElement = getTestElement(tm);
         test.append(testElement);
@@ -109,7 +243,7 @@ public final class XMLReportWriter {
         String methods = getMethodsElement(tm);
         test.append(methods);
         for (Map.Entry<String, Long> entry : tm.getMethodCalls().entrySet()) {
-            String method = getMethodElement(entry);
+            String method = getMethodElement(entry, tm);
             test.append(method);
         }
         test.append("     </MethodsCalled>" + separator);
@@ -120,17 +254,240 @@ public final class XMLReportWriter {
             test.append(clazz);
         }
         test.append("     </ClassesInitialised>" + separator);
+        if (!tm.getLoadedClasses().isEmpty()) {
+            appendLoadedClasses(test, tm.getLoadedClasses());
+        }
+        if (!tm.getMonitorContentions().isEmpty()) {
+            appendMonitorContentions(test, tm.getMonitorContentions());
+        }
+        if (!tm.getExceptions().isEmpty()) {
+            appendExceptions(test, tm);
+        }
+        appendCallTree(test, tm.getCallTree());
         String trace = getTraceElement(tm);
         test.append(trace);
-        for (String traceline : tm.getTrace()) {
-            String traceLineElement = getTraceLine(traceline);
-            test.append(traceLineElement);
-        }
+        appendTraceLines(test, tm.getTrace());
         test.append("     </Trace>").append(separator);
+        if (statistics != null) {
+            appendStatistics(test, statistics);
+        }
         test.append("  </Test>").append(separator);
         return test.toString();
     }
 
+    /**
+     * Appends the classes loaded for the first time during a test.
+     *
+     * @param test          the test element.
+     * @param loadedClasses the class names, in load order.
+     */
+    private void appendLoadedClasses(final StringBuilder test, final List<String> loadedClasses) {
+        test.append("     <ClassesLoaded total=\"").append(loadedClasses.size()).append("\">").append(separator);
+        for (String loaded : loadedClasses) {
+            test.append("          <LoadedClass name=\"").append(escape(loaded)).append("\"/>").append(separator);
+        }
+        test.append("     </ClassesLoaded>").append(separator);
+    }
+
+    /**
+     * Appends the classes loaded outside the tests, by test class or scope.
+     *
+     * @param summary the suite summary element.
+     * @param loads   the class names in load order, by test class or scope.
+     */
+    private void appendClassLoadsOutsideTests(final StringBuilder summary, final Map<String, List<String>> loads) {
+        long total = 0;
+        for (List<String> classes : loads.values()) {
+            total += classes.size();
+        }
+        summary.append("     <ClassesLoadedOutsideTests total=\"").append(total).append("\">").append(separator);
+        for (Map.Entry<String, List<String>> scope : loads.entrySet()) {
+            summary.append("          <Scope name=\"").append(escape(scope.getKey()))
+                    .append("\" total=\"").append(scope.getValue().size())
+                    .append("\">").append(separator);
+            for (String loaded : scope.getValue()) {
+                summary.append("              <LoadedClass name=\"").append(escape(loaded)).append("\"/>")
+                        .append(separator);
+            }
+            summary.append("          </Scope>").append(separator);
+        }
+        summary.append("     </ClassesLoadedOutsideTests>").append(separator);
+    }
+
+    /**
+     * Appends the exceptions thrown during a test, by exception type and throwing method.
+     *
+     * @param test the test element.
+     * @param tm   the test measurement.
+     */
+    private void appendExceptions(final StringBuilder test, final TestMeasurement tm) {
+        test.append("     <ExceptionsThrown overThreshold=\"").append(tm.isExceptionThresholdExceeded())
+                .append("\" total=\"").append(tm.getExceptionCount())
+                .append("\">").append(separator);
+        for (Map.Entry<String, Map<String, Long>> type : tm.getExceptions().entrySet()) {
+            for (Map.Entry<String, Long> method : type.getValue().entrySet()) {
+                test.append("          <Exception count=\"").append(method.getValue())
+                        .append("\" method=\"").append(escape(method.getKey()))
+                        .append("\" type=\"").append(escape(type.getKey()))
+                        .append("\"/>").append(separator);
+            }
+        }
+        test.append("     </ExceptionsThrown>").append(separator);
+    }
+
+    /**
+     * Appends the monitors contended and waited on during a test, with the totals.
+     *
+     * @param test        the test element.
+     * @param contentions the contention by lock class and contending method.
+     */
+    private void appendMonitorContentions(final StringBuilder test, final Collection<MonitorContention> contentions) {
+        long[] totals = new long[4];
+        StringBuilder monitors = new StringBuilder();
+        for (MonitorContention contention : contentions) {
+            totals[0] += contention.getBlockedTime();
+            totals[1] += contention.getContended();
+            totals[2] += contention.getWaitTime();
+            totals[3] += contention.getWaits();
+            monitors.append("          <Monitor blockedTime=\"").append(contention.getBlockedTime())
+                    .append("\" contended=\"").append(contention.getContended())
+                    .append("\" lock=\"").append(escape(contention.getLockClass()))
+                    .append("\" method=\"").append(escape(contention.getMethod()))
+                    .append("\" waitTime=\"").append(contention.getWaitTime())
+                    .append("\" waits=\"").append(contention.getWaits())
+                    .append("\"/>").append(separator);
+        }
+        test.append("     <MonitorContention blockedTime=\"").append(totals[0])
+                .append("\" contended=\"").append(totals[1])
+                .append("\" waitTime=\"").append(totals[2])
+                .append("\" waits=\"").append(totals[3])
+                .append("\">").append(separator)
+                .append(monitors)
+                .append("     </MonitorContention>").append(separator);
+    }
+
+    /**
+     * Appends the distribution of each metric and method time over the measured runs of a test.
+     *
+     * @param test       the test element.
+     * @param statistics the statistics of the runs.
+     */
+    private void appendStatistics(final StringBuilder test, final RunStatistics statistics) {
+        long[] minimum = statistics.getMinimum();
+        long[] median = statistics.getMedian();
+        long[] tail = statistics.getTail();
+        long[] maximum = statistics.getMaximum();
+        test.append("     <Statistics firstRunCpuTime=\"").append(statistics.getFirstRunCpuTime())
+                .append("\" firstRunWallClockTime=\"").append(statistics.getFirstRunWallClockTime())
+                .append("\" iterations=\"").append(statistics.getIterations())
+                .append("\" warmup=\"").append(statistics.getWarmup())
+                .append("\">").append(separator);
+        for (int i = 0; i < RunStatistics.METRIC_NAMES.length; i++) {
+            test.append("          <Metric max=\"").append(maximum[i])
+                    .append("\" median=\"").append(median[i])
+                    .append("\" min=\"").append(minimum[i])
+                    .append("\" name=\"").append(RunStatistics.METRIC_NAMES[i])
+                    .append("\" p95=\"").append(tail[i])
+                    .append("\"/>").append(separator);
+        }
+        for (String method : statistics.getTimedMethods()) {
+            long[] inclusive = statistics.getInclusiveTime(method);
+            long[] self = statistics.getSelfTime(method);
+            test.append("          <MethodTime inclusiveMedian=\"").append(inclusive[0])
+                    .append("\" inclusiveP95=\"").append(inclusive[1])
+                    .append("\" method=\"").append(escape(method))
+                    .append("\" selfMedian=\"").append(self[0])
+                    .append("\" selfP95=\"").append(self[1])
+                    .append("\"/>").append(separator);
+        }
+        test.append("     </Statistics>").append(separator);
+    }
+
+    /**
+     * Appends the calling context tree as nested call elements.
+     * The tree is walked without recursion as it is as deep as the test stack.
+     *
+     * @param test the test element being built.
+     * @param tree the calling context tree.
+     */
+    private void appendCallTree(final StringBuilder test, final CallingContextTree tree) {
+        test.append("     <CallTree nodes=\"").append(tree.size() - 1).append("\">").append(separator);
+        Deque<Integer> open = new ArrayDeque<>();
+        int node = tree.getFirstChild(CallingContextTree.ROOT);
+        while (node != CallingContextTree.NONE) {
+            indent(test, open.size());
+            test.append("<Call calls=\"").append(tree.getCalls(node))
+                    .append("\" method=\"").append(escape(tree.getMethod(node)))
+                    .append("\" time=\"").append(tree.getTime(node)).append("\"");
+            if (tree.getFirstChild(node) != CallingContextTree.NONE) {
+                test.append(">").append(separator);
+                open.push(node);
+                node = tree.getFirstChild(node);
+                continue;
+            }
+            test.append("/>").append(separator);
+            node = tree.getNextSibling(node);
+            while (node == CallingContextTree.NONE && !open.isEmpty()) {
+                node = tree.getNextSibling(open.pop());
+                indent(test, open.size());
+                test.append("</Call>").append(separator);
+            }
+        }
+        test.append("     </CallTree>").append(separator);
+    }
+
+    private void indent(final StringBuilder test, final int depth) {
+        test.append("          ");
+        for (int i = 0; i < depth; i++) {
+            test.append("  ");
+        }
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+
+    private String getHotSpotElement(final String element, final SpaceSaving.Entry entry) {
+        return "          <" + element + " count=\""
+                + entry.getCount()
+                + "\" error=\""
+                + entry.getError()
+                + "\" name=\""
+                + escape(entry.getName())
+                + "\"/>"
+                + separator;
+    }
+
+    /**
+     * Appends the steps of the trace, repeated calls as repeat elements.
+     *
+     * @param test  the test element being built.
+     * @param trace the folded trace.
+     */
+    private void appendTraceLines(final StringBuilder test, final FoldedTrace trace) {
+        int repeats = 0;
+        for (int i = 0; i < trace.foldedSize(); i++) {
+            int mark = trace.getMark(i);
+            if (mark == FoldedTrace.REPEAT_END) {
+                repeats--;
+            }
+            for (int r = 0; r < repeats; r++) {
+                test.append("  ");
+            }
+            if (mark == FoldedTrace.STEP) {
+                test.append(getTraceLine(trace.getStep(i)));
+            } else if (mark == FoldedTrace.REPEAT_END) {
+                test.append("          </Repeat>").append(separator);
+            } else {
+                test.append("          <Repeat count=\"").append(mark).append("\">").append(separator);
+                repeats++;
+            }
+        }
+    }
+
     private String getTraceLine(final String traceline) {
         return "          <TraceElement depth=\""
                 + traceline.substring(traceline.indexOf('(') + 1, traceline.indexOf(')'))
@@ -145,7 +502,9 @@ public final class XMLReportWriter {
     }
 
     private String getTraceElement(final TestMeasurement tm) {
-        return "     <Trace length=\""
+        return "     <Trace folded=\""
+                + tm.getTrace().foldedSize()
+                + "\" length=\""
                 + tm.getTrace().size()
                 + "\">"
                 + separator;
@@ -160,11 +519,15 @@ public final class XMLReportWriter {
                 + separator;
     }
 
-    private String getMethodElement(final Map.Entry<String, Long> entry) {
+    private String getMethodElement(final Map.Entry<String, Long> entry, final TestMeasurement tm) {
         return "          <Method calls=\""
                 + entry.getValue()
+                + "\" inclusiveTime=\""
+                + tm.getMethodInclusiveTimes().getOrDefault(entry.getKey(), 0L)
                 + "\" name=\""
                 + entry.getKey()
+                + "\" selfTime=\""
+                + tm.getMethodSelfTimes().getOrDefault(entry.getKey(), 0L)
                 + "\"/>"
                 + separator;
     }
@@ -196,10 +559,20 @@ public final class XMLReportWriter {
     }
 
     private String getTestElement(final TestMeasurement tm) {
-        return "  <Test class=\""
+        return "  <Test allocatedBytes=\""
+                + tm.getAllocatedBytes()
+                + "\" class=\""
                 + tm.getClassName()
+                + "\" cpuTime=\""
+                + tm.getCpuTime()
+                + "\" gcCount=\""
+                + tm.getGcCount()
+                + "\" gcTime=\""
+                + tm.getGcTime()
                 + "\" name=\""
                 + tm.getTestName()
+                + "\" wallClockTime=\""
+                + tm.getWallClockTime()
                 + "\">"
                 + separator;
     }
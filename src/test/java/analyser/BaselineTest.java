@@ -0,0 +1,75 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BaselineTest {
+
+    private static final String TEST = "demo.app.CalcTest.sumTest";
+
+    @TempDir
+    File directory;
+
+    private static TestMetrics metrics(final long wallClockTime, final long addCalls) {
+        Map<String, Long> calls = new HashMap<>();
+        if (addCalls > 0) {
+            calls.put("demo.app.Calc.add", addCalls);
+        }
+        return new TestMetrics(TEST, new long[] {addCalls, calls.size(), 0, 0, 2, wallClockTime, -1, 100}, calls);
+    }
+
+    private long record(final Baseline baseline, final TestMetrics test) throws IOException, InterruptedException {
+        long run = baseline.append(Collections.singletonList(test));
+        Thread.sleep(2);
+        return run;
+    }
+
+    @Test
+    void takesTheMedianOfTheLatestRuns() throws Exception {
+        Baseline baseline = new Baseline(new File(this.directory, "baseline"));
+        record(baseline, metrics(1000, 1));
+        record(baseline, metrics(900, 3));
+        record(baseline, metrics(5000, 3));
+        record(baseline, metrics(1100, 0));
+
+        TestMetrics median = baseline.load(3).get(TEST);
+        assertEquals(1100, median.getWallClockTime());
+        assertEquals(-1, median.getCpuTime());
+        assertEquals(3L, median.getMethodCalls().get("demo.app.Calc.add"));
+
+        TestMetrics latest = baseline.load(1).get(TEST);
+        assertEquals(1100, latest.getWallClockTime());
+        assertFalse(latest.getMethodCalls().containsKey("demo.app.Calc.add"));
+    }
+
+    @Test
+    void loadsAPinnedRun() throws Exception {
+        Baseline baseline = new Baseline(new File(this.directory, "baseline"));
+        record(baseline, metrics(1000, 1));
+        long pinned = record(baseline, metrics(900, 2));
+        record(baseline, metrics(5000, 3));
+
+        TestMetrics test = baseline.loadRun(pinned).get(TEST);
+        assertEquals(900, test.getWallClockTime());
+        assertEquals(2L, test.getMethodCalls().get("demo.app.Calc.add"));
+        assertTrue(baseline.loadRun(pinned + 12345).isEmpty());
+    }
+
+    @Test
+    void loadsNothingWithoutAFile() throws Exception {
+        Baseline baseline = new Baseline(new File(this.directory, "missing"));
+
+        assertTrue(baseline.load(5).isEmpty());
+        assertTrue(baseline.loadRun(1).isEmpty());
+    }
+}
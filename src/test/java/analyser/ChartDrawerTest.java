@@ -0,0 +1,15 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChartDrawerTest {
+
+    @Test
+    void replacesUnsafeCharactersInFileNames() {
+        assertEquals("demo.app.CalcTest.sumTest_1_a,_b_", ChartDrawer.fileName("demo.app.CalcTest.sumTest[1] a, b]"));
+        assertEquals("CalcTest.path_to_file_C_x", ChartDrawer.fileName("CalcTest.path/to\\file C:x"));
+        assertEquals("CalcTest-Trend-wallClockTime", ChartDrawer.fileName("CalcTest-Trend-wallClockTime"));
+    }
+}
@@ -0,0 +1,47 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    @Test
+    void separatesNamesWithTheSameStringHash() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        CountMinSketch sketch = new CountMinSketch(4, 1 << 10);
+        sketch.add("Aa", 1000);
+        sketch.add("BB");
+
+        assertEquals(1, sketch.estimate("BB"));
+        assertEquals(1000, sketch.estimate("Aa"));
+    }
+
+    @Test
+    void neverUndercountsAndStaysWithinTheErrorBound() {
+        Random random = new Random(3);
+        CountMinSketch sketch = new CountMinSketch(4, 1 << 8);
+        Map<String, Long> counts = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String name = "demo.app.Type" + (int) Math.abs(random.nextGaussian() * 500) + ".method";
+            sketch.add(name);
+            counts.merge(name, 1L, Long::sum);
+            total++;
+        }
+        int overBound = 0;
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            long estimate = sketch.estimate(count.getKey());
+            assertTrue(estimate >= count.getValue(), count.getKey());
+            if (estimate - count.getValue() > Math.E * total / 256) {
+                overBound++;
+            }
+        }
+        assertTrue(overBound <= counts.size() / 20, overBound + " of " + counts.size() + " over the bound");
+    }
+}
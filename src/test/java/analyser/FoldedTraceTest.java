@@ -0,0 +1,211 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FoldedTraceTest {
+
+    /**
+     * Builds the entry and exit steps of a trace.
+     */
+    private static final class TraceBuilder {
+
+        /**
+         * The steps built so far.
+         */
+        private final List<String> steps = new ArrayList<>();
+
+        /**
+         * The open calls, innermost last.
+         */
+        private final List<String> open = new ArrayList<>();
+
+        TraceBuilder enter(final String method) {
+            this.open.add(method);
+            this.steps.add(FoldedTrace.ENTRY + method + ":(" + this.open.size() + ")");
+            return this;
+        }
+
+        TraceBuilder exit() {
+            String method = this.open.remove(this.open.size() - 1);
+            this.steps.add(FoldedTrace.EXIT + method + ":(" + (this.open.size() + 1) + ")");
+            return this;
+        }
+
+        TraceBuilder call(final String method) {
+            return this.enter(method).exit();
+        }
+
+        List<String> build() {
+            return this.steps;
+        }
+    }
+
+    private static FoldedTrace fold(final List<String> steps) {
+        FoldedTrace trace = new FoldedTrace();
+        for (String step : steps) {
+            trace.add(step);
+        }
+        return trace;
+    }
+
+    private static List<String> unfold(final FoldedTrace trace) {
+        List<String> steps = new ArrayList<>();
+        for (String step : trace) {
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    @Test
+    void foldsALoopToOneIteration() {
+        TraceBuilder builder = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 100_000; i++) {
+            builder.call("Loop.step");
+        }
+        List<String> steps = builder.exit().build();
+        FoldedTrace trace = fold(steps);
+
+        assertEquals(steps.size(), trace.size());
+        assertTrue(trace.foldedSize() <= 6, "folded to " + trace.foldedSize());
+        assertEquals(steps, unfold(trace));
+    }
+
+    @Test
+    void keepsATraceWithoutRepeats() {
+        List<String> steps = new TraceBuilder().enter("Calc.sum").call("Calc.add").call("Calc.mul")
+                .exit().build();
+        FoldedTrace trace = fold(steps);
+
+        assertEquals(steps.size(), trace.foldedSize());
+        assertEquals(steps, unfold(trace));
+    }
+
+    @Test
+    void roundTripsNestedRepeats() {
+        TraceBuilder builder = new TraceBuilder().enter("Table.render");
+        for (int row = 0; row < 50; row++) {
+            builder.enter("Table.row");
+            for (int cell = 0; cell < 20; cell++) {
+                builder.call("Table.cell");
+            }
+            builder.exit();
+        }
+        List<String> steps = builder.exit().build();
+        FoldedTrace trace = fold(steps);
+
+        assertEquals(steps.size(), trace.size());
+        assertTrue(trace.foldedSize() < 20, "folded to " + trace.foldedSize());
+        assertEquals(steps, unfold(trace));
+    }
+
+    @Test
+    void roundTripsNearRepeats() {
+        TraceBuilder builder = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 30; i++) {
+            builder.enter("Dao.query");
+            if (i % 7 == 3) {
+                builder.call("Cache.miss");
+            }
+            builder.exit();
+        }
+        List<String> steps = builder.exit().build();
+
+        assertEquals(steps, unfold(fold(steps)));
+    }
+
+    @Test
+    void roundTripsRandomTraces() {
+        Random random = new Random(42);
+        String[] methods = {"A.a", "B.b", "C.c"};
+        for (int run = 0; run < 200; run++) {
+            TraceBuilder builder = new TraceBuilder().enter("Test.run");
+            int open = 1;
+            for (int i = 0; i < 300; i++) {
+                if (open > 1 && random.nextInt(3) == 0) {
+                    builder.exit();
+                    open--;
+                } else if (open < 6 && random.nextBoolean()) {
+                    builder.enter(methods[random.nextInt(methods.length)]);
+                    open++;
+                } else {
+                    builder.call(methods[random.nextInt(methods.length)]);
+                }
+            }
+            while (open-- > 0) {
+                builder.exit();
+            }
+            List<String> steps = builder.build();
+            FoldedTrace trace = fold(steps);
+
+            assertEquals(steps.size(), trace.size());
+            assertEquals(steps, unfold(trace));
+        }
+    }
+
+    @Test
+    void rebuildsFromTheHeldSteps() {
+        TraceBuilder builder = new TraceBuilder().enter("Table.render");
+        for (int row = 0; row < 10; row++) {
+            builder.enter("Table.row").call("Table.cell").call("Table.cell").call("Table.cell").exit();
+        }
+        List<String> steps = builder.exit().build();
+        FoldedTrace folded = fold(steps);
+
+        FoldedTrace rebuilt = new FoldedTrace();
+        for (int i = 0; i < folded.foldedSize(); i++) {
+            int mark = folded.getMark(i);
+            if (mark == FoldedTrace.STEP) {
+                rebuilt.append(folded.getStep(i));
+            } else if (mark == FoldedTrace.REPEAT_END) {
+                rebuilt.closeRepeat();
+            } else {
+                rebuilt.openRepeat(mark);
+            }
+        }
+
+        assertEquals(folded.size(), rebuilt.size());
+        assertEquals(steps, unfold(rebuilt));
+    }
+
+    @Test
+    void expandsTheDepthOfEachStep() {
+        TraceBuilder builder = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 5; i++) {
+            builder.enter("Loop.step").call("Loop.inner").exit();
+        }
+        List<String> steps = builder.exit().build();
+        int[] depths = new int[steps.size()];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = FoldedTrace.depthOf(steps.get(i));
+        }
+
+        assertArrayEquals(depths, fold(steps).maxDepths(1));
+    }
+
+    @Test
+    void keepsTheGreatestDepthOfEachBucket() {
+        TraceBuilder builder = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 100_000; i++) {
+            builder.enter("Loop.step").call("Loop.inner").exit();
+        }
+        List<String> steps = builder.exit().build();
+        long stepsPerBucket = 1000;
+        int[] expected = new int[(int) ((steps.size() + stepsPerBucket - 1) / stepsPerBucket)];
+        for (int i = 0; i < steps.size(); i++) {
+            int bucket = (int) (i / stepsPerBucket);
+            expected[bucket] = Math.max(expected[bucket], FoldedTrace.depthOf(steps.get(i)));
+        }
+
+        int[] depths = fold(steps).maxDepths(stepsPerBucket);
+        assertEquals(401, depths.length);
+        assertArrayEquals(expected, depths);
+    }
+}
@@ -0,0 +1,92 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImpactIndexTest {
+
+    private static final Set<String> TEST_CLASSES = new TreeSet<>(Arrays.asList("demo.CalcTest", "demo.IoTest"));
+
+    @TempDir
+    File directory;
+
+    private static Map<String, String> hashes(final String calc, final String io, final String jar) {
+        Map<String, String> hashes = new TreeMap<>();
+        hashes.put("demo.Calc", calc);
+        hashes.put("demo.Io", io);
+        hashes.put("demo.CalcTest", "t1");
+        hashes.put("demo.IoTest", "t2");
+        hashes.put(ImpactIndex.JAR_PREFIX + "lib.jar", jar);
+        return hashes;
+    }
+
+    private ImpactIndex recordAll(final File file) throws Exception {
+        ImpactIndex index = new ImpactIndex(file).load();
+        index.record("demo.CalcTest.sum", Collections.singleton("demo.Calc"));
+        index.record("demo.IoTest.read", Collections.singleton("demo.Io"));
+        index.save(hashes("a", "b", "j"));
+        return index;
+    }
+
+    @Test
+    void selectsTheTestsUsingAChangedClass() throws Exception {
+        File file = new File(this.directory, "impact");
+        recordAll(file);
+
+        ImpactIndex index = new ImpactIndex(file).load();
+        Map<String, String> changed = hashes("a2", "b", "j");
+        assertEquals(Collections.singleton("demo.Calc"), index.changedClasses(changed));
+        assertEquals(Collections.singletonMap("demo.CalcTest", Collections.singleton("sum")),
+                index.select(index.changedClasses(changed), TEST_CLASSES));
+    }
+
+    @Test
+    void keepsTheChangeForTestsNotRunSince() throws Exception {
+        File file = new File(this.directory, "impact");
+        recordAll(file);
+
+        ImpactIndex partial = new ImpactIndex(file).load();
+        partial.record("demo.IoTest.read", Collections.singleton("demo.Io"));
+        partial.save(hashes("a2", "b", "j2"));
+
+        ImpactIndex index = new ImpactIndex(file).load();
+        Set<String> changed = index.changedClasses(hashes("a2", "b", "j2"));
+        assertTrue(changed.contains("demo.Calc"), changed.toString());
+        assertTrue(changed.contains(ImpactIndex.JAR_PREFIX + "lib.jar"), changed.toString());
+        assertEquals(Collections.singletonMap("demo.CalcTest", Collections.singleton("sum")),
+                index.select(changed, TEST_CLASSES));
+
+        ImpactIndex full = new ImpactIndex(file).load();
+        full.record("demo.CalcTest.sum", Collections.singleton("demo.Calc"));
+        full.record("demo.IoTest.read", Collections.singleton("demo.Io"));
+        full.save(hashes("a2", "b", "j2"));
+        assertTrue(new ImpactIndex(file).load().changedClasses(hashes("a2", "b", "j2")).isEmpty());
+    }
+
+    @Test
+    void dropsTheTestsOfRemovedTestClasses() throws Exception {
+        File file = new File(this.directory, "impact");
+        recordAll(file);
+
+        ImpactIndex index = new ImpactIndex(file).load();
+        index.record("demo.CalcTest.sum", Collections.singleton("demo.Calc"));
+        Map<String, String> hashes = hashes("a", "b2", "j2");
+        hashes.remove("demo.IoTest");
+        index.save(hashes);
+
+        ImpactIndex saved = new ImpactIndex(file).load();
+        assertEquals(1, saved.getTestCount());
+        assertTrue(saved.changedClasses(hashes).isEmpty());
+    }
+}
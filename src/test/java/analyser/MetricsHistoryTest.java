@@ -0,0 +1,70 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetricsHistoryTest {
+
+    private static final String SUM = "demo.app.CalcTest.sumTest";
+
+    private static final String READ = "demo.app.IoTest.readTest";
+
+    private static final int WALL_CLOCK_TIME = Arrays.asList(TestMetrics.VALUE_NAMES).indexOf("wallClockTime");
+
+    @TempDir
+    File directory;
+
+    private static TestMetrics metrics(final String test, final long wallClockTime) {
+        long[] values = new long[TestMetrics.VALUE_NAMES.length];
+        values[WALL_CLOCK_TIME] = wallClockTime;
+        return new TestMetrics(test, values, Collections.emptyMap());
+    }
+
+    @Test
+    void queriesTheBuildsOfATestAfterReopening() throws IOException {
+        File store = new File(this.directory, "history");
+        for (int build = 0; build < 6; build++) {
+            List<TestMetrics> run = new ArrayList<>();
+            run.add(metrics(SUM, 100 + build));
+            if (build % 2 == 0) {
+                run.add(metrics(READ, 1000 + build));
+            }
+            new MetricsHistory(store).open().append(run);
+        }
+
+        MetricsHistory history = new MetricsHistory(store).open();
+        assertEquals(6, history.getBuildCount());
+        assertEquals(Arrays.asList(SUM, READ), history.getTests());
+        long[][] sum = history.query(SUM, WALL_CLOCK_TIME, 0, 6);
+        assertArrayEquals(new long[] {0, 1, 2, 3, 4, 5}, sum[0]);
+        assertArrayEquals(new long[] {100, 101, 102, 103, 104, 105}, sum[1]);
+        long[][] read = history.query(READ, WALL_CLOCK_TIME, 1, 5);
+        assertArrayEquals(new long[] {2, 4}, read[0]);
+        assertArrayEquals(new long[] {1002, 1004}, read[1]);
+        assertEquals(0, history.query("demo.app.Missing.test", WALL_CLOCK_TIME, 0, 6)[0].length);
+    }
+
+    @Test
+    void refusesAStoreOfAnotherFormat() throws IOException {
+        File store = new File(this.directory, "history");
+        new MetricsHistory(store).open().append(Collections.singletonList(metrics(SUM, 100)));
+        try (RandomAccessFile data = new RandomAccessFile(new File(store, "metrics.dat"), "rw")) {
+            data.seek(2 * Integer.BYTES);
+            data.writeInt(TestMetrics.VALUE_NAMES.length - 1);
+        }
+
+        assertThrows(IOException.class, () -> new MetricsHistory(store).open());
+    }
+}
@@ -0,0 +1,69 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedundancyDetectorTest {
+
+    /**
+     * Adds groups of three tests whose footprints differ in a single
+     * method, each group calling methods of its own.
+     */
+    private static RedundancyDetector detector(final int groups) {
+        RedundancyDetector detector = new RedundancyDetector(0.8);
+        for (int group = 0; group < groups; group++) {
+            List<String> methods = new ArrayList<>();
+            for (int method = 0; method < 40; method++) {
+                methods.add("demo.app.Service" + group + ".method" + method);
+            }
+            for (int test = 0; test < 3; test++) {
+                List<String> footprint = new ArrayList<>(methods);
+                footprint.add("demo.app.Service" + group + ".variant" + test);
+                detector.add("demo.app.Group" + group + "Test.test" + test, footprint,
+                        Collections.singleton("demo.app.Service" + group));
+            }
+        }
+        return detector;
+    }
+
+    private static void assertGroupsClustered(final List<RedundancyDetector.Cluster> clusters, final int groups) {
+        assertEquals(groups, clusters.size());
+        for (RedundancyDetector.Cluster cluster : clusters) {
+            assertEquals(3, cluster.getTests().size(), cluster.getTests().toString());
+            Set<String> testClasses = new HashSet<>();
+            for (String test : cluster.getTests()) {
+                testClasses.add(test.substring(0, test.lastIndexOf('.')));
+            }
+            assertEquals(1, testClasses.size(), cluster.getTests().toString());
+            assertTrue(cluster.getSimilarity() >= 0.8, String.valueOf(cluster.getSimilarity()));
+        }
+    }
+
+    @Test
+    void clustersNearIdenticalFootprintsPairByPair() {
+        assertGroupsClustered(detector(20).getClusters(), 20);
+    }
+
+    @Test
+    void clustersNearIdenticalFootprintsByBand() {
+        assertGroupsClustered(detector(120).getClusters(), 120);
+    }
+
+    @Test
+    void separatesNamesWithTheSameStringHash() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        RedundancyDetector detector = new RedundancyDetector(0.8);
+        detector.add("demo.app.FirstTest.test", Collections.singleton("demo.app.Aa"), Collections.emptySet());
+        detector.add("demo.app.SecondTest.test", Collections.singleton("demo.app.BB"), Collections.emptySet());
+
+        assertTrue(detector.getClusters().isEmpty());
+    }
+}
@@ -0,0 +1,167 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepetitionDetectorTest {
+
+    /**
+     * Builds the entry and exit steps of a trace.
+     */
+    private static final class TraceBuilder {
+
+        /**
+         * The steps built so far.
+         */
+        private final List<String> steps = new ArrayList<>();
+
+        /**
+         * The open calls, innermost last.
+         */
+        private final List<String> open = new ArrayList<>();
+
+        TraceBuilder enter(final String method) {
+            this.open.add(method);
+            this.steps.add(FoldedTrace.ENTRY + method + ":(" + this.open.size() + ")");
+            return this;
+        }
+
+        TraceBuilder exit() {
+            String method = this.open.remove(this.open.size() - 1);
+            this.steps.add(FoldedTrace.EXIT + method + ":(" + (this.open.size() + 1) + ")");
+            return this;
+        }
+
+        TraceBuilder call(final String method) {
+            return this.enter(method).exit();
+        }
+
+        List<String> build() {
+            return this.steps;
+        }
+    }
+
+    @Test
+    void findsASingleCallRepeated() {
+        TraceBuilder trace = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 12; i++) {
+            trace.call("Dao.query");
+        }
+        RepetitionDetector detector = new RepetitionDetector(10);
+        detector.analyse("LoopTest.run", trace.exit().build());
+
+        List<RepetitionDetector.Finding> findings = detector.getFindings();
+        assertEquals(1, findings.size());
+        RepetitionDetector.Finding finding = findings.get(0);
+        assertEquals("Loop.run", finding.getCaller());
+        assertEquals("Dao.query", finding.getPattern());
+        assertEquals(1, finding.getCalls());
+        assertEquals(12, finding.getMaximumRepetitions());
+        assertEquals(12, finding.getTotalRepetitions());
+        assertEquals(1, finding.getRuns());
+        assertTrue(finding.getTests().contains("LoopTest.run"));
+    }
+
+    @Test
+    void ignoresRunsShorterThanTheThreshold() {
+        TraceBuilder trace = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 9; i++) {
+            trace.call("Dao.query");
+        }
+        RepetitionDetector detector = new RepetitionDetector(10);
+        detector.analyse("LoopTest.run", trace.exit().build());
+
+        assertTrue(detector.getFindings().isEmpty());
+    }
+
+    @Test
+    void findsUnitsOfSeveralCalls() {
+        TraceBuilder trace = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 10; i++) {
+            trace.call("Dao.open").call("Dao.close");
+        }
+        RepetitionDetector detector = new RepetitionDetector(10);
+        detector.analyse("LoopTest.run", trace.exit().build());
+
+        List<RepetitionDetector.Finding> findings = detector.getFindings();
+        assertEquals(1, findings.size());
+        assertEquals("Dao.open, Dao.close", findings.get(0).getPattern());
+        assertEquals(2, findings.get(0).getCalls());
+        assertEquals(10, findings.get(0).getMaximumRepetitions());
+    }
+
+    @Test
+    void findsNestedRepeats() {
+        TraceBuilder trace = new TraceBuilder().enter("Table.render");
+        for (int row = 0; row < 10; row++) {
+            trace.enter("Table.row");
+            for (int cell = 0; cell < 10; cell++) {
+                trace.call("Table.cell");
+            }
+            trace.exit();
+        }
+        RepetitionDetector detector = new RepetitionDetector(10);
+        detector.analyse("TableTest.render", trace.exit().build());
+
+        List<RepetitionDetector.Finding> findings = detector.getFindings();
+        assertEquals(2, findings.size());
+        RepetitionDetector.Finding rows = findings.get(0);
+        assertEquals("Table.render", rows.getCaller());
+        assertEquals("Table.row", rows.getPattern());
+        assertEquals(11, rows.getCalls());
+        assertEquals(10, rows.getMaximumRepetitions());
+        assertEquals(1, rows.getRuns());
+        RepetitionDetector.Finding cells = findings.get(1);
+        assertEquals("Table.row", cells.getCaller());
+        assertEquals("Table.cell", cells.getPattern());
+        assertEquals(10, cells.getMaximumRepetitions());
+        assertEquals(100, cells.getTotalRepetitions());
+        assertEquals(10, cells.getRuns());
+    }
+
+    @Test
+    void splitsRunsAtACallWithOtherCallees() {
+        TraceBuilder trace = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 10; i++) {
+            if (i == 5) {
+                trace.enter("Dao.query").call("Cache.miss").exit();
+            } else {
+                trace.call("Dao.query");
+            }
+        }
+        RepetitionDetector strict = new RepetitionDetector(10);
+        strict.analyse("LoopTest.run", trace.exit().build());
+        assertTrue(strict.getFindings().isEmpty());
+
+        RepetitionDetector lenient = new RepetitionDetector(4);
+        lenient.analyse("LoopTest.run", trace.build());
+        List<RepetitionDetector.Finding> findings = lenient.getFindings();
+        assertEquals(1, findings.size());
+        assertEquals(5, findings.get(0).getMaximumRepetitions());
+        assertEquals(9, findings.get(0).getTotalRepetitions());
+        assertEquals(2, findings.get(0).getRuns());
+    }
+
+    @Test
+    void groupsAPatternAcrossTests() {
+        TraceBuilder trace = new TraceBuilder().enter("Loop.run");
+        for (int i = 0; i < 10; i++) {
+            trace.call("Dao.query");
+        }
+        List<String> steps = trace.exit().build();
+        RepetitionDetector detector = new RepetitionDetector(10);
+        detector.analyse("LoopTest.first", steps);
+        detector.analyse("LoopTest.second", steps);
+
+        List<RepetitionDetector.Finding> findings = detector.getFindings();
+        assertEquals(1, findings.size());
+        assertEquals(2, findings.get(0).getRuns());
+        assertEquals(20, findings.get(0).getTotalRepetitions());
+        assertEquals(2, findings.get(0).getTests().size());
+    }
+}
@@ -0,0 +1,153 @@
+package analyser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceDiffTest {
+
+    private static List<String> call(final String method, final int depth, final String... callees) {
+        List<String> steps = new ArrayList<>();
+        steps.add(FoldedTrace.ENTRY + method + ":(" + depth + ")");
+        for (String callee : callees) {
+            steps.addAll(call(callee, depth + 1));
+        }
+        steps.add(FoldedTrace.EXIT + method + ":(" + depth + ")");
+        return steps;
+    }
+
+    @SafeVarargs
+    private static List<String> concat(final List<String>... parts) {
+        List<String> steps = new ArrayList<>();
+        for (List<String> part : parts) {
+            steps.addAll(part);
+        }
+        return steps;
+    }
+
+    /**
+     * Gets the length of the longest common subsequence by dynamic programming.
+     */
+    private static int longestCommonSubsequence(final List<String> a, final List<String> b) {
+        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                lengths[i][j] = a.get(i).equals(b.get(j)) ? lengths[i + 1][j + 1] + 1
+                        : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        return lengths[0][0];
+    }
+
+    @Test
+    void diffsEmptyTraces() {
+        TraceDiff diff = new TraceDiff(Collections.emptyList(), Collections.emptyList());
+
+        assertEquals(0, diff.getRemovedSteps());
+        assertEquals(0, diff.getInsertedSteps());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertTrue(diff.getInserted().isEmpty());
+    }
+
+    @Test
+    void insertsEverythingIntoAnEmptyBase() {
+        List<String> current = call("Calc.sum", 1, "Calc.add", "Calc.add");
+        TraceDiff diff = new TraceDiff(Collections.emptyList(), current);
+
+        assertEquals(0, diff.getRemovedSteps());
+        assertEquals(current.size(), diff.getInsertedSteps());
+        Map<String, TraceDiff.Change> inserted = diff.getInserted();
+        assertEquals(1, inserted.size());
+        assertEquals(1, inserted.get("Calc.sum").getSubtrees());
+        assertEquals(3, inserted.get("Calc.sum").getCalls());
+    }
+
+    @Test
+    void removesEverythingFromAnEmptyCurrent() {
+        List<String> base = call("Calc.sum", 1, "Calc.add");
+        TraceDiff diff = new TraceDiff(base, Collections.emptyList());
+
+        assertEquals(base.size(), diff.getRemovedSteps());
+        assertEquals(0, diff.getInsertedSteps());
+        assertEquals(1, diff.getRemoved().get("Calc.sum").getSubtrees());
+    }
+
+    @Test
+    void findsNothingBetweenIdenticalTraces() {
+        List<String> trace = call("Calc.sum", 1, "Calc.add", "Calc.mul");
+        TraceDiff diff = new TraceDiff(trace, new ArrayList<>(trace));
+
+        assertEquals(0, diff.getRemovedSteps());
+        assertEquals(0, diff.getInsertedSteps());
+    }
+
+    @Test
+    void findsACallInsertedAtTheStart() {
+        List<String> base = call("Calc.add", 1);
+        List<String> current = concat(call("Calc.log", 1), base);
+        TraceDiff diff = new TraceDiff(base, current);
+
+        assertEquals(0, diff.getRemovedSteps());
+        assertEquals(2, diff.getInsertedSteps());
+        assertEquals(1, diff.getInserted().get("Calc.log").getSubtrees());
+    }
+
+    @Test
+    void findsACallRemovedAtTheEnd() {
+        List<String> current = call("Calc.add", 1);
+        List<String> base = concat(current, call("Calc.log", 1, "Io.write"));
+        TraceDiff diff = new TraceDiff(base, current);
+
+        assertEquals(4, diff.getRemovedSteps());
+        assertEquals(0, diff.getInsertedSteps());
+        TraceDiff.Change removed = diff.getRemoved().get("Calc.log");
+        assertEquals(1, removed.getSubtrees());
+        assertEquals(2, removed.getCalls());
+    }
+
+    @Test
+    void alignsACallMovedUnderANewCaller() {
+        List<String> base = call("Calc.sum", 1, "Calc.add");
+        List<String> current = call("Calc.sum", 1, "Calc.check");
+        current.addAll(1, call("Calc.add", 3));
+        TraceDiff diff = new TraceDiff(base, current);
+
+        assertEquals(0, diff.getRemovedSteps());
+        assertEquals(2, diff.getInsertedSteps());
+        assertEquals(1, diff.getInserted().get("Calc.check").getSubtrees());
+    }
+
+    @Test
+    void findsTheShortestEditScript() {
+        Random random = new Random(7);
+        String[] steps = {"A", "B", "C", "D"};
+        for (int run = 0; run < 300; run++) {
+            List<String> base = new ArrayList<>();
+            List<String> current = new ArrayList<>();
+            for (int i = random.nextInt(60); i > 0; i--) {
+                base.add(steps[random.nextInt(steps.length)]);
+            }
+            for (String step : base) {
+                int edit = random.nextInt(10);
+                if (edit == 0) {
+                    current.add(steps[random.nextInt(steps.length)]);
+                    current.add(step);
+                } else if (edit != 1) {
+                    current.add(step);
+                }
+            }
+            TraceDiff diff = new TraceDiff(base, current);
+
+            int common = longestCommonSubsequence(base, current);
+            assertEquals(base.size() - common, diff.getRemovedSteps(), "removed from " + base + " to " + current);
+            assertEquals(current.size() - common, diff.getInsertedSteps(), "inserted from " + base + " to " + current);
+        }
+    }
+}